@@ -0,0 +1,205 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.os.Build;
+import android.provider.ContactsContract;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/***
+ * Least recently used cache of loaded avatars, bounded by the number of bytes it holds.
+ *
+ * An entry is keyed on the contact identifier and the way its avatar was loaded, and remembers
+ * the PHOTO_ID and CONTACT_LAST_UPDATED_TIMESTAMP of the contact when it was loaded. As long as
+ * the contacts did not change since an entry was last checked, which {@link #invalidate()} is
+ * told about by a content observer, the entry is returned without querying the provider.
+ * Otherwise the version of the contact is queried and the entry is only reused if it matches.
+ ***/
+@TargetApi(Build.VERSION_CODES.ECLAIR)
+class AvatarCache {
+
+    // Stored for the contacts without an avatar, so that they are cached as well
+    private static final byte[] NO_AVATAR = new byte[0];
+    // Rough cost of an entry besides the avatar itself
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private static final String[] VERSION_PROJECTION = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+            ? new String[]{ContactsContract.Contacts.PHOTO_ID, ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP}
+            : new String[]{ContactsContract.Contacts.PHOTO_ID};
+
+    static final class Entry {
+        final String version;
+        final byte[] avatar;
+        int generation;
+
+        Entry(String version, byte[] avatar, int generation) {
+            this.version = version;
+            this.avatar = avatar;
+            this.generation = generation;
+        }
+
+        /**
+         * @return the cached avatar, null for a contact without one
+         */
+        byte[] getAvatar() {
+            return avatar == NO_AVATAR ? null : avatar;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long maxBytes;
+    private long bytes;
+    private int generation;
+    private long hits, misses, evictions;
+
+    AvatarCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the default budget, an eighth of the memory the application may use
+     */
+    static long defaultMaxBytes() {
+        return Runtime.getRuntime().maxMemory() / 8;
+    }
+
+    /**
+     * Loads the avatar of a contact through the cache
+     * @return the avatar, or null when the contact has none
+     */
+    byte[] load(ContentResolver contentResolver, AvatarLoader loader, String identifier) {
+        final String key = key(identifier, loader);
+        final int generation = generation();
+        Entry entry = getFresh(key);
+        if (entry != null) {
+            return entry.getAvatar();
+        }
+
+        final String version = queryVersion(contentResolver, identifier);
+        if (version == null) {
+            // The contact is gone, or the provider could not be queried
+            return loader.load(contentResolver, identifier);
+        }
+        entry = revalidate(key, version, generation);
+        if (entry != null) {
+            return entry.getAvatar();
+        }
+
+        final byte[] avatar = loader.load(contentResolver, identifier);
+        put(key, version, avatar, generation);
+        return avatar;
+    }
+
+    static String key(String identifier, AvatarLoader loader) {
+        return identifier + '/' + loader.highResolution + '/' + loader.format + '/' + loader.targetSize;
+    }
+
+    private static String queryVersion(ContentResolver contentResolver, String identifier) {
+        final Cursor cursor = contentResolver.query(
+                ContentUris.withAppendedId(ContactsContract.Contacts.CONTENT_URI, Long.parseLong(identifier)),
+                VERSION_PROJECTION, null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            final StringBuilder version = new StringBuilder();
+            for (int i = 0; i < VERSION_PROJECTION.length; i++) {
+                version.append(cursor.getLong(i)).append(':');
+            }
+            return version.toString();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    synchronized int generation() {
+        return generation;
+    }
+
+    /**
+     * Marks every entry as needing to be checked against the provider before its next use
+     */
+    synchronized void invalidate() {
+        generation++;
+    }
+
+    /**
+     * @return the entry of the key if it was checked since the contacts last changed
+     */
+    synchronized Entry getFresh(String key) {
+        final Entry entry = entries.get(key);
+        if (entry != null && entry.generation == generation) {
+            hits++;
+            return entry;
+        }
+        return null;
+    }
+
+    /**
+     * @return the entry of the key if it was loaded for this version of the contact, which is
+     * then considered fresh as of the given generation
+     */
+    synchronized Entry revalidate(String key, String version, int generation) {
+        final Entry entry = entries.get(key);
+        if (entry != null && entry.version.equals(version)) {
+            entry.generation = generation;
+            hits++;
+            return entry;
+        }
+        misses++;
+        return null;
+    }
+
+    synchronized void put(String key, String version, byte[] avatar, int generation) {
+        final Entry entry = new Entry(version, avatar != null ? avatar : NO_AVATAR, generation);
+        final Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= sizeOf(previous);
+        }
+        bytes += sizeOf(entry);
+        trimTo(maxBytes);
+    }
+
+    synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trimTo(maxBytes);
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    synchronized HashMap<String, Object> getStats() {
+        HashMap<String, Object> stats = new HashMap<>();
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("entries", entries.size());
+        stats.put("bytes", bytes);
+        stats.put("maxBytes", maxBytes);
+        return stats;
+    }
+
+    private void trimTo(long maxBytes) {
+        final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= sizeOf(iterator.next().getValue());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private static int sizeOf(Entry entry) {
+        return entry.avatar.length + ENTRY_OVERHEAD;
+    }
+}
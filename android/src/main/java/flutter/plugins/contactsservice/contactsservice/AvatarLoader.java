@@ -0,0 +1,174 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.ContactsContract;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/***
+ * Loads the photo of a contact. The bytes stored by the provider are returned as they are
+ * unless a format or a target size is asked for which they do not already satisfy, and the
+ * buffers used to read and re-encode photos are reused per thread.
+ ***/
+@TargetApi(Build.VERSION_CODES.ECLAIR)
+class AvatarLoader {
+
+    private static final String LOG_TAG = "flutter_contacts";
+
+    /** The bytes stored by the provider, usually a JPEG */
+    static final int FORMAT_ORIGINAL = 0;
+    static final int FORMAT_PNG = 1;
+    static final int FORMAT_JPEG = 2;
+
+    private static final int JPEG_QUALITY = 90;
+
+    private static final ThreadLocal<byte[]> readBuffer = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[16 * 1024];
+        }
+    };
+
+    private static final ThreadLocal<ByteArrayOutputStream> encodeBuffer = new ThreadLocal<ByteArrayOutputStream>() {
+        @Override
+        protected ByteArrayOutputStream initialValue() {
+            return new ByteArrayOutputStream(16 * 1024);
+        }
+    };
+
+    final boolean highResolution;
+    final int format;
+    final int targetSize;
+
+    /**
+     * @param format one of the FORMAT_* constants
+     * @param targetSize size the photo is downsampled towards, 0 for the stored size. Only applied
+     *                with FORMAT_PNG or FORMAT_JPEG, as downsampling re-encodes the photo
+     */
+    AvatarLoader(boolean highResolution, int format, int targetSize) {
+        this.highResolution = highResolution;
+        this.format = format;
+        this.targetSize = targetSize;
+    }
+
+    /**
+     * @param name "original", "png" or "jpeg", null for the backwards-compatible PNG
+     */
+    static int formatFromName(String name) {
+        if (name == null) {
+            return FORMAT_PNG;
+        }
+        switch (name) {
+            case "original":
+                return FORMAT_ORIGINAL;
+            case "jpeg":
+                return FORMAT_JPEG;
+            default:
+                return FORMAT_PNG;
+        }
+    }
+
+    /**
+     * @return the photo of the contact, or null when it has none or it could not be read
+     */
+    byte[] load(ContentResolver contentResolver, String identifier) {
+        final Uri uri = ContentUris.withAppendedId(ContactsContract.Contacts.CONTENT_URI, Long.parseLong(identifier));
+        try {
+            final InputStream input = ContactsContract.Contacts.openContactPhotoInputStream(contentResolver, uri, highResolution);
+            if (input == null) return null;
+            final int length;
+            try {
+                length = readFully(input);
+            } finally {
+                input.close();
+            }
+            return convert(readBuffer.get(), length);
+        } catch (final IOException ex) {
+            Log.e(LOG_TAG, ex.getMessage());
+            return null;
+        }
+    }
+
+    private byte[] convert(byte[] photo, int length) {
+        if (format == FORMAT_ORIGINAL) {
+            return Arrays.copyOf(photo, length);
+        }
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(photo, 0, length, options);
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, targetSize);
+        if (options.inSampleSize == 1 && isFormat(photo, length, format)) {
+            return Arrays.copyOf(photo, length);
+        }
+
+        options.inJustDecodeBounds = false;
+        final Bitmap bitmap = BitmapFactory.decodeByteArray(photo, 0, length, options);
+        if (bitmap == null) return null;
+        final ByteArrayOutputStream stream = encodeBuffer.get();
+        stream.reset();
+        if (format == FORMAT_JPEG) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, stream);
+        } else {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
+        }
+        bitmap.recycle();
+        return stream.toByteArray();
+    }
+
+    /**
+     * Reads the stream into the buffer of the calling thread, growing it when needed
+     * @return the number of bytes read
+     */
+    static int readFully(InputStream input) throws IOException {
+        byte[] buffer = readBuffer.get();
+        int length = 0;
+        int read;
+        while ((read = input.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                readBuffer.set(buffer);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @return the largest power of two sample size keeping both sides at least targetSize,
+     * which is what {@link BitmapFactory.Options#inSampleSize} decodes fastest
+     */
+    static int sampleSize(int width, int height, int targetSize) {
+        int sampleSize = 1;
+        if (targetSize > 0) {
+            while (width / (sampleSize * 2) >= targetSize && height / (sampleSize * 2) >= targetSize) {
+                sampleSize *= 2;
+            }
+        }
+        return sampleSize;
+    }
+
+    /**
+     * @return whether the photo is already encoded in the format, judging from its signature
+     */
+    static boolean isFormat(byte[] photo, int length, int format) {
+        switch (format) {
+            case FORMAT_JPEG:
+                return length > 2 && (photo[0] & 0xff) == 0xff && (photo[1] & 0xff) == 0xd8;
+            case FORMAT_PNG:
+                return length > 8 && (photo[0] & 0xff) == 0x89 && photo[1] == 'P' && photo[2] == 'N' && photo[3] == 'G';
+            default:
+                return true;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.flutter.plugin.common.MethodChannel.Result;
+
+/***
+ * Sends the replies of the method channel from a background thread rather than from the main
+ * thread. The codec encodes a reply on the thread sending it, which for tens of thousands of
+ * contacts takes long enough to drop frames.
+ *
+ * Only for a channel registered with a background TaskQueue, as the engines which support
+ * those are the ones accepting replies from any thread. Replies are sent one at a time, in the
+ * order they were given.
+ ***/
+class BackgroundReplies {
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final Executor executor;
+
+    BackgroundReplies(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return replies sent from a thread of their own, which stops when idle
+     */
+    static BackgroundReplies create() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                // Left at the default priority, unlike the lanes, as Dart waits for the reply
+                return new Thread(runnable, "contacts-reply");
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return new BackgroundReplies(executor);
+    }
+
+    /**
+     * @return a result which sends its reply through the given one from the background thread
+     */
+    Result wrap(final Result result) {
+        return new Result() {
+            @Override
+            public void success(final Object value) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        result.success(value);
+                    }
+                });
+            }
+
+            @Override
+            public void error(final String errorCode, final String errorMessage, final Object errorDetails) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        result.error(errorCode, errorMessage, errorDetails);
+                    }
+                });
+            }
+
+            @Override
+            public void notImplemented() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        result.notImplemented();
+                    }
+                });
+            }
+        };
+    }
+}
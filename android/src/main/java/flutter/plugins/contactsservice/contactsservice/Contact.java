@@ -1,10 +1,22 @@
 package flutter.plugins.contactsservice.contactsservice;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 
 public class Contact implements Comparable<Contact> {
 
+    // Groups of fields which can be requested from the Dart side, see fieldsFromNames
+    static final int FIELD_NAME = 1;
+    static final int FIELD_PHONES = 1 << 1;
+    static final int FIELD_EMAILS = 1 << 2;
+    static final int FIELD_POSTAL_ADDRESSES = 1 << 3;
+    static final int FIELD_ORGANIZATION = 1 << 4;
+    static final int FIELD_NOTE = 1 << 5;
+    static final int FIELD_BIRTHDAY = 1 << 6;
+    static final int ALL_FIELDS = (1 << 7) - 1;
+
     Contact(String id) {
         this.identifier = id;
     }
@@ -19,40 +31,109 @@ public class Contact implements Comparable<Contact> {
     ArrayList<PostalAddress> postalAddresses = new ArrayList<>();
     byte[] avatar = new byte[0];
 
+    /**
+     * @return a contact with the same fields, sharing the lists of this one, to which another
+     * avatar can be given without changing this one
+     */
+    Contact copy() {
+        Contact copy = new Contact(identifier);
+        copy.displayName = displayName;
+        copy.givenName = givenName;
+        copy.middleName = middleName;
+        copy.familyName = familyName;
+        copy.prefix = prefix;
+        copy.suffix = suffix;
+        copy.company = company;
+        copy.jobTitle = jobTitle;
+        copy.note = note;
+        copy.birthday = birthday;
+        copy.androidAccountType = androidAccountType;
+        copy.androidAccountName = androidAccountName;
+        copy.emails = emails;
+        copy.phones = phones;
+        copy.postalAddresses = postalAddresses;
+        copy.avatar = avatar;
+        return copy;
+    }
+
+    /**
+     * Converts a list of field names sent by the Dart side into a mask of FIELD_* flags
+     * @param names the requested fields, or null for all of them
+     */
+    static int fieldsFromNames(List<String> names) {
+        if (names == null) {
+            return ALL_FIELDS;
+        }
+        int fields = 0;
+        for (String name : names) {
+            switch (name) {
+                case "name": fields |= FIELD_NAME; break;
+                case "phones": fields |= FIELD_PHONES; break;
+                case "emails": fields |= FIELD_EMAILS; break;
+                case "postalAddresses": fields |= FIELD_POSTAL_ADDRESSES; break;
+                case "organization": fields |= FIELD_ORGANIZATION; break;
+                case "note": fields |= FIELD_NOTE; break;
+                case "birthday": fields |= FIELD_BIRTHDAY; break;
+            }
+        }
+        return fields;
+    }
+
     HashMap<String, Object> toMap() {
+        return toMap(ALL_FIELDS);
+    }
+
+    /**
+     * @param fields mask of FIELD_* flags, the keys of the other fields are left out
+     */
+    HashMap<String, Object> toMap(int fields) {
         HashMap<String, Object> contactMap = new HashMap<>();
         contactMap.put("identifier", identifier);
         contactMap.put("displayName", displayName);
-        contactMap.put("givenName", givenName);
-        contactMap.put("middleName", middleName);
-        contactMap.put("familyName", familyName);
-        contactMap.put("prefix", prefix);
-        contactMap.put("suffix", suffix);
-        contactMap.put("company", company);
-        contactMap.put("jobTitle", jobTitle);
         contactMap.put("avatar", avatar);
-        contactMap.put("note", note);
-        contactMap.put("birthday", birthday);
         contactMap.put("androidAccountType", androidAccountType);
         contactMap.put("androidAccountName", androidAccountName);
+        if ((fields & FIELD_NAME) != 0) {
+            contactMap.put("givenName", givenName);
+            contactMap.put("middleName", middleName);
+            contactMap.put("familyName", familyName);
+            contactMap.put("prefix", prefix);
+            contactMap.put("suffix", suffix);
+        }
+        if ((fields & FIELD_ORGANIZATION) != 0) {
+            contactMap.put("company", company);
+            contactMap.put("jobTitle", jobTitle);
+        }
+        if ((fields & FIELD_NOTE) != 0) {
+            contactMap.put("note", note);
+        }
+        if ((fields & FIELD_BIRTHDAY) != 0) {
+            contactMap.put("birthday", birthday);
+        }
 
-        ArrayList<HashMap<String, String>> emailsMap = new ArrayList<>();
-        for (Item email : emails) {
-            emailsMap.add(email.toMap());
+        if ((fields & FIELD_EMAILS) != 0) {
+            ArrayList<HashMap<String, String>> emailsMap = new ArrayList<>();
+            for (Item email : emails) {
+                emailsMap.add(email.toMap());
+            }
+            contactMap.put("emails", emailsMap);
         }
-        contactMap.put("emails", emailsMap);
 
-        ArrayList<HashMap<String, String>> phonesMap = new ArrayList<>();
-        for (Item phone : phones) {
-            phonesMap.add(phone.toMap());
+        if ((fields & FIELD_PHONES) != 0) {
+            ArrayList<HashMap<String, String>> phonesMap = new ArrayList<>();
+            for (Item phone : phones) {
+                phonesMap.add(phone.toMap());
+            }
+            contactMap.put("phones", phonesMap);
         }
-        contactMap.put("phones", phonesMap);
 
-        ArrayList<HashMap<String, String>> addressesMap = new ArrayList<>();
-        for (PostalAddress address : postalAddresses) {
-            addressesMap.add(address.toMap());
+        if ((fields & FIELD_POSTAL_ADDRESSES) != 0) {
+            ArrayList<HashMap<String, String>> addressesMap = new ArrayList<>();
+            for (PostalAddress address : postalAddresses) {
+                addressesMap.add(address.toMap());
+            }
+            contactMap.put("postalAddresses", addressesMap);
         }
-        contactMap.put("postalAddresses", addressesMap);
 
         return contactMap;
     }
@@ -95,6 +176,37 @@ public class Contact implements Comparable<Contact> {
         return contact;
     }
 
+    /**
+     * Sorts the contacts in the order of {@link #compareTo(Contact)}, lowercasing each given name
+     * once up front rather than twice per comparison. The sort is stable.
+     */
+    static void sortByGivenName(ArrayList<Contact> contacts) {
+        final int size = contacts.size();
+        final SortEntry[] entries = new SortEntry[size];
+        for (int i = 0; i < size; i++) {
+            entries[i] = new SortEntry(contacts.get(i));
+        }
+        Arrays.sort(entries);
+        for (int i = 0; i < size; i++) {
+            contacts.set(i, entries[i].contact);
+        }
+    }
+
+    private static class SortEntry implements Comparable<SortEntry> {
+        final String key;
+        final Contact contact;
+
+        SortEntry(Contact contact) {
+            this.key = contact.givenName == null ? "" : contact.givenName.toLowerCase();
+            this.contact = contact;
+        }
+
+        @Override
+        public int compareTo(SortEntry entry) {
+            return key.compareTo(entry.key);
+        }
+    }
+
     @Override
     public int compareTo(Contact contact) {
         String givenName1 = this.givenName == null ? "" : this.givenName.toLowerCase();
@@ -0,0 +1,384 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.annotation.TargetApi;
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.os.Build;
+import android.provider.ContactsContract;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+import static android.provider.ContactsContract.CommonDataKinds;
+import static android.provider.ContactsContract.CommonDataKinds.Email;
+import static android.provider.ContactsContract.CommonDataKinds.Organization;
+import static android.provider.ContactsContract.CommonDataKinds.Phone;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredName;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
+
+/***
+ * The changes turning the {@link ContactsContract.Data} rows a contact has into the rows of
+ * an updated contact. Rows which already hold a value of the contact are left untouched, the
+ * others are updated in place, keyed by their _ID, and only the values left over are inserted
+ * or deleted. A contact without a note, a birthday or an avatar keeps the ones it has.
+ *
+ * The rows are those of every raw contact of the contact. The name rows left over are kept,
+ * being the names of the other raw contacts linked into it, such as a SIM or messaging account.
+ ***/
+@TargetApi(Build.VERSION_CODES.ECLAIR)
+class ContactDiff {
+
+    static final int KIND_NAME = 0;
+    static final int KIND_ORGANIZATION = 1;
+    static final int KIND_NOTE = 2;
+    static final int KIND_PHONE = 3;
+    static final int KIND_EMAIL = 4;
+    static final int KIND_POSTAL = 5;
+    static final int KIND_BIRTHDAY = 6;
+    private static final int KIND_COUNT = 7;
+
+    // Indexed by the KIND_* constants above
+    private static final String[] MIMETYPES = {
+            StructuredName.CONTENT_ITEM_TYPE,
+            Organization.CONTENT_ITEM_TYPE,
+            CommonDataKinds.Note.CONTENT_ITEM_TYPE,
+            Phone.CONTENT_ITEM_TYPE,
+            Email.CONTENT_ITEM_TYPE,
+            StructuredPostal.CONTENT_ITEM_TYPE,
+            CommonDataKinds.Event.CONTENT_ITEM_TYPE,
+    };
+
+    // The columns compared and written for each kind, indexed like MIMETYPES
+    private static final String[][] COLUMNS = {
+            {StructuredName.GIVEN_NAME, StructuredName.MIDDLE_NAME, StructuredName.FAMILY_NAME, StructuredName.PREFIX, StructuredName.SUFFIX},
+            {Organization.COMPANY, Organization.TITLE},
+            {CommonDataKinds.Note.NOTE},
+            {Phone.NUMBER, Phone.TYPE, Phone.LABEL},
+            {Email.ADDRESS, Email.TYPE, Email.LABEL},
+            {StructuredPostal.TYPE, StructuredPostal.LABEL, StructuredPostal.STREET, StructuredPostal.CITY,
+                    StructuredPostal.REGION, StructuredPostal.POSTCODE, StructuredPostal.COUNTRY},
+            {CommonDataKinds.Event.START_DATE},
+    };
+
+    private static final String BIRTHDAY_TYPE = String.valueOf(CommonDataKinds.Event.TYPE_BIRTHDAY);
+    private static final String CUSTOM_TYPE = String.valueOf(CommonDataKinds.BaseTypes.TYPE_CUSTOM);
+
+    static final String[] PROJECTION = buildProjection();
+
+    static final class Row {
+        final long id;
+        final String[] values;
+
+        Row(long id, String[] values) {
+            this.id = id;
+            this.values = values;
+        }
+    }
+
+    /** A row to write, an insert when id is -1, a delete when values is null */
+    static final class Change {
+        final int kind;
+        final long id;
+        final String[] values;
+
+        Change(int kind, long id, String[] values) {
+            this.kind = kind;
+            this.id = id;
+            this.values = values;
+        }
+    }
+
+    final ArrayList<Change> changes = new ArrayList<>();
+    long rawContactId = -1;
+    private long photoId = -1;
+    private byte[] photo;
+    private byte[] avatar;
+
+    private ContactDiff() {
+    }
+
+    /**
+     * @param cursor the rows of the contact, with the columns of {@link #PROJECTION}. It is closed
+     */
+    static ContactDiff compute(Cursor cursor, Contact contact) {
+        ContactDiff diff = new ContactDiff();
+        ArrayList<ArrayList<Row>> existing = diff.readRows(cursor);
+        for (int kind = 0; kind < KIND_COUNT; kind++) {
+            // Flutter does not send notes, and birthdays are optional
+            if (kind == KIND_NOTE && contact.note == null || kind == KIND_BIRTHDAY && contact.birthday == null) {
+                continue;
+            }
+            diff.match(kind, existing.get(kind), getValues(kind, contact));
+        }
+        if (contact.avatar != null && contact.avatar.length > 0 && !Arrays.equals(contact.avatar, diff.photo)) {
+            diff.avatar = contact.avatar;
+        }
+        return diff;
+    }
+
+    /**
+     * @return whether the contact has no rows, in which case nothing can be written
+     */
+    boolean isContactMissing() {
+        return rawContactId == -1;
+    }
+
+    /**
+     * Appends the operations writing the changes, the first of which allows the provider to yield.
+     * For a contact which is missing, an assertion failing the transaction is appended instead
+     */
+    void addOperations(ArrayList<ContentProviderOperation> ops, String identifier) {
+        final int start = ops.size();
+        if (isContactMissing()) {
+            ops.add(ContentProviderOperation.newAssertQuery(
+                    ContentUris.withAppendedId(ContactsContract.Contacts.CONTENT_URI, Long.parseLong(identifier)))
+                    .withExpectedCount(1)
+                    .withYieldAllowed(true)
+                    .build());
+            return;
+        }
+        for (Change change : changes) {
+            ContentProviderOperation.Builder op;
+            if (change.values == null) {
+                op = ContentProviderOperation.newDelete(ContentUris.withAppendedId(ContactsContract.Data.CONTENT_URI, change.id));
+            } else {
+                if (change.id == -1) {
+                    op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+                            .withValue(ContactsContract.Data.RAW_CONTACT_ID, rawContactId)
+                            .withValue(ContactsContract.Data.MIMETYPE, MIMETYPES[change.kind]);
+                    if (change.kind == KIND_ORGANIZATION) {
+                        op.withValue(Organization.TYPE, Organization.TYPE_WORK);
+                    } else if (change.kind == KIND_BIRTHDAY) {
+                        op.withValue(CommonDataKinds.Event.TYPE, CommonDataKinds.Event.TYPE_BIRTHDAY);
+                    }
+                } else {
+                    op = ContentProviderOperation.newUpdate(ContentUris.withAppendedId(ContactsContract.Data.CONTENT_URI, change.id));
+                }
+                String[] columns = COLUMNS[change.kind];
+                final int typeColumn = typeColumn(change.kind);
+                for (int i = 0; i < columns.length; i++) {
+                    // Without a type, the row keeps the type and label it has
+                    if (typeColumn != -1 && change.values[typeColumn] == null && (i == typeColumn || i == typeColumn + 1)) {
+                        continue;
+                    }
+                    op.withValue(columns[i], change.values[i]);
+                }
+            }
+            ops.add(op.withYieldAllowed(ops.size() == start).build());
+        }
+        if (avatar != null) {
+            ContentProviderOperation.Builder op;
+            if (photoId == -1) {
+                op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+                        .withValue(ContactsContract.Data.RAW_CONTACT_ID, rawContactId)
+                        .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.Photo.CONTENT_ITEM_TYPE)
+                        .withValue(ContactsContract.Data.IS_SUPER_PRIMARY, 1);
+            } else {
+                op = ContentProviderOperation.newUpdate(ContentUris.withAppendedId(ContactsContract.Data.CONTENT_URI, photoId));
+            }
+            ops.add(op.withValue(CommonDataKinds.Photo.PHOTO, avatar).withYieldAllowed(ops.size() == start).build());
+        }
+    }
+
+    private ArrayList<ArrayList<Row>> readRows(Cursor cursor) {
+        ArrayList<ArrayList<Row>> rows = new ArrayList<>(KIND_COUNT);
+        for (int kind = 0; kind < KIND_COUNT; kind++) {
+            rows.add(new ArrayList<Row>());
+        }
+        if (cursor == null) {
+            return rows;
+        }
+        final int idColumn = cursor.getColumnIndex(ContactsContract.Data._ID);
+        final int rawContactIdColumn = cursor.getColumnIndex(ContactsContract.Data.RAW_CONTACT_ID);
+        final int mimeTypeColumn = cursor.getColumnIndex(ContactsContract.Data.MIMETYPE);
+        final int eventTypeColumn = cursor.getColumnIndex(CommonDataKinds.Event.TYPE);
+        final int photoColumn = cursor.getColumnIndex(CommonDataKinds.Photo.PHOTO);
+        while (cursor.moveToNext()) {
+            final String mimeType = cursor.getString(mimeTypeColumn);
+            final int kind = Arrays.asList(MIMETYPES).indexOf(mimeType);
+            // Inserted rows go to the raw contact holding the name, or any raw contact without one
+            if (rawContactId == -1 || kind == KIND_NAME && rows.get(KIND_NAME).isEmpty()) {
+                rawContactId = cursor.getLong(rawContactIdColumn);
+            }
+            if (CommonDataKinds.Photo.CONTENT_ITEM_TYPE.equals(mimeType)) {
+                if (photoId == -1) {
+                    photoId = cursor.getLong(idColumn);
+                    photo = cursor.getBlob(photoColumn);
+                }
+                continue;
+            }
+            if (kind == -1 || kind == KIND_BIRTHDAY && !BIRTHDAY_TYPE.equals(cursor.getString(eventTypeColumn))) {
+                continue;
+            }
+            String[] columns = COLUMNS[kind];
+            String[] values = new String[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                values[i] = cursor.getString(cursor.getColumnIndex(columns[i]));
+            }
+            rows.get(kind).add(new Row(cursor.getLong(idColumn), normalize(kind, values)));
+        }
+        cursor.close();
+        return rows;
+    }
+
+    /**
+     * Pairs the existing rows of a kind with the values of the contact: equal ones are kept,
+     * the remaining ones are updated in order, and the rest inserted or deleted, but for names
+     */
+    void match(int kind, ArrayList<Row> existing, ArrayList<String[]> values) {
+        ArrayList<Row> unmatchedRows = new ArrayList<>(existing);
+        ArrayList<String[]> unmatchedValues = new ArrayList<>();
+        for (String[] value : values) {
+            boolean matched = false;
+            for (int i = 0; i < unmatchedRows.size(); i++) {
+                if (matches(kind, unmatchedRows.get(i).values, value)) {
+                    unmatchedRows.remove(i);
+                    matched = true;
+                    break;
+                }
+            }
+            if (!matched) {
+                unmatchedValues.add(value);
+            }
+        }
+        final int updates = Math.min(unmatchedRows.size(), unmatchedValues.size());
+        for (int i = 0; i < updates; i++) {
+            changes.add(new Change(kind, unmatchedRows.get(i).id, unmatchedValues.get(i)));
+        }
+        for (int i = updates; i < unmatchedValues.size(); i++) {
+            changes.add(new Change(kind, -1, unmatchedValues.get(i)));
+        }
+        if (kind == KIND_NAME) {
+            return;
+        }
+        for (int i = updates; i < unmatchedRows.size(); i++) {
+            changes.add(new Change(kind, unmatchedRows.get(i).id, null));
+        }
+    }
+
+    /**
+     * @return whether a row holds the values, a value without a type matching any type and label
+     */
+    static boolean matches(int kind, String[] row, String[] values) {
+        final int typeColumn = typeColumn(kind);
+        for (int i = 0; i < values.length; i++) {
+            if (typeColumn != -1 && values[typeColumn] == null && (i == typeColumn || i == typeColumn + 1)) {
+                continue;
+            }
+            if (row[i] == null ? values[i] != null : !row[i].equals(values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the rows the contact should have for a kind, with the values of COLUMNS
+     */
+    static ArrayList<String[]> getValues(int kind, Contact contact) {
+        ArrayList<String[]> values = new ArrayList<>();
+        switch (kind) {
+            case KIND_NAME:
+                values.add(new String[]{contact.givenName, contact.middleName, contact.familyName, contact.prefix, contact.suffix});
+                break;
+            case KIND_ORGANIZATION:
+                values.add(new String[]{contact.company, contact.jobTitle});
+                break;
+            case KIND_NOTE:
+                values.add(new String[]{contact.note});
+                break;
+            case KIND_PHONE:
+                for (Item phone : contact.phones) {
+                    values.add(new String[]{phone.value, typeToString(phone.type), phone.label});
+                }
+                break;
+            case KIND_EMAIL:
+                for (Item email : contact.emails) {
+                    values.add(new String[]{email.value, typeToString(email.type), email.label});
+                }
+                break;
+            case KIND_POSTAL:
+                for (PostalAddress address : contact.postalAddresses) {
+                    values.add(new String[]{typeToString(address.type), address.label, address.street,
+                            address.city, address.region, address.postcode, address.country});
+                }
+                break;
+            case KIND_BIRTHDAY:
+                values.add(new String[]{contact.birthday});
+                break;
+        }
+        ArrayList<String[]> normalized = new ArrayList<>(values.size());
+        for (String[] value : values) {
+            value = normalize(kind, value);
+            // A single-row kind without any value has no row
+            if (kind != KIND_NAME && isEmpty(value)) {
+                continue;
+            }
+            normalized.add(value);
+        }
+        return normalized;
+    }
+
+    /**
+     * @return the type sent by Flutter, null when it sent none
+     */
+    private static String typeToString(int type) {
+        return type == -1 ? null : String.valueOf(type);
+    }
+
+    /**
+     * @return the column of the type of a kind, followed by the one of its label, or -1
+     */
+    private static int typeColumn(int kind) {
+        switch (kind) {
+            case KIND_PHONE:
+            case KIND_EMAIL:
+                return 1;
+            case KIND_POSTAL:
+                return 0;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Turns empty strings into nulls, and drops the labels of the rows which are not of the
+     * custom type since they are not shown
+     */
+    private static String[] normalize(int kind, String[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null && values[i].isEmpty()) {
+                values[i] = null;
+            }
+        }
+        final int typeColumn = typeColumn(kind);
+        if (typeColumn != -1 && values[typeColumn] != null && !CUSTOM_TYPE.equals(values[typeColumn])) {
+            values[typeColumn + 1] = null;
+        }
+        return values;
+    }
+
+    private static boolean isEmpty(String[] values) {
+        for (String value : values) {
+            if (value != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String[] buildProjection() {
+        LinkedHashSet<String> projection = new LinkedHashSet<>(Arrays.asList(
+                ContactsContract.Data._ID,
+                ContactsContract.Data.RAW_CONTACT_ID,
+                ContactsContract.Data.MIMETYPE,
+                CommonDataKinds.Event.TYPE,
+                CommonDataKinds.Photo.PHOTO));
+        for (String[] columns : COLUMNS) {
+            projection.addAll(Arrays.asList(columns));
+        }
+        return projection.toArray(new String[projection.size()]);
+    }
+}
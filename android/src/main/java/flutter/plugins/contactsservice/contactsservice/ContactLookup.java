@@ -0,0 +1,290 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Build;
+import android.provider.ContactsContract;
+import android.telephony.PhoneNumberUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static android.provider.ContactsContract.CommonDataKinds.Email;
+import static android.provider.ContactsContract.CommonDataKinds.Phone;
+
+/***
+ * Resolves many phone numbers or email addresses to the contacts having them, in a handful of
+ * queries rather than one or two per value.
+ *
+ * Phone numbers are formatted to E.164 and matched against the indexed NORMALIZED_NUMBER
+ * column, a chunk of bound arguments at a time. The numbers left, whose stored number has no
+ * normalized form or was saved without its country code, are then matched like PhoneLookup does,
+ * on their last {@link #MIN_MATCH} digits, against an index built from a single pass over the
+ * phones of the address book.
+ ***/
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+class ContactLookup {
+
+    // Stays under the 999 bound arguments older SQLite versions accept per statement
+    static final int MAX_SELECTION_ARGS = 900;
+    // Trailing digits compared by PhoneLookup, PhoneNumberUtils.MIN_MATCH
+    static final int MIN_MATCH = 7;
+
+    private static final String[] PHONE_PROJECTION = {
+            Phone.CONTACT_ID, ContactsContract.Contacts.DISPLAY_NAME_PRIMARY, Phone.NUMBER, Phone.NORMALIZED_NUMBER,
+    };
+    private static final String[] EMAIL_PROJECTION = {
+            Email.CONTACT_ID, ContactsContract.Contacts.DISPLAY_NAME_PRIMARY, Email.ADDRESS,
+    };
+
+    private final ContentResolver contentResolver;
+    private final String countryIso;
+
+    /**
+     * @param countryIso country of the numbers written without a country code, the one of the
+     *                   default locale when null
+     */
+    ContactLookup(ContentResolver contentResolver, String countryIso) {
+        this.contentResolver = contentResolver;
+        this.countryIso = countryIso != null ? countryIso.toUpperCase(Locale.ROOT) : Locale.getDefault().getCountry();
+    }
+
+    /**
+     * Tells whether two numbers ending with the same {@link #MIN_MATCH} digits are the same
+     */
+    interface NumberComparison {
+        boolean matches(String a, String b);
+    }
+
+    private static final NumberComparison PHONE_NUMBER_UTILS = new NumberComparison() {
+        @Override
+        public boolean matches(String a, String b) {
+            return PhoneNumberUtils.compare(a, b);
+        }
+    };
+
+    /**
+     * @return the contacts matching each of the numbers, as maps with an identifier, a
+     * displayName and the value stored for the contact, in the order of the numbers
+     */
+    HashMap<String, ArrayList<HashMap<String, Object>>> lookupPhones(List<String> phones) {
+        LinkedHashMap<String, Matches> matches = newMatches(phones);
+        HashMap<String, ArrayList<Matches>> byNormalizedNumber = new HashMap<>();
+        for (Map.Entry<String, Matches> entry : matches.entrySet()) {
+            String normalized = normalize(entry.getKey());
+            if (normalized != null) {
+                add(byNormalizedNumber, normalized, entry.getValue());
+            }
+        }
+
+        ArrayList<String> normalizedNumbers = new ArrayList<>(byNormalizedNumber.keySet());
+        for (List<String> chunk : chunks(normalizedNumbers, MAX_SELECTION_ARGS)) {
+            matchPhones(contentResolver.query(Phone.CONTENT_URI, PHONE_PROJECTION,
+                    ContactsServicePlugin.getInSelection(Phone.NORMALIZED_NUMBER, chunk.size()),
+                    chunk.toArray(new String[chunk.size()]), null), byNormalizedNumber);
+        }
+
+        HashMap<String, ArrayList<String>> unmatched = getUnmatched(matches);
+        if (!unmatched.isEmpty()) {
+            // Scans the phones once for all of them
+            matchPhonesLoosely(contentResolver.query(Phone.CONTENT_URI, PHONE_PROJECTION, null, null, null),
+                    unmatched, matches, PHONE_NUMBER_UTILS);
+        }
+        return toMap(matches);
+    }
+
+    /**
+     * @return the contacts having each of the email addresses, compared regardless of case,
+     * like {@link #lookupPhones(List)}
+     */
+    HashMap<String, ArrayList<HashMap<String, Object>>> lookupEmails(List<String> emails) {
+        LinkedHashMap<String, Matches> matches = newMatches(emails);
+        HashMap<String, ArrayList<Matches>> byAddress = new HashMap<>();
+        for (Map.Entry<String, Matches> entry : matches.entrySet()) {
+            add(byAddress, entry.getKey().trim().toLowerCase(Locale.ROOT), entry.getValue());
+        }
+
+        ArrayList<String> addresses = new ArrayList<>(byAddress.keySet());
+        for (List<String> chunk : chunks(addresses, MAX_SELECTION_ARGS)) {
+            matchEmails(contentResolver.query(Email.CONTENT_URI, EMAIL_PROJECTION,
+                    ContactsServicePlugin.getInSelection(Email.ADDRESS + " COLLATE NOCASE", chunk.size()),
+                    chunk.toArray(new String[chunk.size()]), null), byAddress);
+        }
+        return toMap(matches);
+    }
+
+    /**
+     * @return the matches of each value, leaving out null and repeated values, in the order of
+     * the values
+     */
+    static LinkedHashMap<String, Matches> newMatches(List<String> values) {
+        LinkedHashMap<String, Matches> matches = new LinkedHashMap<>();
+        for (String value : values) {
+            if (value == null || matches.containsKey(value)) continue;
+            matches.put(value, new Matches());
+        }
+        return matches;
+    }
+
+    /**
+     * Adds the contact of each row of a cursor of {@link #PHONE_PROJECTION} to the matches of
+     * its NORMALIZED_NUMBER, closing the cursor
+     * @param byNormalizedNumber the matches of the numbers having each normalized form
+     */
+    static void matchPhones(Cursor cursor, HashMap<String, ArrayList<Matches>> byNormalizedNumber) {
+        if (cursor == null) return;
+        try {
+            while (cursor.moveToNext()) {
+                ArrayList<Matches> numberMatches = byNormalizedNumber.get(cursor.getString(3));
+                if (numberMatches == null) continue;
+                for (Matches phoneMatches : numberMatches) {
+                    phoneMatches.add(cursor.getString(0), cursor.getString(1), cursor.getString(2));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the numbers without any match, by their {@link #minMatch(String)} key, leaving
+     * out those with fewer digits than that
+     */
+    static HashMap<String, ArrayList<String>> getUnmatched(LinkedHashMap<String, Matches> matches) {
+        HashMap<String, ArrayList<String>> unmatched = new HashMap<>();
+        for (Map.Entry<String, Matches> entry : matches.entrySet()) {
+            String key = minMatch(entry.getKey());
+            if (entry.getValue().isEmpty() && key != null) {
+                add(unmatched, key, entry.getKey());
+            }
+        }
+        return unmatched;
+    }
+
+    /**
+     * Adds the contact of each row of a cursor of {@link #PHONE_PROJECTION} to the numbers
+     * ending with the same digits as its NUMBER, which the comparison tells are the same,
+     * closing the cursor
+     * @param unmatched the numbers by their {@link #minMatch(String)} key
+     */
+    static void matchPhonesLoosely(Cursor cursor, HashMap<String, ArrayList<String>> unmatched,
+                                   HashMap<String, Matches> matches, NumberComparison comparison) {
+        if (cursor == null) return;
+        try {
+            while (cursor.moveToNext()) {
+                String number = cursor.getString(2);
+                ArrayList<String> phones = unmatched.get(minMatch(number));
+                if (phones == null) continue;
+                for (String phone : phones) {
+                    if (comparison.matches(phone, number)) {
+                        matches.get(phone).add(cursor.getString(0), cursor.getString(1), number);
+                    }
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Adds the contact of each row of a cursor of {@link #EMAIL_PROJECTION} to the matches of
+     * its ADDRESS in lowercase, closing the cursor
+     * @param byAddress the matches of the addresses, trimmed and in lowercase
+     */
+    static void matchEmails(Cursor cursor, HashMap<String, ArrayList<Matches>> byAddress) {
+        if (cursor == null) return;
+        try {
+            while (cursor.moveToNext()) {
+                String address = cursor.getString(2);
+                ArrayList<Matches> addressMatches = address != null ? byAddress.get(address.toLowerCase(Locale.ROOT)) : null;
+                if (addressMatches == null) continue;
+                for (Matches emailMatches : addressMatches) {
+                    emailMatches.add(cursor.getString(0), cursor.getString(1), address);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the number in E.164, as stored in NORMALIZED_NUMBER, or null when it cannot be
+     * formatted
+     */
+    private String normalize(String phone) {
+        String normalized = PhoneNumberUtils.formatNumberToE164(phone, countryIso);
+        if (normalized == null) {
+            // Already international, or too short to be formatted
+            normalized = PhoneNumberUtils.normalizeNumber(phone);
+        }
+        return normalized == null || normalized.isEmpty() ? null : normalized;
+    }
+
+    /**
+     * @return the last {@link #MIN_MATCH} digits of the number, reversed like the keys of the
+     * provider, or null for a number with fewer digits than that
+     */
+    static String minMatch(String number) {
+        if (number == null) return null;
+        StringBuilder key = new StringBuilder(MIN_MATCH);
+        for (int i = number.length() - 1; i >= 0 && key.length() < MIN_MATCH; i--) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                key.append(c);
+            }
+        }
+        return key.length() == MIN_MATCH ? key.toString() : null;
+    }
+
+    static <T> ArrayList<List<T>> chunks(List<T> values, int size) {
+        ArrayList<List<T>> chunks = new ArrayList<>();
+        for (int start = 0; start < values.size(); start += size) {
+            chunks.add(values.subList(start, Math.min(values.size(), start + size)));
+        }
+        return chunks;
+    }
+
+    static <T> void add(HashMap<String, ArrayList<T>> map, String key, T value) {
+        ArrayList<T> values = map.get(key);
+        if (values == null) {
+            values = new ArrayList<>(1);
+            map.put(key, values);
+        }
+        values.add(value);
+    }
+
+    static HashMap<String, ArrayList<HashMap<String, Object>>> toMap(LinkedHashMap<String, Matches> matches) {
+        HashMap<String, ArrayList<HashMap<String, Object>>> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Matches> entry : matches.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().contacts);
+        }
+        return result;
+    }
+
+    /**
+     * The contacts matching a value, each contact being listed once
+     */
+    static final class Matches {
+        final ArrayList<HashMap<String, Object>> contacts = new ArrayList<>(1);
+        private final LinkedHashSet<String> identifiers = new LinkedHashSet<>();
+
+        void add(String identifier, String displayName, String value) {
+            if (identifier == null || !identifiers.add(identifier)) return;
+            HashMap<String, Object> contact = new HashMap<>();
+            contact.put("identifier", identifier);
+            contact.put("displayName", displayName);
+            contact.put("value", value);
+            contacts.add(contact);
+        }
+
+        boolean isEmpty() {
+            return identifiers.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.annotation.TargetApi;
+import android.content.res.Resources;
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.os.Build;
+import android.provider.ContactsContract;
+
+import static android.provider.ContactsContract.CommonDataKinds;
+import static android.provider.ContactsContract.CommonDataKinds.Email;
+import static android.provider.ContactsContract.CommonDataKinds.Organization;
+import static android.provider.ContactsContract.CommonDataKinds.Phone;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredName;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
+
+import java.util.HashMap;
+
+/***
+ * Decodes the rows of a {@link ContactsContract.Data} cursor into contacts.
+ * Column indexes are resolved once per cursor, and rows are dispatched on the
+ * ordinal of their MIME type, which is matched without allocating a String.
+ * Labels come from a {@link LabelTable}, and custom ones are shared by the
+ * rows which have the same.
+ ***/
+@TargetApi(Build.VERSION_CODES.ECLAIR)
+class ContactRowDecoder {
+
+    static final int MIMETYPE_OTHER = -1;
+    static final int MIMETYPE_NAME = 0;
+    static final int MIMETYPE_NOTE = 1;
+    static final int MIMETYPE_PHONE = 2;
+    static final int MIMETYPE_EMAIL = 3;
+    static final int MIMETYPE_ORGANIZATION = 4;
+    static final int MIMETYPE_POSTAL = 5;
+    static final int MIMETYPE_EVENT = 6;
+
+    // Indexed by the MIMETYPE_* ordinals above
+    private static final char[][] MIMETYPES = {
+            StructuredName.CONTENT_ITEM_TYPE.toCharArray(),
+            CommonDataKinds.Note.CONTENT_ITEM_TYPE.toCharArray(),
+            Phone.CONTENT_ITEM_TYPE.toCharArray(),
+            Email.CONTENT_ITEM_TYPE.toCharArray(),
+            Organization.CONTENT_ITEM_TYPE.toCharArray(),
+            StructuredPostal.CONTENT_ITEM_TYPE.toCharArray(),
+            CommonDataKinds.Event.CONTENT_ITEM_TYPE.toCharArray(),
+    };
+
+    // The Contact.FIELD_* flag each MIME type is decoded for, indexed like MIMETYPES
+    private static final int[] MIMETYPE_FIELDS = {
+            Contact.FIELD_NAME,
+            Contact.FIELD_NOTE,
+            Contact.FIELD_PHONES,
+            Contact.FIELD_EMAILS,
+            Contact.FIELD_ORGANIZATION,
+            Contact.FIELD_POSTAL_ADDRESSES,
+            Contact.FIELD_BIRTHDAY,
+    };
+
+    private final Cursor cursor;
+    private final LabelTable labels;
+    private final int fields;
+    private final CharArrayBuffer mimeTypeBuffer = new CharArrayBuffer(64);
+    // Custom labels as read from the cursor, to the label of the items
+    private final HashMap<String, String> customLabels = new HashMap<>();
+    private final HashMap<String, String> customPostalLabels = new HashMap<>();
+
+    private final int contactIdColumn, mimeTypeColumn, displayNameColumn, accountTypeColumn, accountNameColumn;
+    private final int givenNameColumn, middleNameColumn, familyNameColumn, prefixColumn, suffixColumn;
+    private final int noteColumn;
+    private final int phoneNumberColumn, phoneTypeColumn, phoneLabelColumn;
+    private final int emailAddressColumn, emailTypeColumn, emailLabelColumn;
+    private final int companyColumn, jobTitleColumn;
+    private final int postalTypeColumn, postalLabelColumn, streetColumn, cityColumn, postcodeColumn, regionColumn, countryColumn;
+    private final int eventTypeColumn, eventStartDateColumn;
+
+    ContactRowDecoder(Cursor cursor, Resources resources, boolean localizedLabels) {
+        this(cursor, resources, localizedLabels, Contact.ALL_FIELDS);
+    }
+
+    /**
+     * @param fields mask of Contact.FIELD_* flags, rows of other MIME types are skipped and
+     *               their columns may be missing from the cursor
+     */
+    ContactRowDecoder(Cursor cursor, Resources resources, boolean localizedLabels, int fields) {
+        this.cursor = cursor;
+        this.labels = LabelTable.get(resources, localizedLabels);
+        this.fields = fields;
+
+        contactIdColumn = cursor.getColumnIndex(ContactsContract.Data.CONTACT_ID);
+        mimeTypeColumn = cursor.getColumnIndex(ContactsContract.Data.MIMETYPE);
+        displayNameColumn = cursor.getColumnIndex(ContactsContract.Contacts.DISPLAY_NAME);
+        accountTypeColumn = cursor.getColumnIndex(ContactsContract.RawContacts.ACCOUNT_TYPE);
+        accountNameColumn = cursor.getColumnIndex(ContactsContract.RawContacts.ACCOUNT_NAME);
+
+        givenNameColumn = cursor.getColumnIndex(StructuredName.GIVEN_NAME);
+        middleNameColumn = cursor.getColumnIndex(StructuredName.MIDDLE_NAME);
+        familyNameColumn = cursor.getColumnIndex(StructuredName.FAMILY_NAME);
+        prefixColumn = cursor.getColumnIndex(StructuredName.PREFIX);
+        suffixColumn = cursor.getColumnIndex(StructuredName.SUFFIX);
+
+        noteColumn = cursor.getColumnIndex(CommonDataKinds.Note.NOTE);
+
+        phoneNumberColumn = cursor.getColumnIndex(Phone.NUMBER);
+        phoneTypeColumn = cursor.getColumnIndex(Phone.TYPE);
+        phoneLabelColumn = cursor.getColumnIndex(Phone.LABEL);
+
+        emailAddressColumn = cursor.getColumnIndex(Email.ADDRESS);
+        emailTypeColumn = cursor.getColumnIndex(Email.TYPE);
+        emailLabelColumn = cursor.getColumnIndex(Email.LABEL);
+
+        companyColumn = cursor.getColumnIndex(Organization.COMPANY);
+        jobTitleColumn = cursor.getColumnIndex(Organization.TITLE);
+
+        postalTypeColumn = cursor.getColumnIndex(StructuredPostal.TYPE);
+        postalLabelColumn = cursor.getColumnIndex(StructuredPostal.LABEL);
+        streetColumn = cursor.getColumnIndex(StructuredPostal.STREET);
+        cityColumn = cursor.getColumnIndex(StructuredPostal.CITY);
+        postcodeColumn = cursor.getColumnIndex(StructuredPostal.POSTCODE);
+        regionColumn = cursor.getColumnIndex(StructuredPostal.REGION);
+        countryColumn = cursor.getColumnIndex(StructuredPostal.COUNTRY);
+
+        eventTypeColumn = cursor.getColumnIndex(CommonDataKinds.Event.TYPE);
+        eventStartDateColumn = cursor.getColumnIndex(CommonDataKinds.Event.START_DATE);
+    }
+
+    /**
+     * @return the CONTACT_ID of the row the cursor is positioned on
+     */
+    long getContactId() {
+        return cursor.getLong(contactIdColumn);
+    }
+
+    /**
+     * Creates the contact of the row the cursor is positioned on and reads the
+     * columns which are the same for every row of that contact
+     */
+    Contact newContact(long contactId) {
+        Contact contact = new Contact(String.valueOf(contactId));
+        contact.displayName = cursor.getString(displayNameColumn);
+        contact.androidAccountType = cursor.getString(accountTypeColumn);
+        contact.androidAccountName = cursor.getString(accountNameColumn);
+        return contact;
+    }
+
+    /**
+     * Reads the data row the cursor is positioned on into the contact it belongs to
+     */
+    void readRow(Contact contact) {
+        final int mimeType = getMimeType();
+        if (mimeType == MIMETYPE_OTHER || (fields & MIMETYPE_FIELDS[mimeType]) == 0) {
+            return;
+        }
+        switch (mimeType) {
+            case MIMETYPE_NAME:
+                contact.givenName = cursor.getString(givenNameColumn);
+                contact.middleName = cursor.getString(middleNameColumn);
+                contact.familyName = cursor.getString(familyNameColumn);
+                contact.prefix = cursor.getString(prefixColumn);
+                contact.suffix = cursor.getString(suffixColumn);
+                break;
+            case MIMETYPE_NOTE:
+                contact.note = cursor.getString(noteColumn);
+                break;
+            case MIMETYPE_PHONE: {
+                String phoneNumber = cursor.getString(phoneNumberColumn);
+                if (phoneNumber != null && !phoneNumber.isEmpty()) {
+                    int type = cursor.getInt(phoneTypeColumn);
+                    String label = labels.phoneLabel(type);
+                    if (label == null) {
+                        label = getCustomLabel(phoneLabelColumn);
+                    }
+                    contact.phones.add(new Item(label, phoneNumber, type));
+                }
+                break;
+            }
+            case MIMETYPE_EMAIL: {
+                String email = cursor.getString(emailAddressColumn);
+                if (email != null && !email.isEmpty()) {
+                    int type = cursor.getInt(emailTypeColumn);
+                    String label = labels.emailLabel(type);
+                    if (label == null) {
+                        label = getCustomLabel(emailLabelColumn);
+                    }
+                    contact.emails.add(new Item(label, email, type));
+                }
+                break;
+            }
+            case MIMETYPE_ORGANIZATION:
+                contact.company = cursor.getString(companyColumn);
+                contact.jobTitle = cursor.getString(jobTitleColumn);
+                break;
+            case MIMETYPE_POSTAL: {
+                int type = cursor.getInt(postalTypeColumn);
+                String label = labels.postalLabel(type);
+                if (label == null) {
+                    label = getCustomPostalLabel();
+                }
+                contact.postalAddresses.add(new PostalAddress(label,
+                        cursor.getString(streetColumn),
+                        cursor.getString(cityColumn),
+                        cursor.getString(postcodeColumn),
+                        cursor.getString(regionColumn),
+                        cursor.getString(countryColumn),
+                        type));
+                break;
+            }
+            case MIMETYPE_EVENT:
+                if (cursor.getInt(eventTypeColumn) == CommonDataKinds.Event.TYPE_BIRTHDAY) {
+                    contact.birthday = cursor.getString(eventStartDateColumn);
+                }
+                break;
+        }
+    }
+
+    /**
+     * @return the lowercase custom label of the phone or email row the cursor is positioned on,
+     * the same instance for every row with the same label
+     */
+    private String getCustomLabel(int labelColumn) {
+        String customLabel = cursor.getString(labelColumn);
+        if (customLabel == null) {
+            return "";
+        }
+        String label = customLabels.get(customLabel);
+        if (label == null) {
+            label = customLabel.toLowerCase();
+            customLabels.put(customLabel, label);
+        }
+        return label;
+    }
+
+    /**
+     * @return the custom label of the postal address row the cursor is positioned on, kept
+     * as it is rather than lowercased like those of phones and emails
+     */
+    private String getCustomPostalLabel() {
+        String customLabel = cursor.getString(postalLabelColumn);
+        if (customLabel == null) {
+            return "";
+        }
+        String label = customPostalLabels.get(customLabel);
+        if (label == null) {
+            label = customLabel;
+            customPostalLabels.put(customLabel, label);
+        }
+        return label;
+    }
+
+    /**
+     * @return the MIMETYPE_* ordinal of the row the cursor is positioned on
+     */
+    int getMimeType() {
+        cursor.copyStringToBuffer(mimeTypeColumn, mimeTypeBuffer);
+        for (int i = 0; i < MIMETYPES.length; i++) {
+            if (matches(MIMETYPES[i], mimeTypeBuffer.data, mimeTypeBuffer.sizeCopied)) {
+                return i;
+            }
+        }
+        return MIMETYPE_OTHER;
+    }
+
+    private static boolean matches(char[] mimeType, char[] chars, int length) {
+        if (mimeType.length != length) {
+            return false;
+        }
+        // The known types share the "vnd.android.cursor.item/" prefix, so compare from the end
+        for (int i = length - 1; i >= 0; i--) {
+            if (mimeType[i] != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,439 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/***
+ * Type-ahead search over the names, companies, emails and phone numbers of the contacts.
+ *
+ * Every field is split into lowercase tokens without accents, kept in a sorted map from the
+ * token to the contacts having it, so that the tokens starting with a query term are a range
+ * of the map. Phone numbers are indexed by their digits, with and without their first digits so
+ * that a number can be found without its country code. A query matches the contacts having a
+ * token starting with each of its terms, ranked by where the terms matched.
+ *
+ * Each contact has a slot in arrays reused from one search to the next, so that scoring the
+ * thousands of contacts a short prefix matches allocates nothing, and only the best ones are
+ * kept and sorted.
+ *
+ * Contacts are added, replaced and removed one at a time, and the index remembers when it was
+ * last brought up to date so that only the contacts changed since then need to be read again.
+ ***/
+class ContactSearchIndex {
+
+    // How much a match counts depending on the field, the first word of the name being best
+    static final int WEIGHT_NAME_START = 5;
+    static final int WEIGHT_NAME = 4;
+    static final int WEIGHT_COMPANY = 2;
+    static final int WEIGHT_EMAIL = 2;
+    static final int WEIGHT_PHONE = 2;
+    // Added when a term is a whole token rather than its start
+    private static final int EXACT_BONUS = 1;
+
+    // Leading digits dropped from phone numbers, the longest country codes, and the digits of the
+    // shortest local numbers, which can be looked up without their area code
+    private static final int PHONE_PREFIX_DIGITS = 3;
+    private static final int LOCAL_NUMBER_DIGITS = 7;
+
+    private static final class Document {
+        final String identifier;
+        final String displayName;
+        // Lowercase display name, ordering the contacts of equal scores
+        final String sortKey;
+        final int slot;
+        String[] tokens;
+
+        Document(String identifier, String displayName, int slot) {
+            this.identifier = identifier;
+            this.displayName = displayName;
+            this.sortKey = displayName.toLowerCase(Locale.ROOT);
+            this.slot = slot;
+        }
+    }
+
+    private static final class Posting {
+        final Document document;
+        final int weight;
+        // The text of the field the token comes from, returned with the matches
+        final String value;
+
+        Posting(Document document, int weight, String value) {
+            this.document = document;
+            this.weight = weight;
+            this.value = value;
+        }
+    }
+
+    private final TreeMap<String, ArrayList<Posting>> postings = new TreeMap<>();
+    private final HashMap<String, Document> documents = new HashMap<>();
+    private final ArrayList<Document> slots = new ArrayList<>();
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount;
+    // Time of the last update, -1 until the index is built
+    private long updatedAt = -1;
+    private volatile boolean stale = true;
+
+    // State of the search running, indexed by slot. A slot belongs to the current search when its
+    // searchIds entry is searchId, and then matched the number of terms in matchedTerms
+    private int searchId;
+    private int[] searchIds = new int[0];
+    private int[] matchedTerms = new int[0];
+    private int[] scores = new int[0];
+    private int[] termScores = new int[0];
+    private Posting[] bestPostings = new Posting[0];
+    private int[] candidates = new int[0];
+
+    /**
+     * Marks the index as needing to read the contacts changed since its last update
+     */
+    void invalidate() {
+        stale = true;
+    }
+
+    synchronized boolean needsUpdate() {
+        return stale || updatedAt < 0;
+    }
+
+    synchronized boolean isBuilt() {
+        return updatedAt >= 0;
+    }
+
+    /**
+     * Starts an update, the changes notified from then on being left to the next one
+     * @return the time of the previous update, -1 when the index is not built
+     */
+    synchronized long beginUpdate() {
+        stale = false;
+        return updatedAt;
+    }
+
+    /**
+     * @param timestamp time up to which the contacts changes were read
+     */
+    synchronized void endUpdate(long timestamp) {
+        updatedAt = timestamp;
+    }
+
+    synchronized int size() {
+        return documents.size();
+    }
+
+    synchronized void replaceAll(List<Contact> contacts) {
+        postings.clear();
+        documents.clear();
+        slots.clear();
+        freeSlotCount = 0;
+        for (Contact contact : contacts) {
+            put(contact);
+        }
+    }
+
+    /**
+     * Adds the contact, replacing the previous version of it
+     */
+    synchronized void put(Contact contact) {
+        remove(contact.identifier);
+        String displayName = contact.displayName;
+        if (displayName == null || displayName.isEmpty()) {
+            displayName = join(contact.givenName, contact.middleName, contact.familyName);
+        }
+        Document document = new Document(contact.identifier, displayName, allocateSlot());
+
+        // The best posting of each token of the contact
+        HashMap<String, Posting> tokens = new HashMap<>();
+        ArrayList<String> words = tokenize(displayName);
+        for (int i = 0; i < words.size(); i++) {
+            add(tokens, words.get(i), new Posting(document, i == 0 ? WEIGHT_NAME_START : WEIGHT_NAME, displayName));
+        }
+        for (String name : new String[]{contact.givenName, contact.middleName, contact.familyName}) {
+            for (String word : tokenize(name)) {
+                add(tokens, word, new Posting(document, WEIGHT_NAME, displayName));
+            }
+        }
+        for (String word : tokenize(contact.company)) {
+            add(tokens, word, new Posting(document, WEIGHT_COMPANY, contact.company));
+        }
+        for (Item email : contact.emails) {
+            for (String word : tokenize(email.value)) {
+                add(tokens, word, new Posting(document, WEIGHT_EMAIL, email.value));
+            }
+        }
+        for (Item phone : contact.phones) {
+            for (String digits : phoneTokens(phone.value)) {
+                add(tokens, digits, new Posting(document, WEIGHT_PHONE, phone.value));
+            }
+        }
+
+        document.tokens = tokens.keySet().toArray(new String[tokens.size()]);
+        for (Map.Entry<String, Posting> token : tokens.entrySet()) {
+            ArrayList<Posting> list = postings.get(token.getKey());
+            if (list == null) {
+                list = new ArrayList<>(1);
+                postings.put(token.getKey(), list);
+            }
+            list.add(token.getValue());
+        }
+        documents.put(document.identifier, document);
+        slots.set(document.slot, document);
+    }
+
+    synchronized void remove(String identifier) {
+        Document document = documents.remove(identifier);
+        if (document == null) return;
+        for (String token : document.tokens) {
+            ArrayList<Posting> list = postings.get(token);
+            for (int i = list.size() - 1; i >= 0; i--) {
+                if (list.get(i).document == document) {
+                    list.remove(i);
+                }
+            }
+            if (list.isEmpty()) {
+                postings.remove(token);
+            }
+        }
+        slots.set(document.slot, null);
+        if (freeSlotCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+        }
+        freeSlots[freeSlotCount++] = document.slot;
+    }
+
+    synchronized void clear() {
+        postings.clear();
+        documents.clear();
+        slots.clear();
+        freeSlotCount = 0;
+        updatedAt = -1;
+        searchIds = matchedTerms = scores = termScores = candidates = new int[0];
+        bestPostings = new Posting[0];
+    }
+
+    private int allocateSlot() {
+        if (freeSlotCount > 0) {
+            return freeSlots[--freeSlotCount];
+        }
+        slots.add(null);
+        return slots.size() - 1;
+    }
+
+    /**
+     * @return the best matches of the query, as maps with an identifier, a displayName and the
+     * value of the field which matched
+     */
+    synchronized ArrayList<HashMap<String, Object>> search(String query, int limit) {
+        // The digits of a phone number are looked up as a whole, whatever their grouping
+        String digits = digitsOf(query != null ? query.trim() : null);
+        ArrayList<String> terms = digits != null ? new ArrayList<>(Collections.singletonList(digits)) : tokenize(query);
+        ArrayList<HashMap<String, Object>> results = new ArrayList<>();
+        if (terms.isEmpty() || limit <= 0) {
+            return results;
+        }
+        // The longest terms usually match the fewest tokens, the others only need to be looked
+        // up for the contacts matching them
+        Collections.sort(terms, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return b.length() - a.length();
+            }
+        });
+        prepareSearch();
+
+        int candidateCount = 0;
+        for (int t = 0; t < terms.size(); t++) {
+            String term = terms.get(t);
+            for (Map.Entry<String, ArrayList<Posting>> token : postings.subMap(term, term + Character.MAX_VALUE).entrySet()) {
+                int bonus = token.getKey().length() == term.length() ? EXACT_BONUS : 0;
+                ArrayList<Posting> list = token.getValue();
+                for (int i = 0, size = list.size(); i < size; i++) {
+                    Posting posting = list.get(i);
+                    int slot = posting.document.slot;
+                    int score = posting.weight + bonus;
+                    if (searchIds[slot] != searchId) {
+                        if (t > 0) continue;
+                        searchIds[slot] = searchId;
+                        matchedTerms[slot] = 0;
+                        scores[slot] = 0;
+                        candidates[candidateCount++] = slot;
+                    }
+                    if (matchedTerms[slot] == t) {
+                        // First token of the contact matching this term
+                        matchedTerms[slot] = t + 1;
+                        termScores[slot] = score;
+                        if (t == 0) bestPostings[slot] = posting;
+                    } else if (matchedTerms[slot] == t + 1 && score > termScores[slot]) {
+                        termScores[slot] = score;
+                        // The longest term tells best what was looked for
+                        if (t == 0) bestPostings[slot] = posting;
+                    }
+                }
+            }
+            // Keeps the contacts which matched every term so far
+            int kept = 0;
+            for (int i = 0; i < candidateCount; i++) {
+                int slot = candidates[i];
+                if (matchedTerms[slot] == t + 1) {
+                    scores[slot] += termScores[slot];
+                    candidates[kept++] = slot;
+                }
+            }
+            candidateCount = kept;
+            if (candidateCount == 0) {
+                return results;
+            }
+        }
+
+        // Only the best ones are kept in order, most candidates being rejected by one comparison
+        int[] top = new int[Math.min(limit, candidateCount)];
+        int topCount = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            int slot = candidates[i];
+            if (topCount == top.length && !isBetter(slot, top[topCount - 1])) continue;
+            int position = topCount < top.length ? topCount++ : topCount - 1;
+            while (position > 0 && isBetter(slot, top[position - 1])) {
+                top[position] = top[position - 1];
+                position--;
+            }
+            top[position] = slot;
+        }
+
+        for (int i = 0; i < topCount; i++) {
+            Document document = slots.get(top[i]);
+            HashMap<String, Object> result = new HashMap<>();
+            result.put("identifier", document.identifier);
+            result.put("displayName", document.displayName);
+            result.put("value", bestPostings[top[i]].value);
+            results.add(result);
+        }
+        return results;
+    }
+
+    private void prepareSearch() {
+        int size = slots.size();
+        if (searchIds.length < size) {
+            int capacity = Math.max(size, searchIds.length * 2);
+            searchIds = Arrays.copyOf(searchIds, capacity);
+            matchedTerms = Arrays.copyOf(matchedTerms, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+            termScores = Arrays.copyOf(termScores, capacity);
+            bestPostings = Arrays.copyOf(bestPostings, capacity);
+            candidates = Arrays.copyOf(candidates, capacity);
+        }
+        searchId++;
+        if (searchId == 0) {
+            // Wrapped around, forget the ids of older searches
+            Arrays.fill(searchIds, -1);
+            searchId = 1;
+        }
+    }
+
+    /**
+     * @return whether the contact in the slot ranks before the one in the other slot: of higher
+     * score, or of equal score and first by name
+     */
+    private boolean isBetter(int slot, int other) {
+        if (scores[slot] != scores[other]) {
+            return scores[slot] > scores[other];
+        }
+        Document document = slots.get(slot);
+        Document otherDocument = slots.get(other);
+        int names = document.sortKey.compareTo(otherDocument.sortKey);
+        return names != 0 ? names < 0 : document.identifier.compareTo(otherDocument.identifier) < 0;
+    }
+
+    private static void add(HashMap<String, Posting> tokens, String token, Posting posting) {
+        Posting previous = tokens.get(token);
+        if (previous == null || posting.weight > previous.weight) {
+            tokens.put(token, posting);
+        }
+    }
+
+    /**
+     * @return the words of the text, lowercase and without accents
+     */
+    static ArrayList<String> tokenize(String text) {
+        ArrayList<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String normalized = isAscii(text) ? text : Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+            } else if (Character.getType(c) != Character.NON_SPACING_MARK && token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the digits of the number, followed by the same without up to
+     * {@link #PHONE_PREFIX_DIGITS} of the first ones, or as many as leave a local number
+     */
+    static ArrayList<String> phoneTokens(String number) {
+        ArrayList<String> tokens = new ArrayList<>();
+        String digits = digitsOf(number);
+        if (digits == null) {
+            return tokens;
+        }
+        for (int start = 0; start < digits.length(); start++) {
+            if (start <= PHONE_PREFIX_DIGITS || digits.length() - start >= LOCAL_NUMBER_DIGITS) {
+                tokens.add(digits.substring(start));
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * @return the digits of a text made of digits and phone number separators only, null for
+     * any other text
+     */
+    static String digitsOf(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            } else if ("+-(). /".indexOf(c) == -1) {
+                return null;
+            }
+        }
+        return digits.length() > 0 ? digits.toString() : null;
+    }
+
+    private static String join(String... parts) {
+        StringBuilder joined = new StringBuilder();
+        for (String part : parts) {
+            if (part == null || part.isEmpty()) continue;
+            if (joined.length() > 0) joined.append(' ');
+            joined.append(part);
+        }
+        return joined.toString();
+    }
+}
@@ -0,0 +1,156 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/***
+ * A copy of the contacts kept in the files of the app, so that they can be shown at startup
+ * before the provider has been read, then corrected with the contacts changed since the copy
+ * was taken.
+ *
+ * The file holds a small header, with the versions of its layout and of the packed encoding
+ * and the time up to which the changes of the provider are in the copy, followed by the contacts as built by {@link PackedContactsEncoder}, which are sent
+ * over the channel as they are read when the packed encoding is asked for. Avatars are not
+ * kept. A new copy is written next to the previous one then renamed over it, so that a copy
+ * being read or interrupted while written is never seen half done.
+ ***/
+class ContactSnapshot {
+
+    private static final int MAGIC = 0x436f6e53; // "ConS"
+    // 2 added the version of PackedContactsEncoder
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * The contacts of the copy, and what they were read with
+     */
+    static final class Data {
+        // Time up to which the changes of the provider are in the copy
+        final long timestamp;
+        final boolean localizedLabels;
+        // Encoded by PackedContactsEncoder
+        final byte[] contacts;
+
+        Data(long timestamp, boolean localizedLabels, byte[] contacts) {
+            this.timestamp = timestamp;
+            this.localizedLabels = localizedLabels;
+            this.contacts = contacts;
+        }
+    }
+
+    private final File file;
+
+    ContactSnapshot(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the copy, or null when there is none or it cannot be read. A copy written by a
+     * version of the plugin with another layout or packed encoding is deleted.
+     */
+    synchronized Data read() {
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            if (in.readInt() != FORMAT_VERSION || in.readInt() != PackedContactsEncoder.VERSION) {
+                // Its contacts would be decoded as garbage, and it is replaced by the next copy anyway
+                close(in);
+                in = null;
+                file.delete();
+                return null;
+            }
+            long timestamp = in.readLong();
+            boolean localizedLabels = in.readBoolean();
+            byte[] contacts = new byte[in.readInt()];
+            in.readFully(contacts);
+            return new Data(timestamp, localizedLabels, contacts);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Replaces the copy, in a way which leaves the previous one in place when it fails
+     */
+    synchronized void write(List<Contact> contacts, long timestamp, boolean localizedLabels) throws IOException {
+        byte[] packed = PackedContactsEncoder.encode(contacts, Contact.ALL_FIELDS);
+        File temporary = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            FileOutputStream stream = new FileOutputStream(temporary);
+            out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(PackedContactsEncoder.VERSION);
+            out.writeLong(timestamp);
+            out.writeBoolean(localizedLabels);
+            out.writeInt(packed.length);
+            out.write(packed);
+            out.flush();
+            // Written to the disk before it replaces the copy
+            stream.getFD().sync();
+        } finally {
+            close(out);
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    synchronized void delete() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    /**
+     * @return the contacts with the updated ones in place of their previous version, the new
+     * ones at the end, and without the deleted ones
+     */
+    static ArrayList<Contact> apply(List<Contact> contacts, List<Contact> updated, List<String> deletedIdentifiers) {
+        HashMap<String, Contact> updates = new HashMap<>();
+        for (Contact contact : updated) {
+            updates.put(contact.identifier, contact);
+        }
+        HashSet<String> deleted = new HashSet<>(deletedIdentifiers);
+        ArrayList<Contact> applied = new ArrayList<>(contacts.size() + updated.size());
+        for (Contact contact : contacts) {
+            if (deleted.contains(contact.identifier)) continue;
+            Contact update = updates.remove(contact.identifier);
+            applied.add(update != null ? update : contact);
+        }
+        for (Contact contact : updated) {
+            // Left in the map when not in the copy yet
+            if (updates.remove(contact.identifier) != null) {
+                applied.add(contact);
+            }
+        }
+        return applied;
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
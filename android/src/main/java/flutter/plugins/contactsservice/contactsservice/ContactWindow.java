@@ -0,0 +1,194 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/***
+ * Backs a list which only shows some of the contacts at a time, by position in the address
+ * book sorted by name, so that the memory used does not grow with the number of contacts.
+ *
+ * Only the identifiers of the contacts are kept for the whole address book, in the order of
+ * the list, which the provider sorts. The contacts themselves are read a page at a time and
+ * the last pages read are kept, along with the page after the last range read in the
+ * direction of the scroll, which the caller prefetches.
+ *
+ * The identifiers are read again once the contacts change, a contact deleted since being
+ * left out of the ranges until then. They are read by one thread at a time, the others waiting
+ * for them, and only kept when the contacts did not change while they were read.
+ ***/
+class ContactWindow {
+
+    static final int PAGE_SIZE = 50;
+    // A screen or two on each side of the visible range
+    static final int MAX_CACHED_PAGES = 6;
+
+    /**
+     * Reads the identifiers of every contact, in the order of the list
+     */
+    interface IndexLoader {
+        long[] load();
+    }
+
+    /**
+     * Reads the contacts of a page
+     */
+    interface PageLoader {
+        /**
+         * @return the contacts of the identifiers which exist, in any order
+         */
+        ArrayList<Contact> load(long[] contactIds);
+    }
+
+    // Null until read, and once the contacts changed
+    private long[] contactIds;
+    // Counts the changes of the contacts, to tell identifiers read before one
+    private int generation;
+    // Held while the identifiers are read, so that they are read once
+    private final Object indexLoad = new Object();
+    // The fields and labels the cached pages were read with
+    private int options;
+    private final LinkedHashMap<Integer, ArrayList<Contact>> pages =
+            new LinkedHashMap<Integer, ArrayList<Contact>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, ArrayList<Contact>> eldest) {
+                    return size() > MAX_CACHED_PAGES;
+                }
+            };
+    private int lastStart;
+    private boolean forward = true;
+
+    /**
+     * @return the identifiers of every contact, read by the loader unless they were already.
+     * Identifiers read while the contacts changed are returned but not kept, nor the pages
+     * read from them, the next call reading them again.
+     */
+    long[] getIndex(IndexLoader loader) {
+        synchronized (indexLoad) {
+            int readGeneration;
+            synchronized (this) {
+                if (contactIds != null) {
+                    return contactIds;
+                }
+                readGeneration = generation;
+            }
+            long[] index = loader.load();
+            synchronized (this) {
+                if (generation == readGeneration) {
+                    contactIds = index;
+                    pages.clear();
+                }
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Drops the identifiers and the pages, to be called when the contacts change
+     */
+    synchronized void invalidate() {
+        generation++;
+        contactIds = null;
+        pages.clear();
+    }
+
+    /**
+     * @param index   the identifiers returned by {@link #getIndex(IndexLoader)}
+     * @param options identifies the fields and labels the loader reads, the pages read with
+     *                other options being dropped
+     * @return the contacts from start, at most count of them, fewer at the end of the list
+     */
+    ArrayList<Contact> range(long[] index, int start, int count, int options, PageLoader loader) {
+        synchronized (this) {
+            if (this.options != options) {
+                this.options = options;
+                pages.clear();
+            }
+            forward = start >= lastStart;
+            lastStart = start;
+        }
+        if (start >= index.length || count <= 0) {
+            return new ArrayList<>();
+        }
+        int end = (int) Math.min(index.length, (long) Math.max(start, 0) + count);
+        start = Math.max(start, 0);
+
+        ArrayList<Contact> contacts = new ArrayList<>(end - start);
+        for (int page = start / PAGE_SIZE; page * PAGE_SIZE < end; page++) {
+            ArrayList<Contact> contactsOfPage = getPage(index, page, options, loader);
+            int pageStart = page * PAGE_SIZE;
+            for (int i = Math.max(start, pageStart) - pageStart; i < contactsOfPage.size() && pageStart + i < end; i++) {
+                Contact contact = contactsOfPage.get(i);
+                if (contact != null) {
+                    contacts.add(contact);
+                }
+            }
+        }
+        return contacts;
+    }
+
+    /**
+     * @return the page following the last range read in the direction of the scroll, -1 when
+     * there is none or it is already cached
+     */
+    synchronized int pageToPrefetch(int start, int count) {
+        if (contactIds == null) {
+            return -1;
+        }
+        int page = forward ? (start + count + PAGE_SIZE - 1) / PAGE_SIZE : start / PAGE_SIZE - 1;
+        if (page < 0 || (long) page * PAGE_SIZE >= contactIds.length || pages.containsKey(page)) {
+            return -1;
+        }
+        return page;
+    }
+
+    /**
+     * Reads the page into the cache unless it is already there
+     */
+    void prefetch(int page, int options, PageLoader loader) {
+        long[] index;
+        synchronized (this) {
+            index = contactIds;
+            if (index == null || this.options != options || pages.containsKey(page)) {
+                return;
+            }
+        }
+        getPage(index, page, options, loader);
+    }
+
+    /**
+     * @return the contacts of the page, at their position in it, null for those which no
+     * longer exist
+     */
+    private ArrayList<Contact> getPage(long[] index, int page, int options, PageLoader loader) {
+        synchronized (this) {
+            // The cached pages are those of the identifiers kept
+            ArrayList<Contact> cached = contactIds == index ? pages.get(page) : null;
+            if (cached != null) {
+                return cached;
+            }
+        }
+        int pageStart = page * PAGE_SIZE;
+        int pageEnd = Math.min(index.length, pageStart + PAGE_SIZE);
+        long[] pageIds = new long[Math.max(0, pageEnd - pageStart)];
+        System.arraycopy(index, pageStart, pageIds, 0, pageIds.length);
+
+        // Read without holding the lock, the same page may be read twice by a range and a prefetch
+        HashMap<String, Contact> byIdentifier = new HashMap<>();
+        for (Contact contact : loader.load(pageIds)) {
+            byIdentifier.put(contact.identifier, contact);
+        }
+        ArrayList<Contact> contacts = new ArrayList<>(pageIds.length);
+        for (long contactId : pageIds) {
+            contacts.add(byIdentifier.get(String.valueOf(contactId)));
+        }
+        synchronized (this) {
+            // Unless the contacts changed, or other options were asked for, in the meantime
+            if (contactIds == index && this.options == options) {
+                pages.put(page, contacts);
+            }
+        }
+        return contacts;
+    }
+}
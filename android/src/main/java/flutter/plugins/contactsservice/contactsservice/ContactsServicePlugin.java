@@ -1,47 +1,54 @@
 package flutter.plugins.contactsservice.contactsservice;
 
 import android.annotation.TargetApi;
+import android.content.ComponentCallbacks;
 import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
+import android.content.res.Configuration;
 import android.content.res.Resources;
+import android.database.ContentObserver;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.provider.BaseColumns;
 import android.provider.ContactsContract;
-import android.text.TextUtils;
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
 import io.flutter.embedding.engine.plugins.activity.ActivityAware;
 import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
 import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
+import io.flutter.plugin.common.MethodCodec;
 import io.flutter.plugin.common.PluginRegistry;
 import io.flutter.plugin.common.PluginRegistry.Registrar;
+import io.flutter.plugin.common.StandardMethodCodec;
 
 import static android.app.Activity.RESULT_CANCELED;
 import static android.provider.ContactsContract.CommonDataKinds;
@@ -50,6 +57,12 @@ import static android.provider.ContactsContract.CommonDataKinds.Organization;
 import static android.provider.ContactsContract.CommonDataKinds.Phone;
 import static android.provider.ContactsContract.CommonDataKinds.StructuredName;
 import static android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
+import static flutter.plugins.contactsservice.contactsservice.RequestScheduler.LANE_AVATAR;
+import static flutter.plugins.contactsservice.contactsservice.RequestScheduler.LANE_QUERY;
+import static flutter.plugins.contactsservice.contactsservice.RequestScheduler.LANE_WRITE;
+import static flutter.plugins.contactsservice.contactsservice.RequestScheduler.PRIORITY_HIGH;
+import static flutter.plugins.contactsservice.contactsservice.RequestScheduler.PRIORITY_LOW;
+import static flutter.plugins.contactsservice.contactsservice.RequestScheduler.PRIORITY_NORMAL;
 
 @TargetApi(Build.VERSION_CODES.ECLAIR)
 public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin, ActivityAware {
@@ -60,11 +73,81 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
   private static final String LOG_TAG = "flutter_contacts";
   private ContentResolver contentResolver;
   private MethodChannel methodChannel;
+  // Set when the method channel runs on a background TaskQueue
+  private BackgroundReplies backgroundReplies;
+  private EventChannel changesChannel;
   private BaseContactsServiceDelegate delegate;
   private Resources resources;
 
-  private final ExecutorService executor =
-          new ThreadPoolExecutor(0, 10, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(1000));
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final RequestScheduler scheduler = new RequestScheduler(new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      mainHandler.post(command);
+    }
+  });
+
+  private final PerformanceStats performanceStats = new PerformanceStats();
+  private final ParallelContactsLoader parallelLoader = ParallelContactsLoader.create(Runtime.getRuntime().availableProcessors());
+
+  // Identifiers of every contact sorted by name, and the last pages of contacts read from them
+  private final ContactWindow contactWindow = new ContactWindow();
+  // Prefetches answer no call, their failures are only logged
+  private static final Result PREFETCH_RESULT = new Result() {
+    @Override
+    public void success(Object value) {
+    }
+
+    @Override
+    public void error(String errorCode, String errorMessage, Object errorDetails) {
+      Log.w(LOG_TAG, "Could not prefetch the contacts: " + errorMessage);
+    }
+
+    @Override
+    public void notImplemented() {
+    }
+  };
+
+  private final HashMap<Integer, ContactsPager> pagers = new HashMap<>();
+  private int nextCursorToken = 1;
+
+  private final HashMap<Integer, AvatarBatch> avatarBatches = new HashMap<>();
+  private int nextBatchToken = 1;
+
+  // Bursts of change notifications, such as during an account sync, are coalesced into one event
+  // sent once the notifications stopped for a while, or at the latest after the maximum delay
+  private static final long CHANGES_DEBOUNCE_MILLIS = 500;
+  private static final long CHANGES_MAX_DELAY_MILLIS = 3000;
+  private final ContactsChangesHandler changesHandler = new ContactsChangesHandler();
+
+  private final AvatarCache avatarCache = new AvatarCache(AvatarCache.defaultMaxBytes());
+  private final ContentObserver contactsObserver = new ContentObserver(null) {
+    @Override
+    public void onChange(boolean selfChange) {
+      avatarCache.invalidate();
+      searchIndex.invalidate();
+      contactWindow.invalidate();
+    }
+  };
+
+  // Built on the first search, then brought up to date with the contacts changed since
+  private final ContactSearchIndex searchIndex = new ContactSearchIndex();
+  private static final int SEARCH_FIELDS = Contact.FIELD_NAME | Contact.FIELD_PHONES | Contact.FIELD_EMAILS | Contact.FIELD_ORGANIZATION;
+
+  // The localized labels are resolved again after a change of locale
+  private final ComponentCallbacks configurationCallbacks = new ComponentCallbacks() {
+    @Override
+    public void onConfigurationChanged(Configuration configuration) {
+      LabelTable.invalidate();
+    }
+
+    @Override
+    public void onLowMemory() {
+    }
+  };
+
+  private static final String SNAPSHOT_FILE_NAME = "flutter_contacts_snapshot";
+  private ContactSnapshot snapshot;
 
   private void initDelegateWithRegister(Registrar registrar) {
     this.delegate = new ContactServiceDelegateOld(registrar);
@@ -77,9 +160,42 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
   }
 
   private void initInstance(BinaryMessenger messenger, Context context) {
-    methodChannel = new MethodChannel(messenger, "github.com/clovisnicolas/flutter_contacts");
+    methodChannel = newBackgroundMethodChannel(messenger, "github.com/clovisnicolas/flutter_contacts");
+    if (methodChannel != null) {
+      backgroundReplies = BackgroundReplies.create();
+    } else {
+      methodChannel = new MethodChannel(messenger, "github.com/clovisnicolas/flutter_contacts");
+    }
     methodChannel.setMethodCallHandler(this);
+    changesChannel = new EventChannel(messenger, "github.com/clovisnicolas/flutter_contacts/changes");
+    changesChannel.setStreamHandler(changesHandler);
     this.contentResolver = context.getContentResolver();
+    this.contentResolver.registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, contactsObserver);
+    context.registerComponentCallbacks(configurationCallbacks);
+    // Identifiers are only valid on this device, so the snapshot is kept out of the backups
+    File snapshotDir = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? context.getNoBackupFilesDir() : context.getFilesDir();
+    this.snapshot = new ContactSnapshot(new File(snapshotDir, SNAPSHOT_FILE_NAME));
+  }
+
+  /**
+   * @return a method channel running the calls on a background TaskQueue, or null when the
+   * messenger has none, such as the v1 registrar's. TaskQueues came with Flutter 2.5, so they
+   * are reached by reflection for the plugin to build against the embeddings before them.
+   */
+  private static MethodChannel newBackgroundMethodChannel(BinaryMessenger messenger, String name) {
+    try {
+      Class<?> taskQueueClass = Class.forName("io.flutter.plugin.common.BinaryMessenger$TaskQueue");
+      Object taskQueue = BinaryMessenger.class.getMethod("makeBackgroundTaskQueue").invoke(messenger);
+      return (MethodChannel) MethodChannel.class
+              .getConstructor(BinaryMessenger.class, String.class, MethodCodec.class, taskQueueClass)
+              .newInstance(messenger, name, StandardMethodCodec.INSTANCE, taskQueue);
+    } catch (Exception e) {
+      // Not found before Flutter 2.5, or thrown by makeBackgroundTaskQueue when unsupported
+      return null;
+    } catch (LinkageError e) {
+      // A messenger compiled before the method was declared
+      return null;
+    }
   }
 
   @Override
@@ -93,50 +209,204 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
   public void onDetachedFromEngine(FlutterPluginBinding binding) {
     methodChannel.setMethodCallHandler(null);
     methodChannel = null;
+    changesChannel.setStreamHandler(null);
+    changesChannel = null;
+    changesHandler.onCancel(null);
+    closePagers();
+    cancelAvatarBatches();
+    contentResolver.unregisterContentObserver(contactsObserver);
+    binding.getApplicationContext().unregisterComponentCallbacks(configurationCallbacks);
+    LabelTable.invalidate();
+    avatarCache.clear();
+    // After the update which may be running, rather than waiting for it on the main thread
+    scheduler.execute(LANE_QUERY, PRIORITY_NORMAL, new Runnable() {
+      @Override
+      public void run() {
+        searchIndex.clear();
+      }
+    });
     contentResolver = null;
     this.delegate = null;
     resources = null;
   }
 
   @Override
-  public void onMethodCall(MethodCall call, Result result) {
+  public void onMethodCall(final MethodCall call, Result result) {
+    if (backgroundReplies == null) {
+      handleMethodCall(call, result);
+      return;
+    }
+    // Called on the background queue, where the arguments were decoded. The calls are handled
+    // on the main thread like the rest of the plugin, only their replies are sent from the
+    // background, where the codec encodes them
+    final Result reply = backgroundReplies.wrap(result);
+    mainHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        if (methodChannel == null) {
+          reply.error(null, "The plugin was detached from the engine", null);
+          return;
+        }
+        handleMethodCall(call, reply);
+      }
+    });
+  }
+
+  private void handleMethodCall(MethodCall call, Result result) {
     switch(call.method){
       case "getContacts": {
-        this.getContacts(call.method, (String)call.argument("query"), (boolean)call.argument("withThumbnails"), (boolean)call.argument("photoHighResolution"), (boolean)call.argument("orderByGivenName"), (boolean)call.argument("androidLocalizedLabels"), result);
+        this.getContacts(call.method, (String)call.argument("query"), (boolean)call.argument("withThumbnails"), getAvatarLoader(call), (boolean)call.argument("orderByGivenName"), (boolean)call.argument("androidLocalizedLabels"), Contact.fieldsFromNames((List<String>)call.argument("fields")), Boolean.TRUE.equals(call.argument("androidPackedEncoding")), Boolean.TRUE.equals(call.argument("androidParallelLoad")), result);
         break;
       } case "getContactsForPhone": {
-        this.getContactsForPhone(call.method, (String)call.argument("phone"), (boolean)call.argument("withThumbnails"), (boolean)call.argument("photoHighResolution"), (boolean)call.argument("orderByGivenName"), (boolean)call.argument("androidLocalizedLabels"), result);
+        this.getContactsForPhone(call.method, (String)call.argument("phone"), (boolean)call.argument("withThumbnails"), getAvatarLoader(call), (boolean)call.argument("orderByGivenName"), (boolean)call.argument("androidLocalizedLabels"), Contact.fieldsFromNames((List<String>)call.argument("fields")), Boolean.TRUE.equals(call.argument("androidPackedEncoding")), result);
         break;
       } case "getContactsForEmail": {
-        this.getContactsForEmail(call.method, (String)call.argument("email"), (boolean)call.argument("withThumbnails"), (boolean)call.argument("photoHighResolution"), (boolean)call.argument("orderByGivenName"), (boolean)call.argument("androidLocalizedLabels"), result);
+        this.getContactsForEmail(call.method, (String)call.argument("email"), (boolean)call.argument("withThumbnails"), getAvatarLoader(call), (boolean)call.argument("orderByGivenName"), (boolean)call.argument("androidLocalizedLabels"), Contact.fieldsFromNames((List<String>)call.argument("fields")), Boolean.TRUE.equals(call.argument("androidPackedEncoding")), result);
+        break;
+      } case "getContactsPage": {
+        this.getContactsPage((Integer)call.argument("cursorToken"), call, result);
+        break;
+      } case "cancelContactsPage": {
+        this.cancelContactsPage((Integer)call.argument("cursorToken"));
+        result.success(null);
+        break;
+      } case "getContactsChangedSince": {
+        this.getContactsChangedSince(call, result);
+        break;
+      } case "getContactsByIds": {
+        submit(call.method, LANE_QUERY, PRIORITY_NORMAL, new GetContactsByIdsTask((List<String>)call.argument("identifiers"),
+                (boolean)call.argument("withThumbnails"), getAvatarLoader(call), (boolean)call.argument("androidLocalizedLabels"),
+                Contact.fieldsFromNames((List<String>)call.argument("fields")), Boolean.TRUE.equals(call.argument("androidPackedEncoding"))), result);
+        break;
+      } case "getLookupKeys": {
+        final List<String> identifiers = call.argument("identifiers");
+        submit(call.method, LANE_QUERY, PRIORITY_NORMAL, new RequestScheduler.Request<HashMap<String, String>>() {
+          @Override
+          HashMap<String, String> doInBackground() {
+            return getLookupKeys(identifiers);
+          }
+        }, result);
+        break;
+      } case "getContactsRange": {
+        submit(call.method, LANE_QUERY, PRIORITY_HIGH, new GetContactsRangeTask((int)call.argument("start"), (int)call.argument("count"),
+                (boolean)call.argument("withThumbnails"), getAvatarLoader(call), (boolean)call.argument("androidLocalizedLabels"),
+                Contact.fieldsFromNames((List<String>)call.argument("fields")), Boolean.TRUE.equals(call.argument("androidPackedEncoding"))), result);
+        break;
+      } case "getContactsSummary": {
+        submit(call.method, LANE_QUERY, PRIORITY_NORMAL, new RequestScheduler.Request<HashMap<String, Object>>() {
+          @Override
+          HashMap<String, Object> doInBackground() {
+            timing.begin(PerformanceStats.STAGE_QUERY);
+            return new ContactsSummary(contentResolver).read();
+          }
+        }, result);
+        break;
+      } case "getContactsSnapshot": {
+        submit(call.method, LANE_QUERY, PRIORITY_HIGH, new GetContactsSnapshotTask((boolean)call.argument("androidLocalizedLabels"),
+                Boolean.TRUE.equals(call.argument("androidPackedEncoding"))), result);
+        break;
+      } case "reconcileContactsSnapshot": {
+        Number timestamp = call.argument("timestamp");
+        submit(call.method, LANE_QUERY, PRIORITY_LOW, new ReconcileContactsSnapshotTask(timestamp != null ? timestamp.longValue() : -1,
+                (boolean)call.argument("androidLocalizedLabels"), Boolean.TRUE.equals(call.argument("androidPackedEncoding"))), result);
+        break;
+      } case "deleteContactsSnapshot": {
+        submit(call.method, LANE_QUERY, PRIORITY_NORMAL, new RequestScheduler.Request<Object>() {
+          @Override
+          Object doInBackground() {
+            snapshot.delete();
+            return null;
+          }
+        }, result);
+        break;
+      } case "lookupPhones": {
+        this.lookup(call, result);
+        break;
+      } case "lookupEmails": {
+        this.lookup(call, result);
+        break;
+      } case "searchContacts": {
+        this.searchContacts((String)call.argument("query"), (int)call.argument("limit"), result);
+        break;
+      } case "buildSearchIndex": {
+        this.buildSearchIndex(result);
+        break;
+      } case "clearSearchIndex": {
+        // The index is locked for the whole of an update, which the main thread must not wait for
+        submit(call.method, LANE_QUERY, PRIORITY_NORMAL, new RequestScheduler.Request<Object>() {
+          @Override
+          Object doInBackground() {
+            searchIndex.clear();
+            return null;
+          }
+        }, result);
         break;
       } case "getAvatar": {
-        final Contact contact = Contact.fromMap((HashMap)call.argument("contact"));
-        this.getAvatar(contact, (boolean)call.argument("photoHighResolution"), result);
+        // Only the identifier of the contact is needed
+        final String identifier = (String)((Map)call.argument("contact")).get("identifier");
+        this.getAvatar(identifier, getAvatarLoader(call), result);
+        break;
+      } case "getAvatars": {
+        this.getAvatars((Integer)call.argument("batchToken"), call, result);
+        break;
+      } case "prioritizeAvatars": {
+        for (AvatarBatch batch : avatarBatches.values()) {
+          batch.prioritize((List<String>)call.argument("identifiers"));
+        }
+        result.success(null);
+        break;
+      } case "cancelAvatars": {
+        this.cancelAvatars((Integer)call.argument("batchToken"), (List<String>)call.argument("identifiers"));
+        result.success(null);
+        break;
+      } case "getSchedulerStats": {
+        result.success(scheduler.getStats());
+        break;
+      } case "getPerformanceStats": {
+        result.success(performanceStats.getStats());
+        break;
+      } case "resetPerformanceStats": {
+        performanceStats.reset();
+        result.success(null);
+        break;
+      } case "setSlowCallThreshold": {
+        this.setSlowCallThreshold(((Number)call.argument("thresholdMillis")).longValue());
+        result.success(null);
+        break;
+      } case "getAvatarCacheStats": {
+        result.success(avatarCache.getStats());
+        break;
+      } case "setAvatarCacheSize": {
+        avatarCache.setMaxBytes(((Number)call.argument("maxBytes")).longValue());
+        result.success(null);
+        break;
+      } case "clearAvatarCache": {
+        avatarCache.clear();
+        result.success(null);
         break;
       } case "addContact": {
         final Contact contact = Contact.fromMap((HashMap)call.arguments);
-        if (this.addContact(contact)) {
-          result.success(null);
-        } else {
-          result.error(null, "Failed to add the contact", null);
-        }
+        this.writeContact(call.method, WRITE_ADD, contact, "Failed to add the contact", result);
         break;
       } case "deleteContact": {
         final Contact contact = Contact.fromMap((HashMap)call.arguments);
-        if (this.deleteContact(contact)) {
-          result.success(null);
-        } else {
-          result.error(null, "Failed to delete the contact, make sure it has a valid identifier", null);
-        }
+        this.writeContact(call.method, WRITE_DELETE, contact, "Failed to delete the contact, make sure it has a valid identifier", result);
         break;
       } case "updateContact": {
         final Contact contact = Contact.fromMap((HashMap)call.arguments);
-        if (this.updateContact(contact)) {
-          result.success(null);
-        } else {
-          result.error(null, "Failed to update the contact, make sure it has a valid identifier", null);
-        }
+        final Object diffUpdate = ((HashMap)call.arguments).get("androidDiffUpdate");
+        this.writeContact(call.method, Boolean.TRUE.equals(diffUpdate) ? WRITE_UPDATE_DIFF : WRITE_UPDATE, contact,
+                "Failed to update the contact, make sure it has a valid identifier", result);
+        break;
+      } case "addContacts": {
+        this.writeContacts(call.method, WRITE_ADD, (List<HashMap>)call.argument("contacts"), result);
+        break;
+      } case "updateContacts": {
+        final boolean diffUpdate = Boolean.TRUE.equals(call.argument("androidDiffUpdate"));
+        this.writeContacts(call.method, diffUpdate ? WRITE_UPDATE_DIFF : WRITE_UPDATE, (List<HashMap>)call.argument("contacts"), result);
+        break;
+      } case "deleteContacts": {
+        this.writeContacts(call.method, WRITE_DELETE, (List<HashMap>)call.argument("contacts"), result);
         break;
       } case "openExistingContact" :{
         final Contact contact = Contact.fromMap((HashMap)call.argument("contact"));
@@ -206,17 +476,224 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
           };
 
 
+  private static final int WRITE_ADD = 0;
+  private static final int WRITE_UPDATE = 1;
+  private static final int WRITE_DELETE = 2;
+  private static final int WRITE_UPDATE_DIFF = 3;
+
+  // The provider rejects more than 500 operations between yield points, and a transaction must
+  // fit in the 1MB Binder buffer, shared with the other transactions of the process
+  private static final int BATCH_MAX_OPERATIONS = 400;
+  private static final long BATCH_MAX_BYTES = 256 * 1024;
+  // Rough size of an operation without a photo
+  private static final int BATCH_OPERATION_BYTES = 512;
+
+  // How far back the timestamp returned by getContactsChangedSince is set from the time it ran
+  private static final long CHANGES_OVERLAP_MILLIS = 1000;
+
+  private static final String ORDER_BY_CONTACT_ID = ContactsContract.Data.CONTACT_ID + " ASC";
+
+  // The provider cannot order Data rows by the given name of their contact, but the primary display
+  // name starts with it. The CONTACT_ID tie-breaker keeps the rows of each contact adjacent.
+  private static final String ORDER_BY_DISPLAY_NAME =
+          ContactsContract.Contacts.DISPLAY_NAME_PRIMARY + " COLLATE LOCALIZED ASC, " + ORDER_BY_CONTACT_ID;
+
   @TargetApi(Build.VERSION_CODES.ECLAIR)
-  private void getContacts(String callMethod, String query, boolean withThumbnails, boolean photoHighResolution, boolean orderByGivenName, boolean localizedLabels, Result result) {
-    new GetContactsTask(callMethod, result, withThumbnails, photoHighResolution, orderByGivenName, localizedLabels).executeOnExecutor(executor, query, false);
+  private void getContacts(String callMethod, String query, boolean withThumbnails, AvatarLoader avatarLoader, boolean orderByGivenName, boolean localizedLabels, int fields, boolean packed, boolean parallel, Result result) {
+    // The contact picked by the user is waited for, while listing every contact can take a while
+    int priority = callMethod.equals("openDeviceContactPicker") ? PRIORITY_HIGH : query == null ? PRIORITY_LOW : PRIORITY_NORMAL;
+    GetContactsTask task = new GetContactsTask(callMethod, query, withThumbnails, avatarLoader, orderByGivenName, localizedLabels, fields, packed);
+    // Only the whole address book is worth splitting
+    task.parallel = parallel && query == null;
+    submit(callMethod, LANE_QUERY, priority, task, result);
+  }
+
+  private void getContactsForPhone(String callMethod, String phone, boolean withThumbnails, AvatarLoader avatarLoader, boolean orderByGivenName, boolean localizedLabels, int fields, boolean packed, Result result) {
+    submit(callMethod, LANE_QUERY, PRIORITY_NORMAL, new GetContactsTask(callMethod, phone, withThumbnails, avatarLoader, orderByGivenName, localizedLabels, fields, packed), result);
+  }
+
+  private void getContactsForEmail(String callMethod, String email, boolean withThumbnails, AvatarLoader avatarLoader, boolean orderByGivenName, boolean localizedLabels, int fields, boolean packed, Result result) {
+    submit(callMethod, LANE_QUERY, PRIORITY_NORMAL, new GetContactsTask(callMethod, email, withThumbnails, avatarLoader, orderByGivenName, localizedLabels, fields, packed), result);
+  }
+
+  private void getContactsPage(Integer cursorToken, MethodCall call, Result result) {
+    GetContactsPageTask task;
+    if (cursorToken == null) {
+      // The cursor is opened on the query lane, and the pager only kept once it is
+      String sortOrder = (boolean)call.argument("orderByGivenName") ? ORDER_BY_DISPLAY_NAME : ORDER_BY_CONTACT_ID;
+      int fields = Contact.fieldsFromNames((List<String>)call.argument("fields"));
+      task = new GetContactsPageTask(nextCursorToken++, (String)call.argument("query"), sortOrder, (boolean)call.argument("withThumbnails"), getAvatarLoader(call), (boolean)call.argument("androidLocalizedLabels"), fields, Boolean.TRUE.equals(call.argument("androidPackedEncoding")), (int)call.argument("pageSize"));
+    } else {
+      ContactsPager pager = pagers.get(cursorToken);
+      if (pager == null) {
+        result.error(null, "Unknown or expired cursor token " + cursorToken, null);
+        return;
+      }
+      task = new GetContactsPageTask(pager, (int)call.argument("pageSize"));
+    }
+    // Pages are shown as they come, ahead of the queries returning everything at once
+    submit("getContactsPage", LANE_QUERY, PRIORITY_HIGH, task, result);
+  }
+
+  private void getContactsChangedSince(MethodCall call, Result result) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      result.error(null, "getContactsChangedSince requires Android 4.3 (API 18) or later", null);
+      return;
+    }
+    long since = ((Number)call.argument("timestamp")).longValue();
+    submit("getContactsChangedSince", LANE_QUERY, PRIORITY_NORMAL, new GetContactsChangedSinceTask(since, (boolean)call.argument("withThumbnails"), getAvatarLoader(call),
+            (boolean)call.argument("androidLocalizedLabels"), Contact.fieldsFromNames((List<String>)call.argument("fields")),
+            Boolean.TRUE.equals(call.argument("androidPackedEncoding"))), result);
+  }
+
+  private void lookup(final MethodCall call, Result result) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+      result.error(null, call.method + " requires Android 5.0 (API 21) or later", null);
+      return;
+    }
+    final ContactLookup lookup = new ContactLookup(contentResolver, (String)call.argument("countryIso"));
+    final List<String> values = call.argument("values");
+    submit(call.method, LANE_QUERY, PRIORITY_NORMAL, new RequestScheduler.Request<HashMap<String, ArrayList<HashMap<String, Object>>>>() {
+      @Override
+      HashMap<String, ArrayList<HashMap<String, Object>>> doInBackground() {
+        return call.method.equals("lookupPhones") ? lookup.lookupPhones(values) : lookup.lookupEmails(values);
+      }
+    }, result);
+  }
+
+  private void searchContacts(final String query, final int limit, Result result) {
+    // Typed by the user, so ahead of everything else on the lane
+    submit("searchContacts", LANE_QUERY, PRIORITY_HIGH, new RequestScheduler.Request<ArrayList<HashMap<String, Object>>>() {
+      @Override
+      ArrayList<HashMap<String, Object>> doInBackground() {
+        updateSearchIndex();
+        return searchIndex.search(query, limit);
+      }
+    }, result);
+  }
+
+  private void buildSearchIndex(Result result) {
+    submit("buildSearchIndex", LANE_QUERY, PRIORITY_LOW, new RequestScheduler.Request<Integer>() {
+      @Override
+      Integer doInBackground() {
+        updateSearchIndex();
+        return searchIndex.size();
+      }
+    }, result);
+  }
+
+  /**
+   * Builds the search index, or reads the contacts changed since its last update into it. The
+   * whole address book is read again on versions without the timestamps of the changes.
+   */
+  private void updateSearchIndex() {
+    // Searches running together wait for the same update rather than each reading the changes
+    synchronized (searchIndex) {
+      if (!searchIndex.needsUpdate()) return;
+      long now = System.currentTimeMillis();
+      long since = searchIndex.beginUpdate();
+      if (since < 0 || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+        searchIndex.replaceAll(getContactsFrom(getCursor(null, null, ORDER_BY_CONTACT_ID, SEARCH_FIELDS), false, SEARCH_FIELDS));
+      } else {
+        for (Contact contact : getContactsFrom(getCursorChangedSince(since, SEARCH_FIELDS), false, SEARCH_FIELDS)) {
+          searchIndex.put(contact);
+        }
+        for (String identifier : getContactsDeletedSince(since)) {
+          searchIndex.remove(identifier);
+        }
+      }
+      searchIndex.endUpdate(now - CHANGES_OVERLAP_MILLIS);
+    }
+  }
+
+  /**
+   * Submits the request, recording its stages in the performance stats of the method
+   */
+  private <T> void submit(String method, int lane, int priority, RequestScheduler.Request<T> request, Result result) {
+    request.timing = performanceStats.newCall(method);
+    scheduler.submit(lane, priority, request, result);
   }
 
-  private void getContactsForPhone(String callMethod, String phone, boolean withThumbnails, boolean photoHighResolution, boolean orderByGivenName, boolean localizedLabels, Result result) {
-    new GetContactsTask(callMethod, result, withThumbnails, photoHighResolution, orderByGivenName, localizedLabels).executeOnExecutor(executor, phone, true);
+  /**
+   * Sends the calls taking longer than the threshold to the Dart side, 0 to stop
+   */
+  private void setSlowCallThreshold(long thresholdMillis) {
+    performanceStats.setSlowCallListener(thresholdMillis, new PerformanceStats.SlowCallListener() {
+      @Override
+      public void onSlowCall(final HashMap<String, Object> call) {
+        mainHandler.post(new Runnable() {
+          @Override
+          public void run() {
+            if (methodChannel != null) {
+              methodChannel.invokeMethod("onSlowCall", call);
+            }
+          }
+        });
+      }
+    });
+  }
+
+  private void cancelContactsPage(Integer cursorToken) {
+    ContactsPager pager = pagers.remove(cursorToken);
+    if (pager != null) {
+      pager.close();
+    }
+  }
+
+  private void closePagers() {
+    for (ContactsPager pager : pagers.values()) {
+      pager.close();
+    }
+    pagers.clear();
+  }
+
+  private void getAvatars(Integer batchToken, MethodCall call, Result result) {
+    AvatarBatch batch;
+    if (batchToken == null) {
+      batch = new AvatarBatch(nextBatchToken++, (List<String>)call.argument("identifiers"), getAvatarLoader(call));
+      Integer parallelism = call.argument("parallelism");
+      if (!batch.start(parallelism != null ? parallelism : scheduler.getThreads(LANE_AVATAR))) {
+        result.error(RequestScheduler.QUEUE_FULL, "Too many pending avatar requests", null);
+        return;
+      }
+      avatarBatches.put(batch.token, batch);
+    } else {
+      batch = avatarBatches.get(batchToken);
+      if (batch == null) {
+        result.error(null, "Unknown or expired batch token " + batchToken, null);
+        return;
+      }
+    }
+    batch.take(result);
   }
 
-  private void getContactsForEmail(String callMethod, String email, boolean withThumbnails, boolean photoHighResolution, boolean orderByGivenName, boolean localizedLabels, Result result) {
-    new GetContactsTask(callMethod, result, withThumbnails, photoHighResolution, orderByGivenName, localizedLabels).executeOnExecutor(executor, email, true);
+  /**
+   * Drops the given identifiers from every batch, or when a batch token is given, the
+   * whole batch or only its given identifiers
+   */
+  private void cancelAvatars(Integer batchToken, List<String> identifiers) {
+    if (batchToken == null) {
+      if (identifiers == null) {
+        cancelAvatarBatches();
+        return;
+      }
+      for (AvatarBatch batch : avatarBatches.values()) {
+        batch.cancel(identifiers);
+      }
+      return;
+    }
+    // A whole batch is forgotten at once, as its caller will not take what is left of it
+    AvatarBatch batch = identifiers == null ? avatarBatches.remove(batchToken) : avatarBatches.get(batchToken);
+    if (batch != null) {
+      batch.cancel(identifiers);
+    }
+  }
+
+  private void cancelAvatarBatches() {
+    for (AvatarBatch batch : avatarBatches.values()) {
+      batch.cancel(null);
+    }
+    avatarBatches.clear();
   }
 
   @Override
@@ -272,11 +749,23 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
     @Override
     public boolean onActivityResult(int requestCode, int resultCode, Intent intent) {
       if(requestCode == REQUEST_OPEN_EXISTING_CONTACT || requestCode == REQUEST_OPEN_CONTACT_FORM) {
+        final String identifier;
         try {
           Uri ur = intent.getData();
-          finishWithResult(getContactByIdentifier(ur.getLastPathSegment()));
+          identifier = ur.getLastPathSegment();
         } catch (NullPointerException e) {
           finishWithResult(FORM_OPERATION_CANCELED);
+          return true;
+        }
+        if (result != null) {
+          // Read after the writes queued before, and answered on the main thread
+          submit("getContactByIdentifier", LANE_WRITE, PRIORITY_NORMAL, new RequestScheduler.Request<HashMap>() {
+            @Override
+            HashMap doInBackground() {
+              return getContactByIdentifier(identifier);
+            }
+          }, result);
+          result = null;
         }
         return true;
       }
@@ -286,17 +775,39 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
           finishWithResult(FORM_OPERATION_CANCELED);
           return true;
         }
-        Uri contactUri = intent.getData();
-          if (intent != null){
-        Cursor cursor = contentResolver.query(contactUri, null, null, null, null);
-        if (cursor.moveToFirst()) {
-          String id = contactUri.getLastPathSegment();
-          getContacts("openDeviceContactPicker", id, false, false, false, localizedLabels, this.result);
-        } else {
-          Log.e(LOG_TAG, "onActivityResult - cursor.moveToFirst() returns false");
-          finishWithResult(FORM_OPERATION_CANCELED);
-        }}else{return true;}
-        cursor.close();
+        if (intent == null) {
+          return true;
+        }
+        if (result == null) {
+          return true;
+        }
+        final Uri contactUri = intent.getData();
+        submit("openDeviceContactPicker", LANE_WRITE, PRIORITY_NORMAL, new RequestScheduler.Request<Boolean>() {
+          @Override
+          Boolean doInBackground() {
+            Cursor cursor = contentResolver.query(contactUri, null, null, null, null);
+            if (cursor == null) {
+              return false;
+            }
+            try {
+              return cursor.moveToFirst();
+            } finally {
+              cursor.close();
+            }
+          }
+
+          @Override
+          void onPostExecute(Boolean found) {
+            if (found) {
+              String id = contactUri.getLastPathSegment();
+              getContacts("openDeviceContactPicker", id, false, null, false, localizedLabels, Contact.ALL_FIELDS, false, false, result);
+            } else {
+              Log.e(LOG_TAG, "onActivityResult - cursor.moveToFirst() returns false");
+              result.success(FORM_OPERATION_CANCELED);
+            }
+          }
+        }, result);
+        result = null;
         return true;
       }
 
@@ -305,22 +816,36 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
     }
 
     void openExistingContact(Contact contact) {
-      String identifier = contact.identifier;
-      try {
-        HashMap contactMapFromDevice = getContactByIdentifier(identifier);
-        // Contact existence check
-        if(contactMapFromDevice != null) {
-          Uri uri = Uri.withAppendedPath(ContactsContract.Contacts.CONTENT_URI, identifier);
-          Intent intent = new Intent(Intent.ACTION_EDIT);
-          intent.setDataAndType(uri, ContactsContract.Contacts.CONTENT_ITEM_TYPE);
-          intent.putExtra("finishActivityOnSaveCompleted", true);
-          startIntent(intent, REQUEST_OPEN_EXISTING_CONTACT);
-        } else {
-          finishWithResult(FORM_COULD_NOT_BE_OPEN);
+      final String identifier = contact.identifier;
+      // The form is opened on the main thread once the contact is known to exist
+      submit("openExistingContact", LANE_WRITE, PRIORITY_NORMAL, new RequestScheduler.Request<Boolean>() {
+        @Override
+        Boolean doInBackground() {
+          try {
+            // Contact existence check
+            return getLookupKeys(Collections.singletonList(identifier)).containsKey(identifier);
+          } catch(Exception e) {
+            return false;
+          }
         }
-      } catch(Exception e) {
-        finishWithResult(FORM_COULD_NOT_BE_OPEN);
-      }
+
+        @Override
+        void onPostExecute(Boolean exists) {
+          try {
+            if(exists) {
+              Uri uri = Uri.withAppendedPath(ContactsContract.Contacts.CONTENT_URI, identifier);
+              Intent intent = new Intent(Intent.ACTION_EDIT);
+              intent.setDataAndType(uri, ContactsContract.Contacts.CONTENT_ITEM_TYPE);
+              intent.putExtra("finishActivityOnSaveCompleted", true);
+              startIntent(intent, REQUEST_OPEN_EXISTING_CONTACT);
+            } else {
+              finishWithResult(FORM_COULD_NOT_BE_OPEN);
+            }
+          } catch(Exception e) {
+            finishWithResult(FORM_COULD_NOT_BE_OPEN);
+          }
+        }
+      }, result);
     }
 
     void openContactForm() {
@@ -425,215 +950,966 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
     }
   }
 
-  @TargetApi(Build.VERSION_CODES.CUPCAKE)
-  private class GetContactsTask extends AsyncTask<Object, Void, ArrayList<HashMap>> {
+  private class GetContactsTask extends RequestScheduler.Request<Object> {
 
     private String callMethod;
-    private Result getContactResult;
+    private String query;
     private boolean withThumbnails;
-    private boolean photoHighResolution;
+    private AvatarLoader avatarLoader;
     private boolean orderByGivenName;
     private boolean localizedLabels;
+    private int fields;
+    private boolean packed;
+    // Reads the contacts with the ParallelContactsLoader, sorted by identifier
+    boolean parallel;
 
-    public GetContactsTask(String callMethod, Result result, boolean withThumbnails, boolean photoHighResolution, boolean orderByGivenName, boolean localizedLabels) {
+    public GetContactsTask(String callMethod, String query, boolean withThumbnails, AvatarLoader avatarLoader, boolean orderByGivenName, boolean localizedLabels, int fields, boolean packed) {
       this.callMethod = callMethod;
-      this.getContactResult = result;
+      this.query = query;
       this.withThumbnails = withThumbnails;
-      this.photoHighResolution = photoHighResolution;
+      this.avatarLoader = avatarLoader;
       this.orderByGivenName = orderByGivenName;
       this.localizedLabels = localizedLabels;
+      this.fields = fields;
+      this.packed = packed;
     }
 
     @TargetApi(Build.VERSION_CODES.ECLAIR)
-    protected ArrayList<HashMap> doInBackground(Object... params) {
-      ArrayList<Contact> contacts;
+    @Override
+    protected Object doInBackground() {
+      timing.begin(PerformanceStats.STAGE_QUERY);
+      if (parallel) {
+        return encode(loadInParallel());
+      }
+      Cursor cursor;
+      int cursorFields = fields;
       switch (callMethod) {
-        case "openDeviceContactPicker": contacts = getContactsFrom(getCursor(null, (String) params[0]), localizedLabels); break;
-        case "getContacts": contacts = getContactsFrom(getCursor((String) params[0], null), localizedLabels); break;
-        case "getContactsForPhone": contacts = getContactsFrom(getCursorForPhone(((String) params[0])), localizedLabels); break;
-        case "getContactsForEmail": contacts = getContactsFrom(getCursorForEmail(((String) params[0])), localizedLabels); break;
+        case "openDeviceContactPicker": cursor = getCursor(null, query); cursorFields = Contact.ALL_FIELDS; break;
+        // The whole address book comes sorted by identifier, as the parallel read returns it
+        case "getContacts": cursor = getCursor(query, null, query == null ? ORDER_BY_CONTACT_ID : null, fields); break;
+        case "getContactsForPhone": cursor = getCursorForPhone(query, fields); break;
+        case "getContactsForEmail": cursor = getCursorForEmail(query, fields); break;
         default: return null;
       }
+      // The provider runs the query when the rows are first counted or read
+      timing.rows = cursor != null ? cursor.getCount() : 0;
 
-      if (withThumbnails) {
-        for(Contact c : contacts){
-          final byte[] avatar = loadContactPhotoHighRes(
-                  c.identifier, photoHighResolution, contentResolver);
-          if (avatar != null) {
-            c.avatar = avatar;
-          } else {
-            // To stay backwards-compatible, return an empty byte array rather than `null`.
-            c.avatar = new byte[0];
-          }
-//          if ((Boolean) params[3])
-//              loadContactPhotoHighRes(c.identifier, (Boolean) params[3]);
-//          else
-//              setAvatarDataForContactIfAvailable(c);
+      timing.begin(PerformanceStats.STAGE_DECODE);
+      return encode(getContactsFrom(cursor, localizedLabels, cursorFields));
+    }
+
+    /**
+     * @return the contacts of every range, the queries running along with the decoding
+     */
+    private ArrayList<Contact> loadInParallel() {
+      long[] contactIds = getContactIds(CONTACTS_BY_ID);
+      timing.begin(PerformanceStats.STAGE_DECODE);
+      AtomicInteger rows = new AtomicInteger();
+      ArrayList<Contact> contacts = parallelLoader.load(contactIds, new ParallelContactsLoader.RangeQuery() {
+        @Override
+        public Cursor query(long fromId, long toId) {
+          return getCursorForRange(fromId, toId, fields);
         }
-      }
+      }, resources, localizedLabels, fields, rows);
+      timing.rows = rows.get();
+      return contacts;
+    }
 
-      if (orderByGivenName)
-      {
-        Comparator<Contact> compareByGivenName = new Comparator<Contact>() {
-          @Override
-          public int compare(Contact contactA, Contact contactB) {
-            return contactA.compareTo(contactB);
-          }
-        };
-        Collections.sort(contacts,compareByGivenName);
+    /**
+     * Sorts the contacts and loads their avatars when asked, then encodes them
+     */
+    private Object encode(ArrayList<Contact> contacts) {
+      if (orderByGivenName) {
+        Contact.sortByGivenName(contacts);
       }
+      timing.contacts = contacts.size();
 
-      //Transform the list of contacts to a list of Map
-      ArrayList<HashMap> contactMaps = new ArrayList<>();
-      for(Contact c : contacts){
-        contactMaps.add(c.toMap());
+      if (withThumbnails) {
+        timing.begin(PerformanceStats.STAGE_AVATARS);
+        loadAvatars(contacts, avatarLoader);
       }
 
-      return contactMaps;
+      timing.begin(PerformanceStats.STAGE_SERIALIZE);
+      Object encoded = encodeContacts(contacts, fields, packed);
+      if (encoded instanceof byte[]) {
+        timing.bytes = ((byte[]) encoded).length;
+      }
+      timing.end();
+      return encoded;
     }
 
-    protected void onPostExecute(ArrayList<HashMap> result) {
-      if (result == null) {
-        getContactResult.notImplemented();
+    @Override
+    protected void onPostExecute(Object contacts) {
+      if (contacts == null) {
+        result.notImplemented();
       } else {
-        getContactResult.success(result);
+        result.success(contacts);
       }
     }
   }
 
 
-  private Cursor getCursor(String query, String rawContactId) {
-    String selection = "(" + ContactsContract.Data.MIMETYPE + "=? OR " + ContactsContract.Data.MIMETYPE + "=? OR "
-            + ContactsContract.Data.MIMETYPE + "=? OR " + ContactsContract.Data.MIMETYPE + "=? OR "
-            + ContactsContract.Data.MIMETYPE + "=? OR " + ContactsContract.Data.MIMETYPE + "=? OR "
-            + ContactsContract.Data.MIMETYPE + "=? OR " + ContactsContract.RawContacts.ACCOUNT_TYPE + "=?" + ")";
-    ArrayList<String> selectionArgs = new ArrayList<>(Arrays.asList(CommonDataKinds.Note.CONTENT_ITEM_TYPE, Email.CONTENT_ITEM_TYPE,
-            Phone.CONTENT_ITEM_TYPE, StructuredName.CONTENT_ITEM_TYPE, Organization.CONTENT_ITEM_TYPE,
-            StructuredPostal.CONTENT_ITEM_TYPE, CommonDataKinds.Event.CONTENT_ITEM_TYPE, ContactsContract.RawContacts.ACCOUNT_TYPE));
-    if (query != null) {
-      selectionArgs = new ArrayList<>();
-      selectionArgs.add(query + "%");
-      selection = ContactsContract.Contacts.DISPLAY_NAME_PRIMARY + " LIKE ?";
+  /**
+   * Hands out the contacts of a {@link ContactsContract.Data} cursor one page at a time.
+   * The cursor must be sorted so that all the rows of a contact are adjacent, a contact
+   * is only complete once a row of the next contact (or the end of the cursor) is reached.
+   */
+  private class ContactsPager {
+    final int token;
+    private final Cursor cursor;
+    private final ContactRowDecoder decoder;
+    final boolean withThumbnails;
+    final AvatarLoader avatarLoader;
+    final int fields;
+    final boolean packed;
+    private Contact pending;
+    private long pendingContactId;
+    // Read by the page being decoded, so that a cancel stops it without waiting for its lock
+    private volatile boolean closed;
+    private boolean released;
+
+    ContactsPager(int token, Cursor cursor, boolean withThumbnails, AvatarLoader avatarLoader, boolean localizedLabels, int fields, boolean packed) {
+      this.token = token;
+      this.cursor = cursor;
+      this.decoder = cursor != null ? new ContactRowDecoder(cursor, resources, localizedLabels, fields) : null;
+      this.fields = fields;
+      this.packed = packed;
+      this.withThumbnails = withThumbnails;
+      this.avatarLoader = avatarLoader;
     }
-    if (rawContactId != null) {
-      selectionArgs.add(rawContactId);
-      selection += " AND " + ContactsContract.Data.CONTACT_ID + " =?";
+
+    /**
+     * Reads the next contacts from the cursor
+     * @param pageSize maximum number of contacts to return
+     * @return the next page, which is shorter than pageSize once the cursor is exhausted
+     */
+    synchronized ArrayList<Contact> nextPage(int pageSize) {
+      ArrayList<Contact> page = new ArrayList<>(pageSize);
+      while (!closed && cursor != null && cursor.moveToNext()) {
+        long contactId = decoder.getContactId();
+        if (pending == null || pendingContactId != contactId) {
+          if (pending != null) {
+            page.add(pending);
+          }
+          pending = decoder.newContact(contactId);
+          pendingContactId = contactId;
+        }
+        decoder.readRow(pending);
+        if (page.size() >= pageSize) {
+          return page;
+        }
+      }
+      if (pending != null) {
+        page.add(pending);
+        pending = null;
+      }
+      closed = true;
+      release();
+      return page;
     }
-    return contentResolver.query(ContactsContract.Data.CONTENT_URI, PROJECTION, selection, selectionArgs.toArray(new String[selectionArgs.size()]), null);
-  }
 
-  private Cursor getCursorForPhone(String phone) {
-    if (phone.isEmpty())
-      return null;
+    boolean isClosed() {
+      return closed;
+    }
 
-    Uri uri = Uri.withAppendedPath(ContactsContract.PhoneLookup.CONTENT_FILTER_URI, Uri.encode(phone));
-    String[] projection = new String[]{BaseColumns._ID};
+    /**
+     * Stops the page being read, if any, and closes the cursor on the query lane once it is
+     * no longer read, without waiting for it
+     */
+    void close() {
+      if (!closed) {
+        closed = true;
+        scheduler.requeue(LANE_QUERY, PRIORITY_NORMAL, new Runnable() {
+          @Override
+          public void run() {
+            release();
+          }
+        });
+      }
+    }
 
-    ArrayList<String> contactIds = new ArrayList<>();
-    Cursor phoneCursor = contentResolver.query(uri, projection, null, null, null);
-    while (phoneCursor != null && phoneCursor.moveToNext()){
-      contactIds.add(phoneCursor.getString(phoneCursor.getColumnIndex(BaseColumns._ID)));
+    private synchronized void release() {
+      if (!released) {
+        released = true;
+        if (cursor != null) {
+          cursor.close();
+        }
+      }
     }
-    if (phoneCursor!= null)
-      phoneCursor.close();
+  }
 
-    if (!contactIds.isEmpty()) {
-      String contactIdsListString = contactIds.toString().replace("[", "(").replace("]", ")");
-      String contactSelection = ContactsContract.Data.CONTACT_ID + " IN " + contactIdsListString;
-      return contentResolver.query(ContactsContract.Data.CONTENT_URI, PROJECTION, contactSelection, null, null);
+  private class GetContactsPageTask extends RequestScheduler.Request<HashMap<String, Object>> {
+    private ContactsPager pager;
+    private final int pageSize;
+    // The query of a new pager, opened by the first page
+    private final int token;
+    private final String query;
+    private final String sortOrder;
+    private final boolean withThumbnails;
+    private final AvatarLoader avatarLoader;
+    private final boolean localizedLabels;
+    private final int fields;
+    private final boolean packed;
+
+    GetContactsPageTask(int token, String query, String sortOrder, boolean withThumbnails, AvatarLoader avatarLoader, boolean localizedLabels, int fields, boolean packed, int pageSize) {
+      this.token = token;
+      this.query = query;
+      this.sortOrder = sortOrder;
+      this.withThumbnails = withThumbnails;
+      this.avatarLoader = avatarLoader;
+      this.localizedLabels = localizedLabels;
+      this.fields = fields;
+      this.packed = packed;
+      this.pageSize = pageSize;
     }
 
-    return null;
-  }
+    GetContactsPageTask(ContactsPager pager, int pageSize) {
+      this(pager.token, null, null, pager.withThumbnails, pager.avatarLoader, false, pager.fields, pager.packed, pageSize);
+      this.pager = pager;
+    }
 
-  private Cursor getCursorForEmail(String email) {
-    if (email.isEmpty())
-      return null;
-    ArrayList<String> selectionArgs = new ArrayList<>(Arrays.asList("%" + email + "%"));
-    String selection = Email.ADDRESS + " LIKE ?";
-    return contentResolver.query(ContactsContract.Data.CONTENT_URI, PROJECTION, selection, selectionArgs.toArray(new String[selectionArgs.size()]), null);
+    @Override
+    protected HashMap<String, Object> doInBackground() {
+      if (pager == null) {
+        pager = new ContactsPager(token, getCursor(query, null, sortOrder, fields), withThumbnails, avatarLoader, localizedLabels, fields, packed);
+      }
+      try {
+        ArrayList<Contact> contacts = pager.nextPage(pageSize);
+        if (pager.withThumbnails) {
+          loadAvatars(contacts, pager.avatarLoader);
+        }
+        HashMap<String, Object> page = new HashMap<>();
+        page.put("contacts", encodeContacts(contacts, pager.fields, pager.packed));
+        page.put("cursorToken", pager.isClosed() ? null : pager.token);
+        return page;
+      } catch (RuntimeException e) {
+        pager.close();
+        throw e;
+      }
+    }
+
+    @Override
+    protected void onPostExecute(HashMap<String, Object> page) {
+      if (pager.isClosed()) {
+        pagers.remove(pager.token);
+      } else if (methodChannel == null) {
+        // Detached while the page was read
+        pager.close();
+        page.put("cursorToken", null);
+      } else {
+        pagers.put(pager.token, pager);
+      }
+      result.success(page);
+    }
   }
 
   /**
-   * Builds the list of contacts from the cursor
-   * @param cursor
-   * @return the list of contacts
+   * Reads the contacts updated and deleted after a timestamp, along with the timestamp to pass
+   * to the next call. That timestamp is a little older than the queries, so that the contacts
+   * written while they run are returned again rather than missed.
    */
-  private ArrayList<Contact> getContactsFrom(Cursor cursor, boolean localizedLabels) {
-    HashMap<String, Contact> map = new LinkedHashMap<>();
-
-    while (cursor != null && cursor.moveToNext()) {
-      int columnIndex = cursor.getColumnIndex(ContactsContract.Data.CONTACT_ID);
-      String contactId = cursor.getString(columnIndex);
-
-      if (!map.containsKey(contactId)) {
-        map.put(contactId, new Contact(contactId));
-      }
-      Contact contact = map.get(contactId);
-
-      String mimeType = cursor.getString(cursor.getColumnIndex(ContactsContract.Data.MIMETYPE));
-      contact.displayName = cursor.getString(cursor.getColumnIndex(ContactsContract.Contacts.DISPLAY_NAME));
-      contact.androidAccountType = cursor.getString(cursor.getColumnIndex(ContactsContract.RawContacts.ACCOUNT_TYPE));
-      contact.androidAccountName = cursor.getString(cursor.getColumnIndex(ContactsContract.RawContacts.ACCOUNT_NAME));
-
-      //NAMES
-      if (mimeType.equals(CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE)) {
-        contact.givenName = cursor.getString(cursor.getColumnIndex(StructuredName.GIVEN_NAME));
-        contact.middleName = cursor.getString(cursor.getColumnIndex(StructuredName.MIDDLE_NAME));
-        contact.familyName = cursor.getString(cursor.getColumnIndex(StructuredName.FAMILY_NAME));
-        contact.prefix = cursor.getString(cursor.getColumnIndex(StructuredName.PREFIX));
-        contact.suffix = cursor.getString(cursor.getColumnIndex(StructuredName.SUFFIX));
-      }
-      // NOTE
-      else if (mimeType.equals(CommonDataKinds.Note.CONTENT_ITEM_TYPE)) {
-        contact.note = cursor.getString(cursor.getColumnIndex(CommonDataKinds.Note.NOTE));
-      }
-      //PHONES
-      else if (mimeType.equals(CommonDataKinds.Phone.CONTENT_ITEM_TYPE)){
-        String phoneNumber = cursor.getString(cursor.getColumnIndex(Phone.NUMBER));
-        if (!TextUtils.isEmpty(phoneNumber)){
-          int type = cursor.getInt(cursor.getColumnIndex(Phone.TYPE));
-          String label = Item.getPhoneLabel(resources, type, cursor, localizedLabels);
-          contact.phones.add(new Item(label, phoneNumber, type));
-        }
-      }
-      //MAILS
-      else if (mimeType.equals(CommonDataKinds.Email.CONTENT_ITEM_TYPE)) {
-        String email = cursor.getString(cursor.getColumnIndex(Email.ADDRESS));
-        int type = cursor.getInt(cursor.getColumnIndex(Email.TYPE));
-        if (!TextUtils.isEmpty(email)) {
-          String label = Item.getEmailLabel(resources, type, cursor, localizedLabels);
-          contact.emails.add(new Item(label, email, type));
-        }
-      }
-      //ORG
-      else if (mimeType.equals(CommonDataKinds.Organization.CONTENT_ITEM_TYPE)) {
-        contact.company = cursor.getString(cursor.getColumnIndex(Organization.COMPANY));
-        contact.jobTitle = cursor.getString(cursor.getColumnIndex(Organization.TITLE));
-      }
-      //ADDRESSES
-      else if (mimeType.equals(CommonDataKinds.StructuredPostal.CONTENT_ITEM_TYPE)) {
-        int type = cursor.getInt(cursor.getColumnIndex(StructuredPostal.TYPE));
-        String label = PostalAddress.getLabel(resources, type, cursor, localizedLabels);
-        String street = cursor.getString(cursor.getColumnIndex(StructuredPostal.STREET));
-        String city = cursor.getString(cursor.getColumnIndex(StructuredPostal.CITY));
-        String postcode = cursor.getString(cursor.getColumnIndex(StructuredPostal.POSTCODE));
-        String region = cursor.getString(cursor.getColumnIndex(StructuredPostal.REGION));
-        String country = cursor.getString(cursor.getColumnIndex(StructuredPostal.COUNTRY));
-        contact.postalAddresses.add(new PostalAddress(label, street, city, postcode, region, country, type));
-      }
-      // BIRTHDAY
-      else if (mimeType.equals(CommonDataKinds.Event.CONTENT_ITEM_TYPE)) {
-        int eventType = cursor.getInt(cursor.getColumnIndex(CommonDataKinds.Event.TYPE));
-        if (eventType == CommonDataKinds.Event.TYPE_BIRTHDAY) {
-          contact.birthday = cursor.getString(cursor.getColumnIndex(CommonDataKinds.Event.START_DATE));
-        }
-      }
-    }
-
-    if(cursor != null)
-      cursor.close();
-
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  private class GetContactsChangedSinceTask extends RequestScheduler.Request<HashMap<String, Object>> {
+    private final long since;
+    private final boolean withThumbnails;
+    private final AvatarLoader avatarLoader;
+    private final boolean localizedLabels;
+    private final int fields;
+    private final boolean packed;
+
+    GetContactsChangedSinceTask(long since, boolean withThumbnails, AvatarLoader avatarLoader, boolean localizedLabels, int fields, boolean packed) {
+      this.since = since;
+      this.withThumbnails = withThumbnails;
+      this.avatarLoader = avatarLoader;
+      this.localizedLabels = localizedLabels;
+      this.fields = fields;
+      this.packed = packed;
+    }
+
+    @Override
+    protected HashMap<String, Object> doInBackground() {
+      long now = System.currentTimeMillis();
+
+      ArrayList<Contact> contacts = getContactsFrom(getCursorChangedSince(since, fields), localizedLabels, fields);
+      if (withThumbnails) {
+        loadAvatars(contacts, avatarLoader);
+      }
+
+      HashMap<String, Object> changes = new HashMap<>();
+      changes.put("contacts", encodeContacts(contacts, fields, packed));
+      changes.put("deletedIdentifiers", getContactsDeletedSince(since));
+      // The provider forgets about deleted contacts after a while
+      changes.put("deletionsComplete", since == 0 || now - since < ContactsContract.DeletedContacts.DAYS_KEPT_MILLISECONDS);
+      changes.put("timestamp", Math.max(since, now - CHANGES_OVERLAP_MILLIS));
+      return changes;
+    }
+  }
+
+  /**
+   * Reads the contacts of the given identifiers, in their order, leaving out those which do not
+   * exist. A chunk of identifiers is bound to each query, so that a few queries read them all.
+   */
+  private class GetContactsByIdsTask extends RequestScheduler.Request<Object> {
+    private final List<String> identifiers;
+    private final boolean withThumbnails;
+    private final AvatarLoader avatarLoader;
+    private final boolean localizedLabels;
+    private final int fields;
+    private final boolean packed;
+
+    GetContactsByIdsTask(List<String> identifiers, boolean withThumbnails, AvatarLoader avatarLoader, boolean localizedLabels, int fields, boolean packed) {
+      this.identifiers = identifiers;
+      this.withThumbnails = withThumbnails;
+      this.avatarLoader = avatarLoader;
+      this.localizedLabels = localizedLabels;
+      this.fields = fields;
+      this.packed = packed;
+    }
+
+    @Override
+    protected Object doInBackground() {
+      timing.begin(PerformanceStats.STAGE_QUERY);
+      ArrayList<String> contactIds = new ArrayList<>(new LinkedHashSet<>(identifiers));
+      HashMap<String, Contact> byIdentifier = new HashMap<>();
+      for (List<String> chunk : ContactLookup.chunks(contactIds, ContactLookup.MAX_SELECTION_ARGS - getMimeTypes(fields).size())) {
+        for (Contact contact : getContactsFrom(getCursorForIds(chunk, fields), localizedLabels, fields)) {
+          byIdentifier.put(contact.identifier, contact);
+        }
+      }
+      ArrayList<Contact> contacts = new ArrayList<>(byIdentifier.size());
+      for (String identifier : identifiers) {
+        Contact contact = byIdentifier.get(identifier);
+        if (contact != null) {
+          contacts.add(contact);
+        }
+      }
+      timing.contacts = contacts.size();
+      if (withThumbnails) {
+        timing.begin(PerformanceStats.STAGE_AVATARS);
+        loadAvatars(contacts, avatarLoader);
+      }
+      timing.begin(PerformanceStats.STAGE_SERIALIZE);
+      return encodeContacts(contacts, fields, packed);
+    }
+  }
+
+  /**
+   * Reads the contacts at a range of positions of the address book sorted by name, through the
+   * {@link ContactWindow}, along with the number of contacts. The identifiers are read on the
+   * first call after the contacts changed, and the page after the range, in the direction of
+   * the scroll, is read in advance once the range was returned.
+   */
+  private class GetContactsRangeTask extends RequestScheduler.Request<Object> {
+    private final int start;
+    private final int count;
+    private final boolean withThumbnails;
+    private final AvatarLoader avatarLoader;
+    private final boolean localizedLabels;
+    private final int fields;
+    private final boolean packed;
+
+    GetContactsRangeTask(int start, int count, boolean withThumbnails, AvatarLoader avatarLoader, boolean localizedLabels, int fields, boolean packed) {
+      this.start = start;
+      this.count = count;
+      this.withThumbnails = withThumbnails;
+      this.avatarLoader = avatarLoader;
+      this.localizedLabels = localizedLabels;
+      this.fields = fields;
+      this.packed = packed;
+    }
+
+    @Override
+    protected Object doInBackground() {
+      timing.begin(PerformanceStats.STAGE_QUERY);
+      long[] index = contactWindow.getIndex(new ContactWindow.IndexLoader() {
+        @Override
+        public long[] load() {
+          return getContactIds(CONTACTS_BY_NAME);
+        }
+      });
+      timing.begin(PerformanceStats.STAGE_DECODE);
+      ArrayList<Contact> contacts = contactWindow.range(index, start, count, getOptions(), getPageLoader());
+      timing.contacts = contacts.size();
+      if (withThumbnails) {
+        timing.begin(PerformanceStats.STAGE_AVATARS);
+        // The contacts are those of the cached pages, which are kept without their avatars
+        ArrayList<Contact> copies = new ArrayList<>(contacts.size());
+        for (Contact contact : contacts) {
+          copies.add(contact.copy());
+        }
+        contacts = copies;
+        loadAvatars(contacts, avatarLoader);
+      }
+      timing.begin(PerformanceStats.STAGE_SERIALIZE);
+      HashMap<String, Object> range = new HashMap<>();
+      range.put("total", index.length);
+      range.put("contacts", encodeContacts(contacts, fields, packed));
+      return range;
+    }
+
+    @Override
+    protected void onPostExecute(Object range) {
+      result.success(range);
+      final int page = contactWindow.pageToPrefetch(start, count);
+      if (page >= 0) {
+        submit("prefetchContactsRange", LANE_QUERY, PRIORITY_LOW, new RequestScheduler.Request<Object>() {
+          @Override
+          Object doInBackground() {
+            timing.begin(PerformanceStats.STAGE_DECODE);
+            contactWindow.prefetch(page, getOptions(), getPageLoader());
+            return null;
+          }
+        }, PREFETCH_RESULT);
+      }
+    }
+
+    private int getOptions() {
+      return fields << 1 | (localizedLabels ? 1 : 0);
+    }
+
+    private ContactWindow.PageLoader getPageLoader() {
+      return new ContactWindow.PageLoader() {
+        @Override
+        public ArrayList<Contact> load(long[] contactIds) {
+          ArrayList<String> identifiers = new ArrayList<>(contactIds.length);
+          for (long contactId : contactIds) {
+            identifiers.add(String.valueOf(contactId));
+          }
+          ArrayList<Contact> contacts = new ArrayList<>(contactIds.length);
+          for (List<String> chunk : ContactLookup.chunks(identifiers, ContactLookup.MAX_SELECTION_ARGS - getMimeTypes(fields).size())) {
+            contacts.addAll(getContactsFrom(getCursorForIds(chunk, fields), localizedLabels, fields));
+          }
+          return contacts;
+        }
+      };
+    }
+  }
+
+  /**
+   * Reads the contacts kept by {@link ContactSnapshot}, without the provider, along with the
+   * timestamp to pass to {@link ReconcileContactsSnapshotTask}. Both are null when there is no
+   * snapshot, or one read with other labels.
+   */
+  private class GetContactsSnapshotTask extends RequestScheduler.Request<HashMap<String, Object>> {
+    private final boolean localizedLabels;
+    private final boolean packed;
+
+    GetContactsSnapshotTask(boolean localizedLabels, boolean packed) {
+      this.localizedLabels = localizedLabels;
+      this.packed = packed;
+    }
+
+    @Override
+    HashMap<String, Object> doInBackground() {
+      HashMap<String, Object> result = new HashMap<>();
+      ContactSnapshot.Data data = snapshot.read();
+      if (data == null || data.localizedLabels != localizedLabels) {
+        result.put("contacts", null);
+        result.put("timestamp", null);
+        return result;
+      }
+      // Stored in the packed form, sent as it is
+      result.put("contacts", packed ? data.contacts : encodeContacts(PackedContactsDecoder.decode(data.contacts), Contact.ALL_FIELDS, false));
+      result.put("timestamp", data.timestamp);
+      return result;
+    }
+  }
+
+  /**
+   * Brings the snapshot up to date with the provider, and returns the corrections to apply to
+   * the snapshot read with the given timestamp: the contacts updated and deleted since, or all
+   * of them with "replace" set when the snapshot had to be read again.
+   */
+  private class ReconcileContactsSnapshotTask extends RequestScheduler.Request<HashMap<String, Object>> {
+    private final long since;
+    private final boolean localizedLabels;
+    private final boolean packed;
+
+    /**
+     * @param since timestamp of the snapshot the corrections are for, -1 for none
+     */
+    ReconcileContactsSnapshotTask(long since, boolean localizedLabels, boolean packed) {
+      this.since = since;
+      this.localizedLabels = localizedLabels;
+      this.packed = packed;
+    }
+
+    @Override
+    HashMap<String, Object> doInBackground() {
+      long now = System.currentTimeMillis();
+      ContactSnapshot.Data data = snapshot.read();
+      HashMap<String, Object> result = new HashMap<>();
+      ArrayList<Contact> contacts;
+      long timestamp = now - CHANGES_OVERLAP_MILLIS;
+
+      // The provider forgets about deleted contacts after a while
+      boolean incremental = since >= 0 && data != null && data.localizedLabels == localizedLabels
+              && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+              && now - Math.min(since, data.timestamp) < ContactsContract.DeletedContacts.DAYS_KEPT_MILLISECONDS;
+      if (incremental) {
+        // The changes since the oldest of the two copies apply to both
+        long changedSince = Math.min(since, data.timestamp);
+        ArrayList<Contact> updated = getContactsFrom(getCursorChangedSince(changedSince, Contact.ALL_FIELDS), localizedLabels);
+        ArrayList<String> deleted = getContactsDeletedSince(changedSince);
+        result.put("contacts", encodeContacts(updated, Contact.ALL_FIELDS, packed));
+        result.put("deletedIdentifiers", deleted);
+        result.put("replace", false);
+        if (updated.isEmpty() && deleted.isEmpty() && changedSince == data.timestamp) {
+          // Already up to date, the snapshot is left as it is
+          result.put("timestamp", data.timestamp);
+          return result;
+        }
+        contacts = ContactSnapshot.apply(PackedContactsDecoder.decode(data.contacts), updated, deleted);
+        timestamp = Math.max(data.timestamp, timestamp);
+      } else {
+        contacts = getContactsFrom(getCursor(null, null), localizedLabels);
+        result.put("contacts", encodeContacts(contacts, Contact.ALL_FIELDS, packed));
+        result.put("deletedIdentifiers", new ArrayList<String>());
+        result.put("replace", true);
+      }
+
+      try {
+        snapshot.write(contacts, timestamp, localizedLabels);
+      } catch (IOException e) {
+        // The corrections are still returned, the next reconciliation reads them again
+        Log.w(LOG_TAG, "Could not write the contacts snapshot", e);
+        timestamp = data != null ? data.timestamp : -1;
+      }
+      result.put("timestamp", timestamp);
+      return result;
+    }
+  }
+
+  /**
+   * @return the rows of the contacts of a range of {@link ParallelContactsLoader}, selected like
+   * {@link #getCursor(String, String, String, int)} does for every contact
+   */
+  private Cursor getCursorForRange(long fromId, long toId, int fields) {
+    ArrayList<String> mimeTypes = getMimeTypes(fields);
+    String selection = "(" + getMimeTypeSelection(mimeTypes.size()) + " OR " + ContactsContract.RawContacts.ACCOUNT_TYPE + "=?" + ")";
+    ArrayList<String> selectionArgs = new ArrayList<>(mimeTypes);
+    selectionArgs.add(ContactsContract.RawContacts.ACCOUNT_TYPE);
+    if (fromId != Long.MIN_VALUE) {
+      selection += " AND " + ContactsContract.Data.CONTACT_ID + " >= ?";
+      selectionArgs.add(String.valueOf(fromId));
+    }
+    if (toId != Long.MAX_VALUE) {
+      selection += " AND " + ContactsContract.Data.CONTACT_ID + " < ?";
+      selectionArgs.add(String.valueOf(toId));
+    }
+    return contentResolver.query(ContactsContract.Data.CONTENT_URI, getProjection(fields), selection,
+            selectionArgs.toArray(new String[selectionArgs.size()]), ORDER_BY_CONTACT_ID);
+  }
+
+  private static final String CONTACTS_BY_ID = ContactsContract.Contacts._ID + " ASC";
+  // The order of the address book index, see ContactsSummary
+  private static final String CONTACTS_BY_NAME = ContactsContract.Contacts.SORT_KEY_PRIMARY + " ASC, " + CONTACTS_BY_ID;
+
+  /**
+   * @return the identifiers of every contact, in the sort order of the contacts table, read
+   * from that table alone
+   */
+  private long[] getContactIds(String sortOrder) {
+    Cursor cursor = contentResolver.query(ContactsContract.Contacts.CONTENT_URI, new String[]{ContactsContract.Contacts._ID},
+            null, null, sortOrder);
+    if (cursor == null) {
+      return new long[0];
+    }
+    try {
+      long[] contactIds = new long[cursor.getCount()];
+      for (int i = 0; cursor.moveToNext(); i++) {
+        contactIds[i] = cursor.getLong(0);
+      }
+      return contactIds;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  private Cursor getCursorChangedSince(long since, int fields) {
+    ArrayList<String> mimeTypes = getMimeTypes(fields);
+    String selection = "(" + getMimeTypeSelection(mimeTypes.size()) + " OR " + ContactsContract.RawContacts.ACCOUNT_TYPE + "=?" + ")"
+            + " AND " + ContactsContract.Data.CONTACT_LAST_UPDATED_TIMESTAMP + " > ?";
+    ArrayList<String> selectionArgs = new ArrayList<>(mimeTypes);
+    selectionArgs.add(ContactsContract.RawContacts.ACCOUNT_TYPE);
+    selectionArgs.add(String.valueOf(since));
+    return contentResolver.query(ContactsContract.Data.CONTENT_URI, getProjection(fields), selection,
+            selectionArgs.toArray(new String[selectionArgs.size()]), ORDER_BY_CONTACT_ID);
+  }
+
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  private ArrayList<String> getContactsDeletedSince(long since) {
+    ArrayList<String> identifiers = new ArrayList<>();
+    Cursor cursor = contentResolver.query(ContactsContract.DeletedContacts.CONTENT_URI,
+            new String[]{ContactsContract.DeletedContacts.CONTACT_ID},
+            ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP + " > ?",
+            new String[]{String.valueOf(since)}, null);
+    if (cursor == null) {
+      return identifiers;
+    }
+    while (cursor.moveToNext()) {
+      identifiers.add(String.valueOf(cursor.getLong(0)));
+    }
+    cursor.close();
+    return identifiers;
+  }
+
+  /**
+   * Sends an event to Dart when the contacts change while it listens to the changes channel.
+   * The event carries the identifiers of the contacts updated and deleted since the previous
+   * one, or null lists before API 18 where they cannot be queried.
+   */
+  private class ContactsChangesHandler implements EventChannel.StreamHandler {
+    private EventChannel.EventSink events;
+    private long since;
+    private long firstChange, lastChange;
+    private boolean flushScheduled;
+
+    private final ContentObserver observer = new ContentObserver(mainHandler) {
+      @Override
+      public void onChange(boolean selfChange) {
+        changed();
+      }
+    };
+
+    private final Runnable flush = new Runnable() {
+      @Override
+      public void run() {
+        flush();
+      }
+    };
+
+    @Override
+    public void onListen(Object arguments, EventChannel.EventSink events) {
+      this.events = events;
+      since = System.currentTimeMillis() - CHANGES_OVERLAP_MILLIS;
+      contentResolver.registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, observer);
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+      if (events != null) {
+        contentResolver.unregisterContentObserver(observer);
+        mainHandler.removeCallbacks(flush);
+        flushScheduled = false;
+        events = null;
+      }
+    }
+
+    private void changed() {
+      lastChange = SystemClock.uptimeMillis();
+      if (!flushScheduled) {
+        firstChange = lastChange;
+        flushScheduled = true;
+        mainHandler.postDelayed(flush, CHANGES_DEBOUNCE_MILLIS);
+      }
+    }
+
+    private void flush() {
+      long now = SystemClock.uptimeMillis();
+      if (now - lastChange < CHANGES_DEBOUNCE_MILLIS && now - firstChange < CHANGES_MAX_DELAY_MILLIS) {
+        mainHandler.postDelayed(flush, CHANGES_DEBOUNCE_MILLIS - (now - lastChange));
+        return;
+      }
+      flushScheduled = false;
+      final long changedSince = since;
+      since = System.currentTimeMillis() - CHANGES_OVERLAP_MILLIS;
+      boolean accepted = scheduler.execute(LANE_QUERY, PRIORITY_LOW, new Runnable() {
+        @Override
+        public void run() {
+          final HashMap<String, Object> event = new HashMap<>();
+          if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            event.put("updatedIdentifiers", getContactIdsUpdatedSince(changedSince));
+            event.put("deletedIdentifiers", getContactsDeletedSince(changedSince));
+          }
+          mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+              if (events != null) {
+                events.success(event);
+              }
+            }
+          });
+        }
+      });
+      if (!accepted) {
+        // The queries are busy, send the changes along with the next ones
+        since = changedSince;
+        changed();
+      }
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  private ArrayList<String> getContactIdsUpdatedSince(long since) {
+    ArrayList<String> identifiers = new ArrayList<>();
+    Cursor cursor = contentResolver.query(ContactsContract.Contacts.CONTENT_URI,
+            new String[]{ContactsContract.Contacts._ID},
+            ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP + " > ?",
+            new String[]{String.valueOf(since)}, null);
+    if (cursor == null) {
+      return identifiers;
+    }
+    while (cursor.moveToNext()) {
+      identifiers.add(String.valueOf(cursor.getLong(0)));
+    }
+    cursor.close();
+    return identifiers;
+  }
+
+  private void loadAvatars(ArrayList<Contact> contacts, AvatarLoader avatarLoader) {
+    for(Contact c : contacts){
+      final byte[] avatar = avatarLoader.load(contentResolver, c.identifier);
+      if (avatar != null) {
+        c.avatar = avatar;
+      } else {
+        // To stay backwards-compatible, return an empty byte array rather than `null`.
+        c.avatar = new byte[0];
+      }
+    }
+  }
+
+  /**
+   * @return the contacts as sent over the channel, either a list of maps or when packed
+   * the byte array built by {@link PackedContactsEncoder}
+   */
+  private static Object encodeContacts(ArrayList<Contact> contacts, int fields, boolean packed) {
+    if (packed) {
+      return PackedContactsEncoder.encode(contacts, fields);
+    }
+    //Transform the list of contacts to a list of Map
+    ArrayList<HashMap> contactMaps = new ArrayList<>(contacts.size());
+    for(Contact c : contacts){
+      contactMaps.add(c.toMap(fields));
+    }
+    return contactMaps;
+  }
+
+  /**
+   * @return the columns to read for a mask of Contact.FIELD_* flags
+   */
+  static String[] getProjection(int fields) {
+    if (fields == Contact.ALL_FIELDS) {
+      return PROJECTION;
+    }
+    LinkedHashSet<String> projection = new LinkedHashSet<>(Arrays.asList(
+            ContactsContract.Data.CONTACT_ID,
+            ContactsContract.Profile.DISPLAY_NAME,
+            ContactsContract.Contacts.Data.MIMETYPE,
+            ContactsContract.RawContacts.ACCOUNT_TYPE,
+            ContactsContract.RawContacts.ACCOUNT_NAME));
+    if ((fields & Contact.FIELD_NAME) != 0) {
+      projection.addAll(Arrays.asList(StructuredName.GIVEN_NAME, StructuredName.MIDDLE_NAME,
+              StructuredName.FAMILY_NAME, StructuredName.PREFIX, StructuredName.SUFFIX));
+    }
+    if ((fields & Contact.FIELD_NOTE) != 0) {
+      projection.add(CommonDataKinds.Note.NOTE);
+    }
+    if ((fields & Contact.FIELD_PHONES) != 0) {
+      projection.addAll(Arrays.asList(Phone.NUMBER, Phone.TYPE, Phone.LABEL));
+    }
+    if ((fields & Contact.FIELD_EMAILS) != 0) {
+      projection.addAll(Arrays.asList(Email.ADDRESS, Email.TYPE, Email.LABEL));
+    }
+    if ((fields & Contact.FIELD_ORGANIZATION) != 0) {
+      projection.addAll(Arrays.asList(Organization.COMPANY, Organization.TITLE));
+    }
+    if ((fields & Contact.FIELD_POSTAL_ADDRESSES) != 0) {
+      projection.addAll(Arrays.asList(StructuredPostal.TYPE, StructuredPostal.LABEL, StructuredPostal.STREET,
+              StructuredPostal.CITY, StructuredPostal.POSTCODE, StructuredPostal.REGION, StructuredPostal.COUNTRY));
+    }
+    if ((fields & Contact.FIELD_BIRTHDAY) != 0) {
+      projection.addAll(Arrays.asList(CommonDataKinds.Event.TYPE, CommonDataKinds.Event.START_DATE));
+    }
+    return projection.toArray(new String[projection.size()]);
+  }
+
+  /**
+   * @return the MIME types to read for a mask of Contact.FIELD_* flags. Names are always read
+   * so that contacts without any of the requested data are still returned.
+   */
+  private static ArrayList<String> getMimeTypes(int fields) {
+    ArrayList<String> mimeTypes = new ArrayList<>();
+    if ((fields & Contact.FIELD_NOTE) != 0) mimeTypes.add(CommonDataKinds.Note.CONTENT_ITEM_TYPE);
+    if ((fields & Contact.FIELD_EMAILS) != 0) mimeTypes.add(Email.CONTENT_ITEM_TYPE);
+    if ((fields & Contact.FIELD_PHONES) != 0) mimeTypes.add(Phone.CONTENT_ITEM_TYPE);
+    mimeTypes.add(StructuredName.CONTENT_ITEM_TYPE);
+    if ((fields & Contact.FIELD_ORGANIZATION) != 0) mimeTypes.add(Organization.CONTENT_ITEM_TYPE);
+    if ((fields & Contact.FIELD_POSTAL_ADDRESSES) != 0) mimeTypes.add(StructuredPostal.CONTENT_ITEM_TYPE);
+    if ((fields & Contact.FIELD_BIRTHDAY) != 0) mimeTypes.add(CommonDataKinds.Event.CONTENT_ITEM_TYPE);
+    return mimeTypes;
+  }
+
+  private static String getMimeTypeSelection(int count) {
+    return getInSelection(ContactsContract.Data.MIMETYPE, count);
+  }
+
+  /**
+   * @return a selection matching the column against as many arguments
+   */
+  static String getInSelection(String column, int count) {
+    StringBuilder selection = new StringBuilder(column).append(" IN (");
+    for (int i = 0; i < count; i++) {
+      selection.append(i == 0 ? "?" : ",?");
+    }
+    return selection.append(")").toString();
+  }
+
+  private Cursor getCursor(String query, String rawContactId) {
+    return getCursor(query, rawContactId, null, Contact.ALL_FIELDS);
+  }
+
+  private Cursor getCursor(String query, String rawContactId, String sortOrder, int fields) {
+    ArrayList<String> mimeTypes = getMimeTypes(fields);
+    String selection = "(" + getMimeTypeSelection(mimeTypes.size()) + " OR " + ContactsContract.RawContacts.ACCOUNT_TYPE + "=?" + ")";
+    ArrayList<String> selectionArgs = new ArrayList<>(mimeTypes);
+    selectionArgs.add(ContactsContract.RawContacts.ACCOUNT_TYPE);
+    if (query != null) {
+      selectionArgs = new ArrayList<>();
+      selectionArgs.add(query + "%");
+      selection = ContactsContract.Contacts.DISPLAY_NAME_PRIMARY + " LIKE ?";
+      if (fields != Contact.ALL_FIELDS) {
+        selection += " AND " + getMimeTypeSelection(mimeTypes.size());
+        selectionArgs.addAll(mimeTypes);
+      }
+    }
+    if (rawContactId != null) {
+      selectionArgs.add(rawContactId);
+      selection += " AND " + ContactsContract.Data.CONTACT_ID + " =?";
+    }
+    return contentResolver.query(ContactsContract.Data.CONTENT_URI, getProjection(fields), selection, selectionArgs.toArray(new String[selectionArgs.size()]), sortOrder);
+  }
+
+  private Cursor getCursorForPhone(String phone, int fields) {
+    if (phone.isEmpty())
+      return null;
+
+    Uri uri = Uri.withAppendedPath(ContactsContract.PhoneLookup.CONTENT_FILTER_URI, Uri.encode(phone));
+    String[] projection = new String[]{BaseColumns._ID};
+
+    ArrayList<String> contactIds = new ArrayList<>();
+    Cursor phoneCursor = contentResolver.query(uri, projection, null, null, null);
+    while (phoneCursor != null && phoneCursor.moveToNext()){
+      contactIds.add(phoneCursor.getString(phoneCursor.getColumnIndex(BaseColumns._ID)));
+    }
+    if (phoneCursor!= null)
+      phoneCursor.close();
+
+    if (!contactIds.isEmpty()) {
+      String contactIdsListString = contactIds.toString().replace("[", "(").replace("]", ")");
+      String contactSelection = ContactsContract.Data.CONTACT_ID + " IN " + contactIdsListString;
+      String[] selectionArgs = null;
+      if (fields != Contact.ALL_FIELDS) {
+        ArrayList<String> mimeTypes = getMimeTypes(fields);
+        contactSelection += " AND " + getMimeTypeSelection(mimeTypes.size());
+        selectionArgs = mimeTypes.toArray(new String[mimeTypes.size()]);
+      }
+      return contentResolver.query(ContactsContract.Data.CONTENT_URI, getProjection(fields), contactSelection, selectionArgs, null);
+    }
+
+    return null;
+  }
+
+  /**
+   * @return the rows of the contacts of the identifiers, at most {@link ContactLookup#MAX_SELECTION_ARGS}
+   * along with the MIME types of the fields
+   */
+  private Cursor getCursorForIds(List<String> identifiers, int fields) {
+    // A single contact, such as a detail screen, is the common case and needs no IN list
+    String selection = identifiers.size() == 1
+            ? ContactsContract.Data.CONTACT_ID + " = ?"
+            : getInSelection(ContactsContract.Data.CONTACT_ID, identifiers.size());
+    ArrayList<String> selectionArgs = new ArrayList<>(identifiers);
+    if (fields != Contact.ALL_FIELDS) {
+      ArrayList<String> mimeTypes = getMimeTypes(fields);
+      selection += " AND " + getMimeTypeSelection(mimeTypes.size());
+      selectionArgs.addAll(mimeTypes);
+    }
+    return contentResolver.query(ContactsContract.Data.CONTENT_URI, getProjection(fields), selection,
+            selectionArgs.toArray(new String[selectionArgs.size()]), ORDER_BY_CONTACT_ID);
+  }
+
+  /**
+   * @return the lookup keys of the contacts of the identifiers which exist, read from the
+   * contacts table alone rather than from their data rows
+   */
+  private HashMap<String, String> getLookupKeys(List<String> identifiers) {
+    HashMap<String, String> lookupKeys = new HashMap<>();
+    ArrayList<String> contactIds = new ArrayList<>(new LinkedHashSet<>(identifiers));
+    for (List<String> chunk : ContactLookup.chunks(contactIds, ContactLookup.MAX_SELECTION_ARGS)) {
+      Cursor cursor = contentResolver.query(ContactsContract.Contacts.CONTENT_URI,
+              new String[]{ContactsContract.Contacts._ID, ContactsContract.Contacts.LOOKUP_KEY},
+              getInSelection(ContactsContract.Contacts._ID, chunk.size()), chunk.toArray(new String[chunk.size()]), null);
+      if (cursor == null) {
+        continue;
+      }
+      try {
+        while (cursor.moveToNext()) {
+          lookupKeys.put(String.valueOf(cursor.getLong(0)), cursor.getString(1));
+        }
+      } finally {
+        cursor.close();
+      }
+    }
+    return lookupKeys;
+  }
+
+  private Cursor getCursorForEmail(String email, int fields) {
+    if (email.isEmpty())
+      return null;
+    ArrayList<String> selectionArgs = new ArrayList<>(Arrays.asList("%" + email + "%"));
+    String selection = Email.ADDRESS + " LIKE ?";
+    return contentResolver.query(ContactsContract.Data.CONTENT_URI, getProjection(fields), selection, selectionArgs.toArray(new String[selectionArgs.size()]), null);
+  }
+
+  /**
+   * Builds the list of contacts from the cursor
+   * @param cursor
+   * @return the list of contacts
+   */
+  private ArrayList<Contact> getContactsFrom(Cursor cursor, boolean localizedLabels) {
+    return getContactsFrom(cursor, localizedLabels, Contact.ALL_FIELDS);
+  }
+
+  /**
+   * Builds the list of contacts from the cursor, reading only the given fields
+   * @param cursor
+   * @param fields mask of Contact.FIELD_* flags
+   * @return the list of contacts
+   */
+  private ArrayList<Contact> getContactsFrom(Cursor cursor, boolean localizedLabels, int fields) {
+    return getContactsFrom(cursor, resources, localizedLabels, fields);
+  }
+
+  /**
+   * {@link #getContactsFrom(Cursor, boolean, int)} without the plugin, for the benchmarks
+   */
+  static ArrayList<Contact> getContactsFrom(Cursor cursor, Resources resources, boolean localizedLabels, int fields) {
+    HashMap<Long, Contact> map = new LinkedHashMap<>();
+    if (cursor == null) {
+      return new ArrayList<>();
+    }
+
+    ContactRowDecoder decoder = new ContactRowDecoder(cursor, resources, localizedLabels, fields);
+    Contact contact = null;
+    long lastContactId = 0;
+    while (cursor.moveToNext()) {
+      long contactId = decoder.getContactId();
+      // Rows of the same contact are usually adjacent, skip the lookup for them
+      if (contact == null || contactId != lastContactId) {
+        contact = map.get(contactId);
+        if (contact == null) {
+          contact = decoder.newContact(contactId);
+          map.put(contactId, contact);
+        }
+        lastContactId = contactId;
+      }
+      decoder.readRow(contact);
+    }
+
+    cursor.close();
+
     return new ArrayList<>(map.values());
   }
 
@@ -651,70 +1927,231 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
     }
   }
 
-  private void getAvatar(final Contact contact, final boolean highRes,
+  private void getAvatar(final String identifier, final AvatarLoader avatarLoader,
                          final Result result) {
-    new GetAvatarsTask(contact, highRes, contentResolver, result).executeOnExecutor(this.executor);
+    // A single avatar is usually the one being shown, it goes ahead of the batches
+    submit("getAvatar", LANE_AVATAR, PRIORITY_HIGH, new GetAvatarsTask(identifier, avatarLoader, avatarCache, contentResolver), result);
   }
 
-  private static class GetAvatarsTask extends AsyncTask<Void, Void, byte[]> {
-    final Contact contact;
-    final boolean highRes;
+  private static class GetAvatarsTask extends RequestScheduler.Request<byte[]> {
+    final String identifier;
+    final AvatarLoader avatarLoader;
+    final AvatarCache avatarCache;
     final ContentResolver contentResolver;
-    final Result result;
 
-    GetAvatarsTask(final Contact contact, final boolean highRes,
-                   final ContentResolver contentResolver, final Result result) {
-      this.contact = contact;
-      this.highRes = highRes;
+    GetAvatarsTask(final String identifier, final AvatarLoader avatarLoader, final AvatarCache avatarCache,
+                   final ContentResolver contentResolver) {
+      this.identifier = identifier;
+      this.avatarLoader = avatarLoader;
+      this.avatarCache = avatarCache;
       this.contentResolver = contentResolver;
-      this.result = result;
     }
 
     @Override
-    protected byte[] doInBackground(final Void... params) {
-      // Load avatar for each contact identifier.
-      return loadContactPhotoHighRes(contact.identifier, highRes, contentResolver);
+    protected byte[] doInBackground() {
+      timing.begin(PerformanceStats.STAGE_AVATARS);
+      byte[] avatar = avatarCache.load(contentResolver, avatarLoader, identifier);
+      timing.end();
+      timing.contacts = 1;
+      timing.bytes = avatar != null ? avatar.length : 0;
+      return avatar;
+    }
+  }
+
+  /**
+   * Loads the avatars of a list of contacts on up to a given number of threads. The loaded
+   * avatars are handed out by {@link #take(Result)} as they come, and the identifiers which
+   * are not being loaded yet can be moved to the front of the queue or dropped.
+   *
+   * Each worker loads one avatar at a time on the avatar lane and queues itself again for the
+   * next one, so that single avatar requests are not held back until the batch is done.
+   */
+  private class AvatarBatch implements Runnable {
+    final int token;
+    private final AvatarLoader avatarLoader;
+    private final ArrayDeque<String> pending;
+    private final HashMap<String, byte[]> loaded = new HashMap<>();
+    private int loading;
+    private Result waiting;
+    // Set once the whole batch is cancelled, the avatars being loaded then being dropped
+    private boolean cancelled;
+
+    AvatarBatch(int token, List<String> identifiers, AvatarLoader avatarLoader) {
+      this.token = token;
+      this.avatarLoader = avatarLoader;
+      this.pending = new ArrayDeque<>(identifiers);
+    }
+
+    /**
+     * @return false when the avatar lane is too busy to start the batch
+     */
+    boolean start(int parallelism) {
+      // At least one worker, or the first take() would wait forever
+      int workers = Math.min(Math.min(Math.max(1, parallelism), scheduler.getThreads(LANE_AVATAR)), pending.size());
+      for (int i = 0; i < workers; i++) {
+        if (!scheduler.execute(LANE_AVATAR, PRIORITY_NORMAL, this) && i == 0) {
+          return false;
+        }
+      }
+      return true;
     }
 
     @Override
-    protected void onPostExecute(final byte[] avatar) {
-      result.success(avatar);
+    public void run() {
+      String identifier = next();
+      if (identifier == null) {
+        return;
+      }
+      // Workers are shared by the avatars of the batch, only their loading is timed, under a
+      // name of its own as an avatar is not a call of getAvatars
+      PerformanceStats.Call timing = performanceStats.newCall("getAvatars.avatar");
+      timing.start();
+      timing.begin(PerformanceStats.STAGE_AVATARS);
+      byte[] avatar = null;
+      try {
+        avatar = avatarCache.load(contentResolver, avatarLoader, identifier);
+      } catch (RuntimeException e) {
+        Log.e(LOG_TAG, "Could not load the avatar of " + identifier, e);
+        timing.failed = true;
+      }
+      timing.contacts = 1;
+      timing.bytes = avatar != null ? avatar.length : 0;
+      timing.finish();
+      loaded(identifier, avatar);
+      if (hasPending()) {
+        scheduler.requeue(LANE_AVATAR, PRIORITY_NORMAL, this);
+      }
     }
-  }
 
-  private static byte[] loadContactPhotoHighRes(final String identifier,
-                                                final boolean photoHighResolution, final ContentResolver contentResolver) {
-    try {
-      final Uri uri = ContentUris.withAppendedId(ContactsContract.Contacts.CONTENT_URI, Long.parseLong(identifier));
-      final InputStream input = ContactsContract.Contacts.openContactPhotoInputStream(contentResolver, uri, photoHighResolution);
+    private synchronized boolean hasPending() {
+      return !pending.isEmpty();
+    }
 
-      if (input == null) return null;
+    private synchronized String next() {
+      String identifier = pending.pollFirst();
+      if (identifier != null) {
+        loading++;
+      }
+      return identifier;
+    }
 
-      final Bitmap bitmap = BitmapFactory.decodeStream(input);
-      input.close();
+    private synchronized void loaded(String identifier, byte[] avatar) {
+      loading--;
+      if (cancelled) {
+        return;
+      }
+      loaded.put(identifier, avatar);
+      if (waiting != null) {
+        respond(waiting);
+        waiting = null;
+      }
+    }
 
-      final ByteArrayOutputStream stream = new ByteArrayOutputStream();
-      bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
-      final byte[] bytes = stream.toByteArray();
-      stream.close();
-      return bytes;
-    } catch (final IOException ex){
-      Log.e(LOG_TAG, ex.getMessage());
-      return null;
+    /**
+     * Answers with the avatars loaded since the last call, or with the next one to be loaded
+     * if there are none yet
+     */
+    synchronized void take(Result result) {
+      if (waiting != null) {
+        result.error(null, "Avatars of batch " + token + " are already being waited for", null);
+        return;
+      }
+      if (loaded.isEmpty() && !isDone()) {
+        waiting = result;
+      } else {
+        respond(result);
+      }
+    }
+
+    /**
+     * Moves the given identifiers which are not being loaded yet to the front of the queue
+     */
+    synchronized void prioritize(List<String> identifiers) {
+      for (int i = identifiers.size() - 1; i >= 0; i--) {
+        String identifier = identifiers.get(i);
+        if (pending.remove(identifier)) {
+          pending.addFirst(identifier);
+        }
+      }
+    }
+
+    /**
+     * Drops the given identifiers which are not being loaded yet, or when null the whole batch
+     * along with the avatars loaded and being loaded, answering the call waiting for them
+     */
+    synchronized void cancel(List<String> identifiers) {
+      if (identifiers == null) {
+        pending.clear();
+        loaded.clear();
+        cancelled = true;
+      } else {
+        pending.removeAll(identifiers);
+      }
+      if (waiting != null && (cancelled || isDone())) {
+        respond(waiting);
+        waiting = null;
+      }
+    }
+
+    private boolean isDone() {
+      return pending.isEmpty() && loading == 0;
+    }
+
+    private void respond(final Result result) {
+      final HashMap<String, Object> batch = new HashMap<>();
+      batch.put("avatars", new HashMap<>(loaded));
+      loaded.clear();
+      final boolean done = cancelled || isDone();
+      batch.put("batchToken", done ? null : token);
+      mainHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          if (done) {
+            avatarBatches.remove(token);
+          }
+          result.success(batch);
+        }
+      });
     }
   }
 
-  private boolean addContact(Contact contact){
+  /**
+   * @return how the avatars of a call are loaded, from its photoHighResolution, avatarFormat
+   * and avatarSize arguments
+   */
+  private static AvatarLoader getAvatarLoader(MethodCall call) {
+    Integer avatarSize = call.argument("avatarSize");
+    return new AvatarLoader((boolean)call.argument("photoHighResolution"),
+            AvatarLoader.formatFromName((String)call.argument("avatarFormat")),
+            avatarSize != null ? avatarSize : 0);
+  }
 
+  private boolean addContact(Contact contact){
     ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+    addContactOperations(ops, contact, 0);
+    try {
+      contentResolver.applyBatch(ContactsContract.AUTHORITY, ops);
+      return true;
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Appends the operations inserting the contact, the first one inserts its raw contact
+   * and allows the provider to yield, as the contact does not depend on the previous ones
+   * @param rawContactIndex index in the batch of the first operation, which the others refer to
+   */
+  private static void addContactOperations(ArrayList<ContentProviderOperation> ops, Contact contact, int rawContactIndex) {
 
     ContentProviderOperation.Builder op = ContentProviderOperation.newInsert(ContactsContract.RawContacts.CONTENT_URI)
             .withValue(ContactsContract.RawContacts.ACCOUNT_TYPE, null)
-            .withValue(ContactsContract.RawContacts.ACCOUNT_NAME, null);
+            .withValue(ContactsContract.RawContacts.ACCOUNT_NAME, null)
+            .withYieldAllowed(true);
     ops.add(op.build());
 
     op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, 0)
+            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
             .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE)
             .withValue(StructuredName.GIVEN_NAME, contact.givenName)
             .withValue(StructuredName.MIDDLE_NAME, contact.middleName)
@@ -724,13 +2161,13 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
     ops.add(op.build());
 
     op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, 0)
+            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
             .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.Note.CONTENT_ITEM_TYPE)
             .withValue(CommonDataKinds.Note.NOTE, contact.note);
     ops.add(op.build());
 
     op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, 0)
+            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
             .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.Organization.CONTENT_ITEM_TYPE)
             .withValue(Organization.COMPANY, contact.company)
             .withValue(Organization.TITLE, contact.jobTitle);
@@ -738,18 +2175,16 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
 
     //Photo
     op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, 0)
+            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
             .withValue(ContactsContract.Data.IS_SUPER_PRIMARY, 1)
             .withValue(ContactsContract.CommonDataKinds.Photo.PHOTO, contact.avatar)
             .withValue(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.Photo.CONTENT_ITEM_TYPE);
     ops.add(op.build());
 
-    op.withYieldAllowed(true);
-
     //Phones
     for(Item phone : contact.phones){
       op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-              .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, 0)
+              .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
               .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.Phone.CONTENT_ITEM_TYPE)
               .withValue(ContactsContract.CommonDataKinds.Phone.NUMBER, phone.value);
 
@@ -765,7 +2200,7 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
     //Emails
     for (Item email : contact.emails) {
       op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-              .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, 0)
+              .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
               .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.Email.CONTENT_ITEM_TYPE)
               .withValue(CommonDataKinds.Email.ADDRESS, email.value)
               .withValue(CommonDataKinds.Email.TYPE, email.type);
@@ -774,7 +2209,7 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
     //Postal addresses
     for (PostalAddress address : contact.postalAddresses) {
       op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-              .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, 0)
+              .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
               .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.StructuredPostal.CONTENT_ITEM_TYPE)
               .withValue(CommonDataKinds.StructuredPostal.TYPE, address.type)
               .withValue(CommonDataKinds.StructuredPostal.LABEL, address.label)
@@ -788,42 +2223,58 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
 
     // Birthday
     op = ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, 0)
+            .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
             .withValue(ContactsContract.Data.MIMETYPE, CommonDataKinds.Event.CONTENT_ITEM_TYPE)
             .withValue(CommonDataKinds.Event.TYPE, CommonDataKinds.Event.TYPE_BIRTHDAY)
             .withValue(CommonDataKinds.Event.START_DATE, contact.birthday);
     ops.add(op.build());
+  }
 
+  private boolean deleteContact(Contact contact){
+    ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+    deleteContactOperations(ops, contact);
     try {
       contentResolver.applyBatch(ContactsContract.AUTHORITY, ops);
       return true;
     } catch (Exception e) {
       return false;
+
     }
   }
 
-  private boolean deleteContact(Contact contact){
-    ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+  private static void deleteContactOperations(ArrayList<ContentProviderOperation> ops, Contact contact) {
     ops.add(ContentProviderOperation.newDelete(ContactsContract.RawContacts.CONTENT_URI)
             .withSelection(ContactsContract.RawContacts.CONTACT_ID + "=?", new String[]{String.valueOf(contact.identifier)})
+            .withYieldAllowed(true)
             .build());
+  }
+
+  private boolean updateContact(Contact contact, boolean diffUpdate) {
+    ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+    if (diffUpdate) {
+      diffContactOperations(ops, contact);
+    } else {
+      updateContactOperations(ops, contact);
+    }
     try {
       contentResolver.applyBatch(ContactsContract.AUTHORITY, ops);
       return true;
     } catch (Exception e) {
+      // Log exception
+      Log.e("TAG", "Exception encountered while inserting contact: " );
+      e.printStackTrace();
       return false;
-
     }
   }
 
-  private boolean updateContact(Contact contact) {
-    ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+  private static void updateContactOperations(ArrayList<ContentProviderOperation> ops, Contact contact) {
     ContentProviderOperation.Builder op;
 
     // Drop all details about contact except name
     op = ContentProviderOperation.newDelete(ContactsContract.Data.CONTENT_URI)
             .withSelection(ContactsContract.Data.CONTACT_ID + "=? AND " + ContactsContract.Data.MIMETYPE + "=?",
-                    new String[]{String.valueOf(contact.identifier), ContactsContract.CommonDataKinds.Organization.CONTENT_ITEM_TYPE});
+                    new String[]{String.valueOf(contact.identifier), ContactsContract.CommonDataKinds.Organization.CONTENT_ITEM_TYPE})
+            .withYieldAllowed(true);
     ops.add(op.build());
 
     op = ContentProviderOperation.newDelete(ContactsContract.Data.CONTENT_URI)
@@ -923,16 +2374,239 @@ public class ContactsServicePlugin implements MethodCallHandler, FlutterPlugin,
               .withValue(CommonDataKinds.StructuredPostal.COUNTRY, address.country);
       ops.add(op.build());
     }
+  }
+
+  /**
+   * Adds the operations writing only the data rows of the contact which changed, leaving the
+   * others, and their ids, as they are
+   */
+  private void diffContactOperations(ArrayList<ContentProviderOperation> ops, Contact contact) {
+    Cursor cursor = contentResolver.query(ContactsContract.Data.CONTENT_URI, ContactDiff.PROJECTION,
+            ContactsContract.Data.CONTACT_ID + "=?", new String[]{contact.identifier}, null);
+    ContactDiff.compute(cursor, contact).addOperations(ops, contact.identifier);
+  }
+
+  /**
+   * Writes a single contact on the write lane, after the writes queued before it, answering
+   * the result with null or the error message when it failed
+   * @param mode one of the WRITE_* constants
+   */
+  private void writeContact(String method, final int mode, final Contact contact, final String errorMessage, Result result) {
+    submit(method, LANE_WRITE, PRIORITY_NORMAL, new RequestScheduler.Request<Boolean>() {
+      @Override
+      Boolean doInBackground() {
+        timing.begin(PerformanceStats.STAGE_WRITE);
+        boolean success;
+        switch (mode) {
+          case WRITE_ADD: success = addContact(contact); break;
+          case WRITE_DELETE: success = deleteContact(contact); break;
+          default: success = updateContact(contact, mode == WRITE_UPDATE_DIFF); break;
+        }
+        timing.end();
+        timing.contacts = 1;
+        timing.failed = !success;
+        return success;
+      }
+
+      @Override
+      void onPostExecute(Boolean success) {
+        if (success) {
+          result.success(null);
+        } else {
+          result.error(null, errorMessage, null);
+        }
+      }
+    }, result);
+  }
+
+  private void writeContacts(String method, int mode, List<HashMap> contactMaps, Result result) {
+    ArrayList<Contact> contacts = new ArrayList<>(contactMaps.size());
+    for (HashMap contactMap : contactMaps) {
+      contacts.add(Contact.fromMap(contactMap));
+    }
+    submit(method, LANE_WRITE, PRIORITY_NORMAL, new WriteContactsTask(mode, contacts), result);
+  }
+
+  private class WriteContactsTask extends RequestScheduler.Request<ArrayList<HashMap<String, Object>>> {
+    private final int mode;
+    private final ArrayList<Contact> contacts;
+
+    WriteContactsTask(int mode, ArrayList<Contact> contacts) {
+      this.mode = mode;
+      this.contacts = contacts;
+    }
+
+    @Override
+    protected ArrayList<HashMap<String, Object>> doInBackground() {
+      timing.begin(PerformanceStats.STAGE_WRITE);
+      ArrayList<HashMap<String, Object>> results = writeContacts(mode, contacts);
+      timing.end();
+      timing.contacts = contacts.size();
+      return results;
+    }
+  }
+
+  /**
+   * Writes the contacts in as few transactions as the provider accepts, every contact being
+   * written entirely in one of them
+   * @param mode one of the WRITE_* constants
+   * @return the result of each contact, see {@link #writeResult(boolean, String, String)}
+   */
+  private ArrayList<HashMap<String, Object>> writeContacts(int mode, List<Contact> contacts) {
+    ArrayList<HashMap<String, Object>> results = new ArrayList<>(contacts.size());
+    ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+    ArrayList<Integer> starts = new ArrayList<>();
+    int chunkStart = 0;
+    long chunkBytes = 0;
+    for (int i = 0; i < contacts.size(); i++) {
+      Contact contact = contacts.get(i);
+      // Built once and moved to the next chunk when it does not fit, a diff update queries the contact
+      ArrayList<ContentProviderOperation> contactOps = new ArrayList<>();
+      addWriteOperations(mode, contactOps, contact, ops.size());
+      long bytes = estimateWriteBytes(contact, contactOps.size());
+      if (!ops.isEmpty() && (ops.size() + contactOps.size() > BATCH_MAX_OPERATIONS || chunkBytes + bytes > BATCH_MAX_BYTES)) {
+        // The contact does not fit, write the previous ones and start the next chunk with it
+        applyWriteChunk(mode, contacts.subList(chunkStart, i), ops, starts, results);
+        ops.clear();
+        starts.clear();
+        chunkStart = i;
+        chunkBytes = 0;
+        if (mode == WRITE_ADD) {
+          // The back references of the inserts are indexes into the chunk
+          contactOps.clear();
+          addContactOperations(contactOps, contact, 0);
+        }
+      }
+      starts.add(ops.size());
+      ops.addAll(contactOps);
+      chunkBytes += bytes;
+    }
+    if (!starts.isEmpty()) {
+      applyWriteChunk(mode, contacts.subList(chunkStart, contacts.size()), ops, starts, results);
+    }
+    return results;
+  }
 
+  /**
+   * @param chunkIndex index in the chunk of the first operation, which the inserts of an added
+   *                   contact refer to
+   */
+  private void addWriteOperations(int mode, ArrayList<ContentProviderOperation> ops, Contact contact, int chunkIndex) {
+    switch (mode) {
+      case WRITE_ADD: addContactOperations(ops, contact, chunkIndex); break;
+      case WRITE_UPDATE: updateContactOperations(ops, contact); break;
+      case WRITE_UPDATE_DIFF: diffContactOperations(ops, contact); break;
+      case WRITE_DELETE: deleteContactOperations(ops, contact); break;
+    }
+  }
+
+  private static long estimateWriteBytes(Contact contact, int operationCount) {
+    return (contact.avatar != null ? contact.avatar.length : 0) + (long) operationCount * BATCH_OPERATION_BYTES;
+  }
+
+  /**
+   * Applies the operations of a chunk of contacts in one transaction, and when it fails writes
+   * the contacts it did not commit one by one to tell which of them failed. The provider may
+   * commit the transaction at the first operation of each contact, which allows it to yield.
+   * @param starts index of the first operation of each contact
+   */
+  private void applyWriteChunk(int mode, List<Contact> chunk, ArrayList<ContentProviderOperation> ops,
+                               List<Integer> starts, ArrayList<HashMap<String, Object>> results) {
+    ContentProviderResult[] opResults;
     try {
-      contentResolver.applyBatch(ContactsContract.AUTHORITY, ops);
-      return true;
+      opResults = contentResolver.applyBatch(ContactsContract.AUTHORITY, ops);
     } catch (Exception e) {
-      // Log exception
-      Log.e("TAG", "Exception encountered while inserting contact: " );
-      e.printStackTrace();
-      return false;
+      int written = e instanceof OperationApplicationException
+              ? countWrittenContacts(starts, ops.size(), ((OperationApplicationException) e).getNumSuccessfulYieldPoints())
+              : 0;
+      if (chunk.size() == 1 && written == 0) {
+        Log.e(LOG_TAG, "Failed to write contact " + chunk.get(0).identifier, e);
+        results.add(writeResult(false, chunk.get(0).identifier, e.getMessage()));
+        return;
+      }
+      for (int i = 0; i < written; i++) {
+        // The results of the committed operations are lost with the exception, so are the
+        // identifiers of the contacts added by them
+        results.add(writeResult(true, mode == WRITE_ADD ? null : chunk.get(i).identifier, null));
+      }
+      for (int i = written; i < chunk.size(); i++) {
+        ArrayList<ContentProviderOperation> contactOps = new ArrayList<>();
+        if (mode == WRITE_ADD) {
+          // The back references of the inserts are indexes into the chunk, built again from 0
+          addContactOperations(contactOps, chunk.get(i), 0);
+        } else {
+          // Reused rather than built again, which for a diff update would query the contact again
+          contactOps.addAll(ops.subList(starts.get(i), i + 1 < starts.size() ? starts.get(i + 1) : ops.size()));
+        }
+        applyWriteChunk(mode, Collections.singletonList(chunk.get(i)), contactOps, Collections.singletonList(0), results);
+      }
+      return;
+    }
+
+    if (mode == WRITE_ADD) {
+      String[] rawContactIds = new String[chunk.size()];
+      for (int i = 0; i < chunk.size(); i++) {
+        rawContactIds[i] = String.valueOf(ContentUris.parseId(opResults[starts.get(i)].uri));
+      }
+      HashMap<String, String> contactIds = getContactIdsOfRawContacts(rawContactIds);
+      for (String rawContactId : rawContactIds) {
+        results.add(writeResult(true, contactIds.get(rawContactId), null));
+      }
+    } else {
+      for (int i = 0; i < chunk.size(); i++) {
+        // Deleting a contact which does not exist is a failure, updating it a no-op like updateContact,
+        // a diff update having already failed on its assertion. A diff update may also have no
+        // operation at all, so only deletes look at their result
+        boolean success = mode != WRITE_DELETE || (opResults[starts.get(i)].count != null && opResults[starts.get(i)].count > 0);
+        results.add(writeResult(success, chunk.get(i).identifier, success ? null : "Contact not found"));
+      }
+    }
+  }
+
+  /**
+   * @param yieldPoints the yield points at which the provider committed the transaction
+   * @return how many contacts, from the first one, are known to be committed. The provider only
+   * counts the yield points it took, so the contacts up to the failed one may have been as well.
+   * A contact without operations has no yield point and is counted with the next one.
+   */
+  private static int countWrittenContacts(List<Integer> starts, int operationCount, int yieldPoints) {
+    if (yieldPoints <= 0) {
+      return 0;
+    }
+    for (int i = 1; i < starts.size(); i++) {
+      int end = i + 1 < starts.size() ? starts.get(i + 1) : operationCount;
+      if (starts.get(i) < end && --yieldPoints == 0) {
+        return i;
+      }
+    }
+    return 0;
+  }
+
+  private HashMap<String, String> getContactIdsOfRawContacts(String[] rawContactIds) {
+    HashMap<String, String> contactIds = new HashMap<>();
+    Cursor cursor = contentResolver.query(ContactsContract.RawContacts.CONTENT_URI,
+            new String[]{ContactsContract.RawContacts._ID, ContactsContract.RawContacts.CONTACT_ID},
+            getInSelection(ContactsContract.RawContacts._ID, rawContactIds.length), rawContactIds, null);
+    if (cursor == null) {
+      return contactIds;
+    }
+    while (cursor.moveToNext()) {
+      contactIds.put(String.valueOf(cursor.getLong(0)), String.valueOf(cursor.getLong(1)));
     }
+    cursor.close();
+    return contactIds;
+  }
+
+  /**
+   * @param identifier the identifier of the contact, for an added one the new identifier
+   * @param error why the contact could not be written
+   */
+  private static HashMap<String, Object> writeResult(boolean success, String identifier, String error) {
+    HashMap<String, Object> result = new HashMap<>();
+    result.put("success", success);
+    result.put("identifier", identifier);
+    result.put("error", error);
+    return result;
   }
 
 }
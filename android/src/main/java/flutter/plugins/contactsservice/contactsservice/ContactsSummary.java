@@ -0,0 +1,149 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.provider.ContactsContract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+/***
+ * Counts the contacts of the address book, per account and per section of the alphabet, for
+ * the headers and fast scrollers of a contact list, without reading the contacts themselves.
+ *
+ * The total is counted by the provider through the _count column. The provider has no GROUP BY,
+ * so the accounts are tallied from a cursor of the two account columns of the raw contacts,
+ * which is a few bytes per row. The sections are the address book index the provider computes
+ * along with a query of the contacts sorted by name, from Android 5.0 (API 21).
+ ***/
+@TargetApi(Build.VERSION_CODES.ECLAIR)
+class ContactsSummary {
+
+    private static final String[] ACCOUNT_PROJECTION = {
+            ContactsContract.RawContacts.ACCOUNT_TYPE, ContactsContract.RawContacts.ACCOUNT_NAME,
+    };
+
+    private final ContentResolver contentResolver;
+
+    ContactsSummary(ContentResolver contentResolver) {
+        this.contentResolver = contentResolver;
+    }
+
+    /**
+     * @return the count of contacts, the count of raw contacts of each account, most first, and
+     * the sections of the address book index in the order of the display names, or null
+     * before API 21
+     */
+    HashMap<String, Object> read() {
+        HashMap<String, Object> summary = new HashMap<>();
+        summary.put("count", readCount(contentResolver.query(ContactsContract.Contacts.CONTENT_URI,
+                new String[]{ContactsContract.Contacts._COUNT}, null, null, null)));
+        summary.put("accounts", countAccounts(contentResolver.query(ContactsContract.RawContacts.CONTENT_URI, ACCOUNT_PROJECTION,
+                ContactsContract.RawContacts.DELETED + "=0", null, null)));
+        summary.put("index", Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? readIndex() : null);
+        return summary;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private ArrayList<HashMap<String, Object>> readIndex() {
+        Uri uri = ContactsContract.Contacts.CONTENT_URI.buildUpon()
+                .appendQueryParameter(ContactsContract.Contacts.EXTRA_ADDRESS_BOOK_INDEX, "true")
+                .build();
+        // The index follows the sort order, only the identifiers are read to get it
+        Cursor cursor = contentResolver.query(uri, new String[]{ContactsContract.Contacts._ID}, null, null,
+                ContactsContract.Contacts.SORT_KEY_PRIMARY);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return readIndex(cursor.getExtras());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the value of the single row of a _count query, closing the cursor
+     */
+    static long readCount(Cursor cursor) {
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the type, name and count of the raw contacts of each account of the cursor, most
+     * first, closing the cursor. Raw contacts saved on the device only have a null account.
+     */
+    static ArrayList<HashMap<String, Object>> countAccounts(Cursor cursor) {
+        ArrayList<HashMap<String, Object>> accounts = new ArrayList<>();
+        if (cursor == null) {
+            return accounts;
+        }
+        // Keyed by type and name, in the order of their first raw contact
+        LinkedHashMap<String, HashMap<String, Object>> byAccount = new LinkedHashMap<>();
+        try {
+            while (cursor.moveToNext()) {
+                String type = cursor.getString(0);
+                String name = cursor.getString(1);
+                String key = type + "\u0000" + name;
+                HashMap<String, Object> account = byAccount.get(key);
+                if (account == null) {
+                    account = new HashMap<>();
+                    account.put("type", type);
+                    account.put("name", name);
+                    account.put("count", 0);
+                    byAccount.put(key, account);
+                }
+                account.put("count", (Integer) account.get("count") + 1);
+            }
+        } finally {
+            cursor.close();
+        }
+        accounts.addAll(byAccount.values());
+        // Stable, accounts with as many raw contacts stay in the order they were met
+        Collections.sort(accounts, new Comparator<HashMap<String, Object>>() {
+            @Override
+            public int compare(HashMap<String, Object> a, HashMap<String, Object> b) {
+                return (Integer) b.get("count") - (Integer) a.get("count");
+            }
+        });
+        return accounts;
+    }
+
+    /**
+     * @return the title and count of each section of the index in the extras of a cursor,
+     * null when the provider did not compute it
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    static ArrayList<HashMap<String, Object>> readIndex(Bundle extras) {
+        if (extras == null) {
+            return null;
+        }
+        String[] titles = extras.getStringArray(ContactsContract.Contacts.EXTRA_ADDRESS_BOOK_INDEX_TITLES);
+        int[] counts = extras.getIntArray(ContactsContract.Contacts.EXTRA_ADDRESS_BOOK_INDEX_COUNTS);
+        if (titles == null || counts == null) {
+            return null;
+        }
+        ArrayList<HashMap<String, Object>> sections = new ArrayList<>(titles.length);
+        for (int i = 0; i < titles.length && i < counts.length; i++) {
+            HashMap<String, Object> section = new HashMap<>();
+            section.put("title", titles[i]);
+            section.put("count", counts[i]);
+            sections.add(section);
+        }
+        return sections;
+    }
+}
@@ -0,0 +1,128 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.annotation.TargetApi;
+import android.content.res.Resources;
+import android.os.Build;
+
+import static android.provider.ContactsContract.CommonDataKinds.Email;
+import static android.provider.ContactsContract.CommonDataKinds.Phone;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
+
+import java.util.Arrays;
+
+/***
+ * The labels of the phone, email and postal address types, resolved once rather than for
+ * every row. The localized table is built from the resources on first use and dropped when
+ * the configuration changes, as the locale may have changed with it.
+ *
+ * A null label stands for a custom one, to be read from the LABEL column of the row.
+ ***/
+@TargetApi(Build.VERSION_CODES.ECLAIR)
+final class LabelTable {
+
+    private static final LabelTable UNLOCALIZED = newUnlocalized();
+    private static volatile LabelTable localized;
+
+    // Indexed by type, covering every type defined by the provider
+    private final String[] phoneLabels = new String[Phone.TYPE_MMS + 1];
+    private final String[] emailLabels = new String[Email.TYPE_MOBILE + 1];
+    private final String[] postalLabels = new String[StructuredPostal.TYPE_OTHER + 1];
+    // Label of the types unknown to the table, null to ask the resources
+    private final String otherLabel;
+    private final Resources resources;
+
+    private LabelTable(Resources resources, String otherLabel) {
+        this.resources = resources;
+        this.otherLabel = otherLabel;
+    }
+
+    /**
+     * @return the table of the current locale when localizedLabels, or else of the English
+     * labels, which are the same on every device
+     */
+    static LabelTable get(Resources resources, boolean localizedLabels) {
+        if (!localizedLabels) {
+            return UNLOCALIZED;
+        }
+        LabelTable table = localized;
+        if (table == null || table.resources != resources) {
+            // Two threads may both build it, they build the same table
+            table = newLocalized(resources);
+            localized = table;
+        }
+        return table;
+    }
+
+    /**
+     * Drops the localized table, to be called when the configuration changes
+     */
+    static void invalidate() {
+        localized = null;
+    }
+
+    String phoneLabel(int type) {
+        if (type >= 0 && type < phoneLabels.length) {
+            return phoneLabels[type];
+        }
+        return otherLabel != null ? otherLabel : localize(Phone.getTypeLabel(resources, type, ""));
+    }
+
+    String emailLabel(int type) {
+        if (type >= 0 && type < emailLabels.length) {
+            return emailLabels[type];
+        }
+        return otherLabel != null ? otherLabel : localize(Email.getTypeLabel(resources, type, ""));
+    }
+
+    String postalLabel(int type) {
+        if (type >= 0 && type < postalLabels.length) {
+            return postalLabels[type];
+        }
+        return otherLabel != null ? otherLabel : localize(StructuredPostal.getTypeLabel(resources, type, ""));
+    }
+
+    private static LabelTable newUnlocalized() {
+        LabelTable table = new LabelTable(null, "other");
+        Arrays.fill(table.phoneLabels, "other");
+        table.phoneLabels[Phone.TYPE_CUSTOM] = null;
+        table.phoneLabels[Phone.TYPE_HOME] = "home";
+        table.phoneLabels[Phone.TYPE_WORK] = "work";
+        table.phoneLabels[Phone.TYPE_MOBILE] = "mobile";
+        table.phoneLabels[Phone.TYPE_FAX_WORK] = "fax work";
+        table.phoneLabels[Phone.TYPE_FAX_HOME] = "fax home";
+        table.phoneLabels[Phone.TYPE_MAIN] = "main";
+        table.phoneLabels[Phone.TYPE_COMPANY_MAIN] = "company";
+        table.phoneLabels[Phone.TYPE_PAGER] = "pager";
+
+        Arrays.fill(table.emailLabels, "other");
+        table.emailLabels[Email.TYPE_CUSTOM] = null;
+        table.emailLabels[Email.TYPE_HOME] = "home";
+        table.emailLabels[Email.TYPE_WORK] = "work";
+        table.emailLabels[Email.TYPE_MOBILE] = "mobile";
+
+        Arrays.fill(table.postalLabels, "other");
+        table.postalLabels[StructuredPostal.TYPE_CUSTOM] = null;
+        table.postalLabels[StructuredPostal.TYPE_HOME] = "home";
+        table.postalLabels[StructuredPostal.TYPE_WORK] = "work";
+        return table;
+    }
+
+    private static LabelTable newLocalized(Resources resources) {
+        LabelTable table = new LabelTable(resources, null);
+        // The custom type is localized too, with the empty label given for it
+        for (int type = 0; type < table.phoneLabels.length; type++) {
+            table.phoneLabels[type] = localize(Phone.getTypeLabel(resources, type, ""));
+        }
+        for (int type = 0; type < table.emailLabels.length; type++) {
+            table.emailLabels[type] = localize(Email.getTypeLabel(resources, type, ""));
+        }
+        for (int type = 0; type < table.postalLabels.length; type++) {
+            table.postalLabels[type] = localize(StructuredPostal.getTypeLabel(resources, type, ""));
+        }
+        return table;
+    }
+
+    private static String localize(CharSequence label) {
+        return label.toString().toLowerCase();
+    }
+}
@@ -0,0 +1,98 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * Decodes the byte arrays built by {@link PackedContactsEncoder}, for the contacts stored
+ * in that form on the device. Every string of the table is decoded once and shared by the
+ * contacts referencing it.
+ ***/
+class PackedContactsDecoder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private PackedContactsDecoder() {
+    }
+
+    /**
+     * @throws IllegalArgumentException when the bytes are not of the current version
+     */
+    static ArrayList<Contact> decode(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int version = buffer.getInt();
+        if (version != PackedContactsEncoder.VERSION) {
+            throw new IllegalArgumentException("Unsupported packed contacts version " + version);
+        }
+        buffer.getInt(); // fields mask, the lists of the fields left out are empty
+
+        int stringCount = buffer.getInt();
+        int[] offsets = new int[stringCount + 1];
+        for (int i = 0; i <= stringCount; i++) {
+            offsets[i] = buffer.getInt();
+        }
+        int dataStart = buffer.position();
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            strings[i] = new String(bytes, dataStart + offsets[i], offsets[i + 1] - offsets[i], UTF_8);
+        }
+        buffer.position(dataStart + padded(offsets[stringCount]));
+
+        int contactCount = buffer.getInt();
+        ArrayList<Contact> contacts = new ArrayList<>(contactCount);
+        for (int i = 0; i < contactCount; i++) {
+            Contact contact = new Contact(string(strings, buffer.getInt()));
+            contact.displayName = string(strings, buffer.getInt());
+            contact.givenName = string(strings, buffer.getInt());
+            contact.middleName = string(strings, buffer.getInt());
+            contact.familyName = string(strings, buffer.getInt());
+            contact.prefix = string(strings, buffer.getInt());
+            contact.suffix = string(strings, buffer.getInt());
+            contact.company = string(strings, buffer.getInt());
+            contact.jobTitle = string(strings, buffer.getInt());
+            contact.note = string(strings, buffer.getInt());
+            contact.birthday = string(strings, buffer.getInt());
+            contact.androidAccountType = string(strings, buffer.getInt());
+            contact.androidAccountName = string(strings, buffer.getInt());
+
+            int avatarLength = buffer.getInt();
+            if (avatarLength < 0) {
+                contact.avatar = null;
+            } else {
+                contact.avatar = new byte[avatarLength];
+                buffer.get(contact.avatar);
+                buffer.position(padded(buffer.position()));
+            }
+
+            getItems(buffer, strings, contact.emails);
+            getItems(buffer, strings, contact.phones);
+
+            int addressCount = buffer.getInt();
+            for (int j = 0; j < addressCount; j++) {
+                contact.postalAddresses.add(new PostalAddress(string(strings, buffer.getInt()), string(strings, buffer.getInt()),
+                        string(strings, buffer.getInt()), string(strings, buffer.getInt()), string(strings, buffer.getInt()),
+                        string(strings, buffer.getInt()), buffer.getInt()));
+            }
+            contacts.add(contact);
+        }
+        return contacts;
+    }
+
+    private static void getItems(ByteBuffer buffer, String[] strings, List<Item> items) {
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            items.add(new Item(string(strings, buffer.getInt()), string(strings, buffer.getInt()), buffer.getInt()));
+        }
+    }
+
+    private static String string(String[] strings, int ref) {
+        return ref < 0 ? null : strings[ref];
+    }
+
+    private static int padded(int length) {
+        return (length + 3) & ~3;
+    }
+}
@@ -0,0 +1,179 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/***
+ * Encodes a list of contacts into a single byte array, decoded by _PackedContactsDecoder
+ * on the Dart side. Every distinct string is stored once in a string table and the
+ * contacts are fixed-layout records referencing it, which is much cheaper to produce and
+ * to decode than a list of nested maps going through the StandardMessageCodec.
+ *
+ * All values are little-endian int32, a string reference is an index into the table or
+ * -1 for null:
+ *   header:  version, fields mask, string count, (string count + 1) offsets into the
+ *            UTF-8 string data, the string data padded to 4 bytes, contact count
+ *   contact: identifier, displayName, givenName, middleName, familyName, prefix, suffix,
+ *            company, jobTitle, note, birthday, androidAccountType, androidAccountName refs,
+ *            avatar length (-1 for null) followed by the avatar padded to 4 bytes,
+ *            email count followed by (label, value, type) per email,
+ *            phone count followed by (label, value, type) per phone,
+ *            address count followed by (label, street, city, postcode, region, country, type)
+ *            per address
+ ***/
+class PackedContactsEncoder {
+
+    static final int VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int STRINGS_PER_CONTACT = 13;
+
+    private final HashMap<String, Integer> stringIndexes = new HashMap<>();
+    private final ArrayList<byte[]> strings = new ArrayList<>();
+    private int stringBytes;
+
+    private PackedContactsEncoder() {
+    }
+
+    /**
+     * @param fields mask of Contact.FIELD_* flags, the lists of the other fields are left empty
+     */
+    static byte[] encode(List<Contact> contacts, int fields) {
+        return new PackedContactsEncoder().pack(contacts, fields);
+    }
+
+    private byte[] pack(List<Contact> contacts, int fields) {
+        // First pass: fill the string table and measure the records
+        int recordBytes = 0;
+        for (Contact contact : contacts) {
+            index(contact.identifier);
+            index(contact.displayName);
+            index(contact.givenName);
+            index(contact.middleName);
+            index(contact.familyName);
+            index(contact.prefix);
+            index(contact.suffix);
+            index(contact.company);
+            index(contact.jobTitle);
+            index(contact.note);
+            index(contact.birthday);
+            index(contact.androidAccountType);
+            index(contact.androidAccountName);
+            for (Item email : contact.emails) {
+                index(email.label);
+                index(email.value);
+            }
+            for (Item phone : contact.phones) {
+                index(phone.label);
+                index(phone.value);
+            }
+            for (PostalAddress address : contact.postalAddresses) {
+                index(address.label);
+                index(address.street);
+                index(address.city);
+                index(address.postcode);
+                index(address.region);
+                index(address.country);
+            }
+            recordBytes += 4 * (STRINGS_PER_CONTACT + 1 + 3)
+                    + padded(contact.avatar != null ? contact.avatar.length : 0)
+                    + 4 * 3 * (contact.emails.size() + contact.phones.size())
+                    + 4 * 7 * contact.postalAddresses.size();
+        }
+
+        int headerBytes = 4 * 3 + 4 * (strings.size() + 1) + padded(stringBytes) + 4;
+        // The codec sends byte arrays as they are, so a heap buffer avoids one more copy
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[headerBytes + recordBytes]).order(ByteOrder.LITTLE_ENDIAN);
+
+        // Second pass: write everything out
+        buffer.putInt(VERSION);
+        buffer.putInt(fields);
+        buffer.putInt(strings.size());
+        int offset = 0;
+        for (byte[] string : strings) {
+            buffer.putInt(offset);
+            offset += string.length;
+        }
+        buffer.putInt(offset);
+        for (byte[] string : strings) {
+            buffer.put(string);
+        }
+        pad(buffer);
+
+        buffer.putInt(contacts.size());
+        for (Contact contact : contacts) {
+            buffer.putInt(ref(contact.identifier));
+            buffer.putInt(ref(contact.displayName));
+            buffer.putInt(ref(contact.givenName));
+            buffer.putInt(ref(contact.middleName));
+            buffer.putInt(ref(contact.familyName));
+            buffer.putInt(ref(contact.prefix));
+            buffer.putInt(ref(contact.suffix));
+            buffer.putInt(ref(contact.company));
+            buffer.putInt(ref(contact.jobTitle));
+            buffer.putInt(ref(contact.note));
+            buffer.putInt(ref(contact.birthday));
+            buffer.putInt(ref(contact.androidAccountType));
+            buffer.putInt(ref(contact.androidAccountName));
+
+            if (contact.avatar == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(contact.avatar.length);
+                buffer.put(contact.avatar);
+                pad(buffer);
+            }
+
+            putItems(buffer, contact.emails);
+            putItems(buffer, contact.phones);
+
+            buffer.putInt(contact.postalAddresses.size());
+            for (PostalAddress address : contact.postalAddresses) {
+                buffer.putInt(ref(address.label));
+                buffer.putInt(ref(address.street));
+                buffer.putInt(ref(address.city));
+                buffer.putInt(ref(address.postcode));
+                buffer.putInt(ref(address.region));
+                buffer.putInt(ref(address.country));
+                buffer.putInt(address.type);
+            }
+        }
+        return buffer.array();
+    }
+
+    private void putItems(ByteBuffer buffer, List<Item> items) {
+        buffer.putInt(items.size());
+        for (Item item : items) {
+            buffer.putInt(ref(item.label));
+            buffer.putInt(ref(item.value));
+            buffer.putInt(item.type);
+        }
+    }
+
+    private void index(String string) {
+        if (string != null && !stringIndexes.containsKey(string)) {
+            byte[] bytes = string.getBytes(UTF_8);
+            stringIndexes.put(string, strings.size());
+            strings.add(bytes);
+            stringBytes += bytes.length;
+        }
+    }
+
+    private int ref(String string) {
+        return string == null ? -1 : stringIndexes.get(string);
+    }
+
+    private static int padded(int length) {
+        return (length + 3) & ~3;
+    }
+
+    private static void pad(ByteBuffer buffer) {
+        while ((buffer.position() & 3) != 0) {
+            buffer.put((byte) 0);
+        }
+    }
+}
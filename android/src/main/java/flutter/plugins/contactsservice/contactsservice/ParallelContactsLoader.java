@@ -0,0 +1,145 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * Reads the whole address book as several ranges of CONTACT_ID, queried and decoded at the
+ * same time, rather than as a single cursor read by one thread.
+ *
+ * The ranges hold about as many contacts each, and together cover every possible identifier,
+ * so that a contact added in the meantime is not missed. Each range is sorted by CONTACT_ID
+ * and the ranges are appended in order, which gives the same contacts, in the same order, as
+ * a single cursor sorted by CONTACT_ID. The calling thread reads the first range itself, so
+ * that it never only waits for the others.
+ ***/
+class ParallelContactsLoader {
+
+    // Below this, a range costs more in queries than it saves in decoding
+    static final int MIN_CONTACTS_PER_RANGE = 500;
+    private static final int MAX_RANGES = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Queries the rows of the contacts in a range, sorted by CONTACT_ID
+     */
+    interface RangeQuery {
+        /**
+         * @param fromId first identifier of the range, Long.MIN_VALUE for no lower bound
+         * @param toId   identifier after the range, Long.MAX_VALUE for no upper bound
+         */
+        Cursor query(long fromId, long toId);
+    }
+
+    private final Executor executor;
+    private final int maxRanges;
+
+    ParallelContactsLoader(Executor executor, int maxRanges) {
+        this.executor = executor;
+        this.maxRanges = maxRanges;
+    }
+
+    /**
+     * @return a loader with a thread for each range but the one read by the calling thread,
+     * which stop when idle
+     */
+    static ParallelContactsLoader create(int processors) {
+        int ranges = Math.max(1, Math.min(processors, MAX_RANGES));
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(Math.max(1, ranges - 1), Math.max(1, ranges - 1),
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "contacts-decode-" + count.incrementAndGet());
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return new ParallelContactsLoader(executor, ranges);
+    }
+
+    /**
+     * @param contactIds the identifiers of the contacts, sorted, to split them evenly
+     * @return the starts of the ranges after the first one, which starts with no lower bound
+     */
+    long[] rangeStarts(long[] contactIds) {
+        int ranges = Math.max(1, Math.min(maxRanges, contactIds.length / MIN_CONTACTS_PER_RANGE));
+        long[] starts = new long[ranges - 1];
+        for (int i = 1; i < ranges; i++) {
+            starts[i - 1] = contactIds[(int) ((long) contactIds.length * i / ranges)];
+        }
+        return starts;
+    }
+
+    /**
+     * @param contactIds see {@link #rangeStarts(long[])}
+     * @param rows       incremented by the rows read, for the stats
+     * @return the contacts of every range, sorted by identifier
+     */
+    ArrayList<Contact> load(long[] contactIds, final RangeQuery query, final Resources resources, final boolean localizedLabels,
+                            final int fields, final AtomicInteger rows) {
+        long[] starts = rangeStarts(contactIds);
+        ArrayList<FutureTask<ArrayList<Contact>>> others = new ArrayList<>(starts.length);
+        for (int i = 0; i < starts.length; i++) {
+            final long fromId = starts[i];
+            final long toId = i + 1 < starts.length ? starts[i + 1] : Long.MAX_VALUE;
+            FutureTask<ArrayList<Contact>> range = new FutureTask<>(new Callable<ArrayList<Contact>>() {
+                @Override
+                public ArrayList<Contact> call() {
+                    return loadRange(query, fromId, toId, resources, localizedLabels, fields, rows);
+                }
+            });
+            others.add(range);
+            executor.execute(range);
+        }
+
+        ArrayList<Contact> contacts = loadRange(query, Long.MIN_VALUE, starts.length > 0 ? starts[0] : Long.MAX_VALUE,
+                resources, localizedLabels, fields, rows);
+        for (FutureTask<ArrayList<Contact>> range : others) {
+            contacts.addAll(await(range));
+        }
+        return contacts;
+    }
+
+    private static ArrayList<Contact> loadRange(RangeQuery query, long fromId, long toId, Resources resources,
+                                                boolean localizedLabels, int fields, AtomicInteger rows) {
+        Cursor cursor = query.query(fromId, toId);
+        if (cursor != null) {
+            rows.addAndGet(cursor.getCount());
+        }
+        return ContactsServicePlugin.getContactsFrom(cursor, resources, localizedLabels, fields);
+    }
+
+    private static ArrayList<Contact> await(FutureTask<ArrayList<Contact>> range) {
+        try {
+            return range.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading the contacts", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.os.Build;
+import android.os.Trace;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/***
+ * Aggregates the time spent by the method calls of the plugin in each of their stages, along
+ * with the rows, contacts and bytes they went through, so that a slow call can be told apart
+ * from a slow provider, a long queue or a large payload.
+ *
+ * Durations are counted in histograms of power of two buckets of microseconds, which cost a
+ * few longs per stage whatever the number of calls. Each stage is also a section of the system
+ * trace, shown by Perfetto and systrace under the "contacts:" prefix.
+ ***/
+class PerformanceStats {
+
+    // Stages of a call, indexes into STAGE_NAMES
+    static final int STAGE_QUEUE = 0;
+    static final int STAGE_QUERY = 1;
+    static final int STAGE_DECODE = 2;
+    static final int STAGE_AVATARS = 3;
+    static final int STAGE_SERIALIZE = 4;
+    static final int STAGE_WRITE = 5;
+    private static final String[] STAGE_NAMES = {"queue", "query", "decode", "avatars", "serialize", "write"};
+
+    /**
+     * Told about the calls which took longer than the threshold, on the thread they ran on
+     */
+    interface SlowCallListener {
+        void onSlowCall(HashMap<String, Object> call);
+    }
+
+    private final HashMap<String, Operation> operations = new HashMap<>();
+    private SlowCallListener slowCallListener;
+    private long slowCallNanos;
+
+    /**
+     * @return a call to the method, waiting in a queue from now until it is started
+     */
+    Call newCall(String method) {
+        return new Call(this, method);
+    }
+
+    /**
+     * @param thresholdMillis duration from which a call is slow, 0 to stop listening
+     */
+    synchronized void setSlowCallListener(long thresholdMillis, SlowCallListener listener) {
+        slowCallNanos = thresholdMillis * 1000000;
+        slowCallListener = thresholdMillis > 0 ? listener : null;
+    }
+
+    synchronized HashMap<String, Object> getStats() {
+        HashMap<String, Object> stats = new HashMap<>();
+        for (Operation operation : operations.values()) {
+            stats.put(operation.method, operation.toMap());
+        }
+        return stats;
+    }
+
+    synchronized void reset() {
+        operations.clear();
+    }
+
+    private void record(Call call, long totalNanos) {
+        SlowCallListener listener;
+        synchronized (this) {
+            Operation operation = operations.get(call.method);
+            if (operation == null) {
+                operation = new Operation(call.method);
+                operations.put(call.method, operation);
+            }
+            operation.add(call, totalNanos);
+            listener = totalNanos >= slowCallNanos ? slowCallListener : null;
+        }
+        if (listener != null) {
+            listener.onSlowCall(call.toMap(totalNanos));
+        }
+    }
+
+    /**
+     * The stages of one call, used by a single thread at a time
+     */
+    static final class Call {
+        final String method;
+        private final PerformanceStats stats;
+        private final long submittedAt = System.nanoTime();
+        private final long[] stageNanos = new long[STAGE_NAMES.length];
+        private int stage = -1;
+        private long stageStartedAt;
+        long rows;
+        long contacts;
+        long bytes;
+        boolean failed;
+
+        private Call(PerformanceStats stats, String method) {
+            this.stats = stats;
+            this.method = method;
+        }
+
+        /**
+         * Ends the wait in the queue
+         */
+        void start() {
+            stageNanos[STAGE_QUEUE] = System.nanoTime() - submittedAt;
+        }
+
+        /**
+         * Starts a stage, ending the previous one
+         */
+        void begin(int stage) {
+            end();
+            this.stage = stage;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                Trace.beginSection("contacts:" + method + ":" + STAGE_NAMES[stage]);
+            }
+            stageStartedAt = System.nanoTime();
+        }
+
+        void end() {
+            if (stage < 0) return;
+            stageNanos[stage] += System.nanoTime() - stageStartedAt;
+            stage = -1;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                Trace.endSection();
+            }
+        }
+
+        /**
+         * Ends the call and adds it to the stats
+         */
+        void finish() {
+            end();
+            stats.record(this, System.nanoTime() - submittedAt);
+        }
+
+        HashMap<String, Object> toMap(long totalNanos) {
+            HashMap<String, Object> stages = new HashMap<>();
+            for (int i = 0; i < STAGE_NAMES.length; i++) {
+                if (stageNanos[i] > 0) {
+                    stages.put(STAGE_NAMES[i], stageNanos[i] / 1000);
+                }
+            }
+            HashMap<String, Object> call = new HashMap<>();
+            call.put("method", method);
+            call.put("totalMicros", totalNanos / 1000);
+            call.put("stageMicros", stages);
+            call.put("rows", rows);
+            call.put("contacts", contacts);
+            call.put("bytes", bytes);
+            call.put("failed", failed);
+            return call;
+        }
+    }
+
+    private static final class Operation {
+        final String method;
+        long calls;
+        long failures;
+        long rows;
+        long contacts;
+        long bytes;
+        final Histogram total = new Histogram();
+        final Histogram[] stages = new Histogram[STAGE_NAMES.length];
+
+        Operation(String method) {
+            this.method = method;
+        }
+
+        void add(Call call, long totalNanos) {
+            calls++;
+            if (call.failed) failures++;
+            rows += call.rows;
+            contacts += call.contacts;
+            bytes += call.bytes;
+            total.add(totalNanos / 1000);
+            for (int i = 0; i < stages.length; i++) {
+                // Stages a method never goes through are left out, the queue is always there
+                if (call.stageNanos[i] == 0 && i != STAGE_QUEUE) continue;
+                if (stages[i] == null) {
+                    stages[i] = new Histogram();
+                }
+                stages[i].add(call.stageNanos[i] / 1000);
+            }
+        }
+
+        HashMap<String, Object> toMap() {
+            HashMap<String, Object> stageMaps = new HashMap<>();
+            for (int i = 0; i < stages.length; i++) {
+                if (stages[i] != null) {
+                    stageMaps.put(STAGE_NAMES[i], stages[i].toMap());
+                }
+            }
+            HashMap<String, Object> operation = new HashMap<>();
+            operation.put("calls", calls);
+            operation.put("failures", failures);
+            operation.put("rows", rows);
+            operation.put("contacts", contacts);
+            operation.put("bytes", bytes);
+            operation.put("total", total.toMap());
+            operation.put("stages", stageMaps);
+            return operation;
+        }
+    }
+
+    /**
+     * Counts durations in microseconds, bucket i holding those under 2^i and the last one
+     * everything longer
+     */
+    static final class Histogram {
+        // Up to 2^24 microseconds, about 17 seconds
+        static final int BUCKETS = 25;
+
+        final long[] counts = new long[BUCKETS];
+        long count;
+        long totalMicros;
+        long maxMicros;
+
+        void add(long micros) {
+            counts[bucket(micros)]++;
+            count++;
+            totalMicros += micros;
+            maxMicros = Math.max(maxMicros, micros);
+        }
+
+        static int bucket(long micros) {
+            return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, micros)));
+        }
+
+        /**
+         * @return the upper bound of the bucket holding the given fraction of the durations,
+         * or the longest duration when lower
+         */
+        long percentile(double fraction) {
+            long rank = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return i == BUCKETS - 1 ? maxMicros : Math.min(1L << i, maxMicros);
+                }
+            }
+            return 0;
+        }
+
+        HashMap<String, Object> toMap() {
+            ArrayList<Long> buckets = new ArrayList<>(BUCKETS);
+            for (long bucketCount : counts) {
+                buckets.add(bucketCount);
+            }
+            HashMap<String, Object> histogram = new HashMap<>();
+            histogram.put("count", count);
+            histogram.put("totalMicros", totalMicros);
+            histogram.put("maxMicros", maxMicros);
+            histogram.put("p50Micros", percentile(0.5));
+            histogram.put("p90Micros", percentile(0.9));
+            histogram.put("p99Micros", percentile(0.99));
+            histogram.put("buckets", buckets);
+            return histogram;
+        }
+    }
+}
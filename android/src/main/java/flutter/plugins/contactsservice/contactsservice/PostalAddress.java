@@ -1,13 +1,8 @@
 package flutter.plugins.contactsservice.contactsservice;
 
 import android.annotation.TargetApi;
-import android.content.res.Resources;
-import android.database.Cursor;
 import android.os.Build;
 
-import static android.provider.ContactsContract.CommonDataKinds;
-import static android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
-
 import java.util.HashMap;
 
 @TargetApi(Build.VERSION_CODES.ECLAIR)
@@ -48,22 +43,4 @@ public class PostalAddress {
         String type = map.get("type");
         return new PostalAddress(label, street, city, postcode, region, country, type != null ? Integer.parseInt(type) : -1);
     }
-
-    public static String getLabel(Resources resources, int type, Cursor cursor, boolean localizedLabels) {
-        if (localizedLabels) {
-            CharSequence localizedLabel = CommonDataKinds.StructuredPostal.getTypeLabel(resources, type, "");
-            return localizedLabel.toString().toLowerCase();
-        } else {
-            switch (cursor.getInt(cursor.getColumnIndex(StructuredPostal.TYPE))) {
-                case StructuredPostal.TYPE_HOME:
-                    return "home";
-                case StructuredPostal.TYPE_WORK:
-                    return "work";
-                case StructuredPostal.TYPE_CUSTOM:
-                    final String label = cursor.getString(cursor.getColumnIndex(StructuredPostal.LABEL));
-                    return label != null ? label : "";
-            }
-            return "other";
-        }
-    }
 }
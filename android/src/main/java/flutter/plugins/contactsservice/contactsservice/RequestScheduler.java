@@ -0,0 +1,256 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.flutter.plugin.common.MethodChannel.Result;
+
+/***
+ * Runs the background work of the plugin on separate lanes, so that a long query does not hold
+ * back the avatars shown on screen, and writes are applied one at a time in the order they came.
+ *
+ * Each lane has its own threads, sized on the number of processors, and a bounded queue ordered
+ * by priority then by arrival. A request which does not fit in the queue of its lane is answered
+ * with a {@link #QUEUE_FULL} error rather than piling up.
+ ***/
+class RequestScheduler {
+
+    private static final String LOG_TAG = "flutter_contacts";
+
+    static final int LANE_QUERY = 0;
+    static final int LANE_AVATAR = 1;
+    static final int LANE_WRITE = 2;
+    private static final String[] LANE_NAMES = {"query", "avatar", "write"};
+    private static final int[] LANE_CAPACITIES = {64, 256, 64};
+
+    static final int PRIORITY_HIGH = 0;
+    static final int PRIORITY_NORMAL = 1;
+    static final int PRIORITY_LOW = 2;
+
+    /** Error code of the requests rejected because their lane is full */
+    static final String QUEUE_FULL = "QUEUE_FULL";
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Background work answering a method call, run by {@link #submit(int, int, Request, Result)}
+     */
+    abstract static class Request<T> {
+        Result result;
+        // Records the stages of the request when set
+        PerformanceStats.Call timing;
+
+        abstract T doInBackground();
+
+        /**
+         * Called with the value returned by {@link #doInBackground()} on the result executor
+         */
+        void onPostExecute(T value) {
+            result.success(value);
+        }
+    }
+
+    private final Lane[] lanes;
+    private final Executor resultExecutor;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param resultExecutor runs {@link Request#onPostExecute(Object)}, usually on the main thread
+     */
+    RequestScheduler(Executor resultExecutor) {
+        this(resultExecutor, defaultThreads(Runtime.getRuntime().availableProcessors()), LANE_CAPACITIES);
+    }
+
+    RequestScheduler(Executor resultExecutor, int[] threads, int[] capacities) {
+        this.resultExecutor = resultExecutor;
+        this.lanes = new Lane[LANE_NAMES.length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(LANE_NAMES[i], threads[i], capacities[i]);
+        }
+    }
+
+    /**
+     * @return the threads of each lane. Queries are mostly spent waiting on the provider and only
+     * get a few threads, avatars decode photos and get up to one per processor, and writes get a
+     * single one so that they are applied in order
+     */
+    static int[] defaultThreads(int processors) {
+        return new int[]{clamp(processors / 2, 1, 3), clamp(processors, 2, 4), 1};
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    int getThreads(int lane) {
+        return lanes[lane].threads;
+    }
+
+    /**
+     * Runs the request on the lane, answering the result with its value, its exception, or
+     * a {@link #QUEUE_FULL} error when the lane is full
+     */
+    <T> void submit(int lane, int priority, final Request<T> request, final Result result) {
+        request.result = result;
+        boolean accepted = execute(lane, priority, new Runnable() {
+            @Override
+            public void run() {
+                final T value;
+                PerformanceStats.Call timing = request.timing;
+                if (timing != null) {
+                    timing.start();
+                }
+                try {
+                    value = request.doInBackground();
+                } catch (final RuntimeException e) {
+                    Log.e(LOG_TAG, "Request failed", e);
+                    if (timing != null) {
+                        timing.failed = true;
+                        timing.finish();
+                    }
+                    resultExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            result.error(null, e.getMessage(), null);
+                        }
+                    });
+                    return;
+                }
+                if (timing != null) {
+                    timing.finish();
+                }
+                resultExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        request.onPostExecute(value);
+                    }
+                });
+            }
+        });
+        if (!accepted) {
+            result.error(QUEUE_FULL, "Too many pending " + LANE_NAMES[lane] + " requests", null);
+        }
+    }
+
+    /**
+     * @return whether the task was queued, false when the lane is full
+     */
+    boolean execute(int lane, int priority, Runnable task) {
+        return lanes[lane].offer(new Task(lanes[lane], priority, sequence.getAndIncrement(), task), true);
+    }
+
+    /**
+     * Queues a task regardless of the capacity of the lane, for the work which already holds a
+     * place in it, such as the next step of a task which just ran
+     */
+    void requeue(int lane, int priority, Runnable task) {
+        lanes[lane].offer(new Task(lanes[lane], priority, sequence.getAndIncrement(), task), false);
+    }
+
+    HashMap<String, Object> getStats() {
+        HashMap<String, Object> stats = new HashMap<>();
+        for (Lane lane : lanes) {
+            stats.put(lane.name, lane.getStats());
+        }
+        return stats;
+    }
+
+    private static final class Lane {
+        final String name;
+        final int threads;
+        final int capacity;
+        final ThreadPoolExecutor executor;
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+
+        Lane(final String name, int threads, int capacity) {
+            this.name = name;
+            this.threads = threads;
+            this.capacity = capacity;
+            this.executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "contacts-" + name + "-" + count.incrementAndGet());
+                }
+            });
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+
+        boolean offer(Task task, boolean bounded) {
+            if (queued.incrementAndGet() > capacity && bounded) {
+                queued.decrementAndGet();
+                rejected.incrementAndGet();
+                return false;
+            }
+            executor.execute(task);
+            return true;
+        }
+
+        HashMap<String, Object> getStats() {
+            HashMap<String, Object> stats = new HashMap<>();
+            stats.put("threads", threads);
+            stats.put("capacity", capacity);
+            stats.put("queued", queued.get());
+            stats.put("running", running.get());
+            stats.put("completed", completed.get());
+            stats.put("rejected", rejected.get());
+            return stats;
+        }
+    }
+
+    private static final class Task implements Runnable, Comparable<Task> {
+        private final Lane lane;
+        private final int priority;
+        private final long sequence;
+        private final Runnable runnable;
+
+        Task(Lane lane, int priority, long sequence, Runnable runnable) {
+            this.lane = lane;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            lane.queued.decrementAndGet();
+            lane.running.incrementAndGet();
+            try {
+                runnable.run();
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Task failed on the " + lane.name + " lane", e);
+            } finally {
+                lane.running.decrementAndGet();
+                lane.completed.incrementAndGet();
+            }
+        }
+
+        @Override
+        public int compareTo(Task task) {
+            if (priority != task.priority) {
+                return priority < task.priority ? -1 : 1;
+            }
+            return sequence < task.sequence ? -1 : sequence > task.sequence ? 1 : 0;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+public class AvatarCacheTest {
+
+  private static final AvatarLoader LOADER = new AvatarLoader(true, AvatarLoader.FORMAT_ORIGINAL, 0);
+
+  @Test
+  public void getFresh_hitsUntilInvalidated() {
+    AvatarCache cache = new AvatarCache(1024 * 1024);
+    byte[] avatar = {1, 2, 3};
+    cache.put("1", "10:100:", avatar, cache.generation());
+
+    assertThat(cache.getFresh("1").getAvatar()).isSameInstanceAs(avatar);
+
+    cache.invalidate();
+
+    assertThat(cache.getFresh("1")).isNull();
+    assertThat(cache.getStats()).containsEntry("hits", 1L);
+  }
+
+  @Test
+  public void revalidate_reusesEntryOfSameVersion() {
+    AvatarCache cache = new AvatarCache(1024 * 1024);
+    byte[] avatar = {1, 2, 3};
+    cache.put("1", "10:100:", avatar, cache.generation());
+    cache.invalidate();
+
+    assertThat(cache.revalidate("1", "10:100:", cache.generation()).getAvatar()).isSameInstanceAs(avatar);
+    assertThat(cache.getFresh("1")).isNotNull();
+
+    cache.invalidate();
+
+    assertThat(cache.revalidate("1", "11:200:", cache.generation())).isNull();
+    assertThat(cache.getStats()).containsEntry("misses", 1L);
+  }
+
+  @Test
+  public void put_cachesContactsWithoutAvatar() {
+    AvatarCache cache = new AvatarCache(1024 * 1024);
+    cache.put("1", "0:100:", null, cache.generation());
+
+    AvatarCache.Entry entry = cache.getFresh("1");
+
+    assertThat(entry).isNotNull();
+    assertThat(entry.getAvatar()).isNull();
+  }
+
+  @Test
+  public void put_evictsLeastRecentlyUsed() {
+    AvatarCache cache = new AvatarCache(3 * (1000 + 128));
+    cache.put("1", "v", new byte[1000], cache.generation());
+    cache.put("2", "v", new byte[1000], cache.generation());
+    cache.put("3", "v", new byte[1000], cache.generation());
+    cache.getFresh("1");
+
+    cache.put("4", "v", new byte[1000], cache.generation());
+
+    assertThat(cache.getFresh("1")).isNotNull();
+    assertThat(cache.getFresh("2")).isNull();
+    assertThat(cache.getStats()).containsEntry("evictions", 1L);
+    assertThat(cache.getStats()).containsEntry("entries", 3);
+  }
+
+  @Test
+  public void key_dependsOnLoadingOptions() {
+    assertThat(AvatarCache.key("1", LOADER))
+        .isNotEqualTo(AvatarCache.key("1", new AvatarLoader(false, AvatarLoader.FORMAT_ORIGINAL, 0)));
+    assertThat(AvatarCache.key("1", LOADER))
+        .isNotEqualTo(AvatarCache.key("1", new AvatarLoader(true, AvatarLoader.FORMAT_PNG, 0)));
+  }
+}
@@ -0,0 +1,52 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class AvatarLoaderTest {
+
+  @Test
+  public void formatFromName() {
+    assertThat(AvatarLoader.formatFromName(null)).isEqualTo(AvatarLoader.FORMAT_PNG);
+    assertThat(AvatarLoader.formatFromName("original")).isEqualTo(AvatarLoader.FORMAT_ORIGINAL);
+    assertThat(AvatarLoader.formatFromName("png")).isEqualTo(AvatarLoader.FORMAT_PNG);
+    assertThat(AvatarLoader.formatFromName("jpeg")).isEqualTo(AvatarLoader.FORMAT_JPEG);
+  }
+
+  @Test
+  public void sampleSize_keepsBothSidesAtLeastTargetSize() {
+    assertThat(AvatarLoader.sampleSize(720, 720, 0)).isEqualTo(1);
+    assertThat(AvatarLoader.sampleSize(720, 720, 720)).isEqualTo(1);
+    assertThat(AvatarLoader.sampleSize(720, 720, 360)).isEqualTo(2);
+    assertThat(AvatarLoader.sampleSize(720, 720, 100)).isEqualTo(4);
+    assertThat(AvatarLoader.sampleSize(1080, 200, 100)).isEqualTo(2);
+  }
+
+  @Test
+  public void isFormat_checksSignature() {
+    byte[] jpeg = {(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xe0};
+    byte[] png = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0};
+
+    assertThat(AvatarLoader.isFormat(jpeg, jpeg.length, AvatarLoader.FORMAT_JPEG)).isTrue();
+    assertThat(AvatarLoader.isFormat(jpeg, jpeg.length, AvatarLoader.FORMAT_PNG)).isFalse();
+    assertThat(AvatarLoader.isFormat(png, png.length, AvatarLoader.FORMAT_PNG)).isTrue();
+    assertThat(AvatarLoader.isFormat(png, png.length, AvatarLoader.FORMAT_JPEG)).isFalse();
+  }
+
+  @Test
+  public void readFully_growsBuffer() throws IOException {
+    byte[] photo = new byte[100 * 1024];
+    for (int i = 0; i < photo.length; i++) {
+      photo[i] = (byte) i;
+    }
+
+    int length = AvatarLoader.readFully(new ByteArrayInputStream(photo));
+
+    assertThat(length).isEqualTo(photo.length);
+    assertThat(AvatarLoader.readFully(new ByteArrayInputStream(new byte[3]))).isEqualTo(3);
+  }
+}
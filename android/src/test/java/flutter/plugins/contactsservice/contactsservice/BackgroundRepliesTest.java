@@ -0,0 +1,82 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.flutter.plugin.common.MethodChannel.Result;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class BackgroundRepliesTest {
+
+  private static class QueueingExecutor implements Executor {
+    final List<Runnable> queued = new ArrayList<>();
+
+    @Override
+    public void execute(Runnable command) {
+      queued.add(command);
+    }
+
+    void runAll() {
+      for (Runnable command : queued) {
+        command.run();
+      }
+      queued.clear();
+    }
+  }
+
+  private static class RecordingResult implements Result {
+    final List<String> replies = new ArrayList<>();
+
+    @Override
+    public void success(Object result) {
+      replies.add("success:" + result);
+    }
+
+    @Override
+    public void error(String code, String message, Object details) {
+      replies.add("error:" + message);
+    }
+
+    @Override
+    public void notImplemented() {
+      replies.add("notImplemented");
+    }
+  }
+
+  @Test
+  public void wrap_sendsRepliesOnTheExecutorInOrder() {
+    QueueingExecutor executor = new QueueingExecutor();
+    RecordingResult first = new RecordingResult();
+    RecordingResult second = new RecordingResult();
+    BackgroundReplies replies = new BackgroundReplies(executor);
+
+    replies.wrap(first).success("contacts");
+    replies.wrap(second).error(null, "failed", null);
+
+    assertThat(first.replies).isEmpty();
+    assertThat(executor.queued).hasSize(2);
+    executor.runAll();
+    assertThat(first.replies).containsExactly("success:contacts");
+    assertThat(second.replies).containsExactly("error:failed");
+  }
+
+  @Test
+  public void create_repliesFromAnotherThread() throws InterruptedException {
+    final CountDownLatch answered = new CountDownLatch(1);
+    final Thread[] replyThread = new Thread[1];
+    BackgroundReplies.create().wrap(new RecordingResult() {
+      @Override
+      public void notImplemented() {
+        replyThread[0] = Thread.currentThread();
+        answered.countDown();
+      }
+    }).notImplemented();
+
+    assertThat(answered.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(replyThread[0]).isNotSameInstanceAs(Thread.currentThread());
+  }
+}
@@ -0,0 +1,157 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.CommonDataKinds;
+import java.util.ArrayList;
+import org.junit.Test;
+
+public class ContactDiffTest {
+
+  private static FakeCursor cursor() {
+    return new FakeCursor(ContactDiff.PROJECTION);
+  }
+
+  private static FakeCursor addName(FakeCursor cursor, long id, long rawContactId, String givenName) {
+    return cursor.addRow(
+        ContactsContract.Data._ID, id,
+        ContactsContract.Data.RAW_CONTACT_ID, rawContactId,
+        ContactsContract.Data.MIMETYPE, CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE,
+        CommonDataKinds.StructuredName.GIVEN_NAME, givenName);
+  }
+
+  private static FakeCursor addPhone(FakeCursor cursor, long id, String number, int type) {
+    return cursor.addRow(
+        ContactsContract.Data._ID, id,
+        ContactsContract.Data.RAW_CONTACT_ID, 7L,
+        ContactsContract.Data.MIMETYPE, CommonDataKinds.Phone.CONTENT_ITEM_TYPE,
+        CommonDataKinds.Phone.NUMBER, number,
+        CommonDataKinds.Phone.TYPE, type);
+  }
+
+  private static Contact contact(String givenName, String... numbers) {
+    Contact contact = new Contact("1");
+    contact.givenName = givenName;
+    for (String number : numbers) {
+      contact.phones.add(new Item("mobile", number, CommonDataKinds.Phone.TYPE_MOBILE));
+    }
+    return contact;
+  }
+
+  @Test
+  public void compute_unchangedContactHasNoChanges() {
+    FakeCursor cursor = addPhone(addName(cursor(), 1, 7, "Anna"), 2, "123", CommonDataKinds.Phone.TYPE_MOBILE);
+
+    ContactDiff diff = ContactDiff.compute(cursor, contact("Anna", "123"));
+
+    assertThat(diff.changes).isEmpty();
+    assertThat(diff.rawContactId).isEqualTo(7L);
+  }
+
+  @Test
+  public void compute_updatesChangedRowsInPlace() {
+    FakeCursor cursor = addPhone(addName(cursor(), 1, 7, "Anna"), 2, "123", CommonDataKinds.Phone.TYPE_MOBILE);
+    addPhone(cursor, 3, "456", CommonDataKinds.Phone.TYPE_MOBILE);
+
+    ContactDiff diff = ContactDiff.compute(cursor, contact("Anne", "456", "789"));
+
+    assertThat(diff.changes).hasSize(2);
+    ContactDiff.Change name = diff.changes.get(0);
+    assertThat(name.kind).isEqualTo(ContactDiff.KIND_NAME);
+    assertThat(name.id).isEqualTo(1L);
+    assertThat(name.values[0]).isEqualTo("Anne");
+    ContactDiff.Change phone = diff.changes.get(1);
+    assertThat(phone.kind).isEqualTo(ContactDiff.KIND_PHONE);
+    assertThat(phone.id).isEqualTo(2L);
+    assertThat(phone.values[0]).isEqualTo("789");
+  }
+
+  @Test
+  public void compute_keepsTheNamesOfLinkedRawContacts() {
+    FakeCursor cursor = addPhone(addName(cursor(), 1, 7, "Anna"), 2, "123", CommonDataKinds.Phone.TYPE_MOBILE);
+    addName(cursor, 3, 8, "Anna WhatsApp");
+
+    ContactDiff unchanged = ContactDiff.compute(cursor, contact("Anna", "123"));
+    assertThat(unchanged.changes).isEmpty();
+
+    cursor = addName(addName(cursor(), 1, 7, "Anna"), 3, 8, "Anna WhatsApp");
+    ContactDiff renamed = ContactDiff.compute(cursor, contact("Anne"));
+    assertThat(renamed.changes).hasSize(1);
+    assertThat(renamed.changes.get(0).id).isEqualTo(1L);
+    assertThat(renamed.changes.get(0).values[0]).isEqualTo("Anne");
+    assertThat(renamed.rawContactId).isEqualTo(7L);
+  }
+
+  @Test
+  public void compute_insertsAndDeletesLeftoverRows() {
+    FakeCursor cursor = addPhone(addName(cursor(), 1, 7, "Anna"), 2, "123", CommonDataKinds.Phone.TYPE_MOBILE);
+
+    ContactDiff added = ContactDiff.compute(cursor, contact("Anna", "123", "456"));
+    assertThat(added.changes).hasSize(1);
+    assertThat(added.changes.get(0).id).isEqualTo(-1L);
+    assertThat(added.changes.get(0).values[0]).isEqualTo("456");
+
+    cursor = addPhone(addName(cursor(), 1, 7, "Anna"), 2, "123", CommonDataKinds.Phone.TYPE_MOBILE);
+    ContactDiff removed = ContactDiff.compute(cursor, contact("Anna"));
+    assertThat(removed.changes).hasSize(1);
+    assertThat(removed.changes.get(0).id).isEqualTo(2L);
+    assertThat(removed.changes.get(0).values).isNull();
+  }
+
+  @Test
+  public void compute_ignoresLabelsOfBuiltInTypes() {
+    FakeCursor cursor = addName(cursor(), 1, 7, "Anna").addRow(
+        ContactsContract.Data._ID, 2L,
+        ContactsContract.Data.RAW_CONTACT_ID, 7L,
+        ContactsContract.Data.MIMETYPE, CommonDataKinds.Phone.CONTENT_ITEM_TYPE,
+        CommonDataKinds.Phone.NUMBER, "123",
+        CommonDataKinds.Phone.TYPE, CommonDataKinds.Phone.TYPE_MOBILE,
+        CommonDataKinds.Phone.LABEL, "");
+
+    assertThat(ContactDiff.compute(cursor, contact("Anna", "123")).changes).isEmpty();
+  }
+
+  @Test
+  public void compute_matchesAnyTypeWhenNoneIsGiven() {
+    FakeCursor cursor = addPhone(addName(cursor(), 1, 7, "Anna"), 2, "123", CommonDataKinds.Phone.TYPE_WORK);
+    Contact contact = contact("Anna");
+    contact.phones.add(new Item("work", "123", -1));
+
+    assertThat(ContactDiff.compute(cursor, contact).changes).isEmpty();
+  }
+
+  @Test
+  public void compute_keepsNoteAndBirthdayWhenNotGiven() {
+    FakeCursor cursor = addName(cursor(), 1, 7, "Anna").addRow(
+        ContactsContract.Data._ID, 3L,
+        ContactsContract.Data.RAW_CONTACT_ID, 7L,
+        ContactsContract.Data.MIMETYPE, CommonDataKinds.Note.CONTENT_ITEM_TYPE,
+        CommonDataKinds.Note.NOTE, "note").addRow(
+        ContactsContract.Data._ID, 2L,
+        ContactsContract.Data.RAW_CONTACT_ID, 7L,
+        ContactsContract.Data.MIMETYPE, CommonDataKinds.Event.CONTENT_ITEM_TYPE,
+        CommonDataKinds.Event.START_DATE, "1990-01-01",
+        CommonDataKinds.Event.TYPE, CommonDataKinds.Event.TYPE_BIRTHDAY);
+
+    assertThat(ContactDiff.compute(cursor, contact("Anna")).changes).isEmpty();
+  }
+
+  @Test
+  public void compute_missingContact() {
+    ContactDiff diff = ContactDiff.compute(cursor(), contact("Anna"));
+
+    assertThat(diff.isContactMissing()).isTrue();
+  }
+
+  @Test
+  public void getValues_skipsEmptySingleRowKinds() {
+    Contact contact = contact(null);
+
+    ArrayList<String[]> organization = ContactDiff.getValues(ContactDiff.KIND_ORGANIZATION, contact);
+    ArrayList<String[]> name = ContactDiff.getValues(ContactDiff.KIND_NAME, contact);
+
+    assertThat(organization).isEmpty();
+    assertThat(name).hasSize(1);
+  }
+}
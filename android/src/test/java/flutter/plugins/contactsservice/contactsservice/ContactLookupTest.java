@@ -0,0 +1,134 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static android.provider.ContactsContract.CommonDataKinds.Email;
+import static android.provider.ContactsContract.CommonDataKinds.Phone;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.provider.ContactsContract;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import org.junit.Test;
+
+public class ContactLookupTest {
+
+  private static FakeCursor newPhoneCursor() {
+    return new FakeCursor(Phone.CONTACT_ID, ContactsContract.Contacts.DISPLAY_NAME_PRIMARY, Phone.NUMBER, Phone.NORMALIZED_NUMBER);
+  }
+
+  private static List<Object> identifiers(List<HashMap<String, Object>> contacts) {
+    List<Object> identifiers = new ArrayList<>();
+    for (HashMap<String, Object> contact : contacts) {
+      identifiers.add(contact.get("identifier"));
+    }
+    return identifiers;
+  }
+
+  @Test
+  public void newMatches_leavesOutNullAndRepeatedValuesInOrder() {
+    LinkedHashMap<String, ContactLookup.Matches> matches = ContactLookup.newMatches(
+        Arrays.asList("+33 6 12 34 56 78", null, "06 12 34 56 78", "+33 6 12 34 56 78"));
+
+    assertThat(matches.keySet()).containsExactly("+33 6 12 34 56 78", "06 12 34 56 78").inOrder();
+  }
+
+  @Test
+  public void matchPhones_fansOutToTheNumbersOfTheSameNormalizedNumber() {
+    LinkedHashMap<String, ContactLookup.Matches> matches = ContactLookup.newMatches(
+        Arrays.asList("06 12 34 56 78", "+33 6 12 34 56 78", "+33 7 00 00 00 00"));
+    HashMap<String, ArrayList<ContactLookup.Matches>> byNormalizedNumber = new HashMap<>();
+    ContactLookup.add(byNormalizedNumber, "+33612345678", matches.get("06 12 34 56 78"));
+    ContactLookup.add(byNormalizedNumber, "+33612345678", matches.get("+33 6 12 34 56 78"));
+    ContactLookup.add(byNormalizedNumber, "+33700000000", matches.get("+33 7 00 00 00 00"));
+    FakeCursor cursor = newPhoneCursor()
+        .addRow(Phone.CONTACT_ID, "2", Phone.NUMBER, "06 12 34 56 78", Phone.NORMALIZED_NUMBER, "+33612345678")
+        // Another raw contact of the same contact, listed once
+        .addRow(Phone.CONTACT_ID, "2", Phone.NUMBER, "+33612345678", Phone.NORMALIZED_NUMBER, "+33612345678")
+        .addRow(Phone.CONTACT_ID, "1", Phone.NUMBER, "0612345678", Phone.NORMALIZED_NUMBER, "+33612345678")
+        .addRow(Phone.CONTACT_ID, "3", Phone.NUMBER, "0699999999", Phone.NORMALIZED_NUMBER, "+33699999999");
+
+    ContactLookup.matchPhones(cursor, byNormalizedNumber);
+    HashMap<String, ArrayList<HashMap<String, Object>>> result = ContactLookup.toMap(matches);
+
+    assertThat(result.keySet()).containsExactly("06 12 34 56 78", "+33 6 12 34 56 78", "+33 7 00 00 00 00").inOrder();
+    assertThat(identifiers(result.get("06 12 34 56 78"))).containsExactly("2", "1").inOrder();
+    assertThat(identifiers(result.get("+33 6 12 34 56 78"))).containsExactly("2", "1").inOrder();
+    assertThat(result.get("06 12 34 56 78").get(0).get("value")).isEqualTo("06 12 34 56 78");
+    assertThat(result.get("+33 7 00 00 00 00")).isEmpty();
+    assertThat(cursor.isClosed()).isTrue();
+  }
+
+  @Test
+  public void matchPhonesLoosely_matchesTheLastDigitsOfTheUnmatchedNumbers() {
+    LinkedHashMap<String, ContactLookup.Matches> matches = ContactLookup.newMatches(
+        Arrays.asList("555 1234", "+1 650 555 1234", "12"));
+    matches.get("+1 650 555 1234").add("9", "Already matched", "+16505551234");
+    FakeCursor cursor = newPhoneCursor()
+        .addRow(Phone.CONTACT_ID, "3", ContactsContract.Contacts.DISPLAY_NAME_PRIMARY, "Ann", Phone.NUMBER, "(650) 555-1234")
+        .addRow(Phone.CONTACT_ID, "4", Phone.NUMBER, "555-9999")
+        .addRow(Phone.CONTACT_ID, "5", Phone.NUMBER, "+44 20 555 1234");
+
+    HashMap<String, ArrayList<String>> unmatched = ContactLookup.getUnmatched(matches);
+    ContactLookup.matchPhonesLoosely(cursor, unmatched, matches, new ContactLookup.NumberComparison() {
+      @Override
+      public boolean matches(String a, String b) {
+        return !b.startsWith("+44");
+      }
+    });
+    HashMap<String, ArrayList<HashMap<String, Object>>> result = ContactLookup.toMap(matches);
+
+    // Too short to be compared on its last digits
+    assertThat(unmatched.keySet()).containsExactly("4321555");
+    assertThat(identifiers(result.get("555 1234"))).containsExactly("3");
+    assertThat(result.get("555 1234").get(0).get("displayName")).isEqualTo("Ann");
+    assertThat(result.get("555 1234").get(0).get("value")).isEqualTo("(650) 555-1234");
+    assertThat(identifiers(result.get("+1 650 555 1234"))).containsExactly("9");
+    assertThat(result.get("12")).isEmpty();
+    assertThat(cursor.isClosed()).isTrue();
+  }
+
+  @Test
+  public void matchEmails_comparesTheAddressesRegardlessOfCase() {
+    LinkedHashMap<String, ContactLookup.Matches> matches = ContactLookup.newMatches(
+        Arrays.asList("Anna@Example.com", " anna@example.com", "bob@example.com"));
+    HashMap<String, ArrayList<ContactLookup.Matches>> byAddress = new HashMap<>();
+    for (String email : matches.keySet()) {
+      ContactLookup.add(byAddress, email.trim().toLowerCase(), matches.get(email));
+    }
+    FakeCursor cursor = new FakeCursor(Email.CONTACT_ID, ContactsContract.Contacts.DISPLAY_NAME_PRIMARY, Email.ADDRESS)
+        .addRow(Email.CONTACT_ID, "7", Email.ADDRESS, "ANNA@example.COM")
+        .addRow(Email.CONTACT_ID, "8");
+
+    ContactLookup.matchEmails(cursor, byAddress);
+    HashMap<String, ArrayList<HashMap<String, Object>>> result = ContactLookup.toMap(matches);
+
+    assertThat(result.keySet()).containsExactly("Anna@Example.com", " anna@example.com", "bob@example.com").inOrder();
+    assertThat(identifiers(result.get("Anna@Example.com"))).containsExactly("7");
+    assertThat(identifiers(result.get(" anna@example.com"))).containsExactly("7");
+    assertThat(result.get("Anna@Example.com").get(0).get("value")).isEqualTo("ANNA@example.COM");
+    assertThat(result.get("bob@example.com")).isEmpty();
+    assertThat(cursor.isClosed()).isTrue();
+  }
+
+  @Test
+  public void minMatch_keepsLastDigitsReversed() {
+    assertThat(ContactLookup.minMatch("+1 (650) 555-1234")).isEqualTo("4321555");
+    assertThat(ContactLookup.minMatch("6505551234")).isEqualTo(ContactLookup.minMatch("+16505551234"));
+    assertThat(ContactLookup.minMatch("12-34")).isNull();
+    assertThat(ContactLookup.minMatch(null)).isNull();
+  }
+
+  @Test
+  public void chunks_splitsUnderLimit() {
+    List<Integer> values = Arrays.asList(1, 2, 3, 4, 5);
+
+    List<List<Integer>> chunks = ContactLookup.chunks(values, 2);
+
+    assertThat(chunks).hasSize(3);
+    assertThat(chunks.get(0)).containsExactly(1, 2).inOrder();
+    assertThat(chunks.get(2)).containsExactly(5);
+    assertThat(ContactLookup.chunks(values.subList(0, 0), 2)).isEmpty();
+  }
+}
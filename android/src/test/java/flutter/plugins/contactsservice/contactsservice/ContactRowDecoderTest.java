@@ -0,0 +1,133 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static android.provider.ContactsContract.CommonDataKinds.Email;
+import static android.provider.ContactsContract.CommonDataKinds.Phone;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredName;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.provider.ContactsContract;
+
+import org.junit.Test;
+
+public class ContactRowDecoderTest {
+
+  private static FakeCursor newCursor() {
+    return new FakeCursor(
+        ContactsContract.Data.CONTACT_ID,
+        ContactsContract.Data.MIMETYPE,
+        ContactsContract.Contacts.DISPLAY_NAME,
+        ContactsContract.RawContacts.ACCOUNT_TYPE,
+        ContactsContract.RawContacts.ACCOUNT_NAME,
+        StructuredName.GIVEN_NAME,
+        StructuredName.FAMILY_NAME,
+        Phone.NUMBER,
+        Phone.TYPE,
+        Phone.LABEL,
+        StructuredPostal.STREET,
+        StructuredPostal.CITY);
+  }
+
+  @Test
+  public void getMimeType_knownTypes() {
+    FakeCursor cursor = newCursor()
+        .addRow(ContactsContract.Data.MIMETYPE, StructuredName.CONTENT_ITEM_TYPE)
+        .addRow(ContactsContract.Data.MIMETYPE, Phone.CONTENT_ITEM_TYPE)
+        .addRow(ContactsContract.Data.MIMETYPE, Email.CONTENT_ITEM_TYPE)
+        .addRow(ContactsContract.Data.MIMETYPE, "vnd.android.cursor.item/photo")
+        .addRow(ContactsContract.Data.MIMETYPE, null);
+    ContactRowDecoder decoder = new ContactRowDecoder(cursor, null, false);
+
+    cursor.moveToNext();
+    assertThat(decoder.getMimeType()).isEqualTo(ContactRowDecoder.MIMETYPE_NAME);
+    cursor.moveToNext();
+    assertThat(decoder.getMimeType()).isEqualTo(ContactRowDecoder.MIMETYPE_PHONE);
+    cursor.moveToNext();
+    assertThat(decoder.getMimeType()).isEqualTo(ContactRowDecoder.MIMETYPE_EMAIL);
+    cursor.moveToNext();
+    assertThat(decoder.getMimeType()).isEqualTo(ContactRowDecoder.MIMETYPE_OTHER);
+    cursor.moveToNext();
+    assertThat(decoder.getMimeType()).isEqualTo(ContactRowDecoder.MIMETYPE_OTHER);
+  }
+
+  @Test
+  public void readRow_nameAndPhones() {
+    FakeCursor cursor = newCursor()
+        .addRow(ContactsContract.Data.CONTACT_ID, 42L,
+            ContactsContract.Data.MIMETYPE, StructuredName.CONTENT_ITEM_TYPE,
+            ContactsContract.Contacts.DISPLAY_NAME, "Ada Lovelace",
+            StructuredName.GIVEN_NAME, "Ada",
+            StructuredName.FAMILY_NAME, "Lovelace")
+        .addRow(ContactsContract.Data.CONTACT_ID, 42L,
+            ContactsContract.Data.MIMETYPE, Phone.CONTENT_ITEM_TYPE,
+            Phone.NUMBER, "555-0100",
+            Phone.TYPE, Phone.TYPE_MOBILE)
+        .addRow(ContactsContract.Data.CONTACT_ID, 42L,
+            ContactsContract.Data.MIMETYPE, Phone.CONTENT_ITEM_TYPE,
+            Phone.NUMBER, "555-0101",
+            Phone.TYPE, Phone.TYPE_CUSTOM,
+            Phone.LABEL, "Lab")
+        .addRow(ContactsContract.Data.CONTACT_ID, 42L,
+            ContactsContract.Data.MIMETYPE, Phone.CONTENT_ITEM_TYPE,
+            Phone.NUMBER, "");
+    ContactRowDecoder decoder = new ContactRowDecoder(cursor, null, false);
+
+    cursor.moveToNext();
+    Contact contact = decoder.newContact(decoder.getContactId());
+    do {
+      decoder.readRow(contact);
+    } while (cursor.moveToNext());
+
+    assertThat(contact.identifier).isEqualTo("42");
+    assertThat(contact.displayName).isEqualTo("Ada Lovelace");
+    assertThat(contact.givenName).isEqualTo("Ada");
+    assertThat(contact.familyName).isEqualTo("Lovelace");
+    assertThat(contact.phones).hasSize(2);
+    assertThat(contact.phones.get(0).label).isEqualTo("mobile");
+    assertThat(contact.phones.get(1).label).isEqualTo("lab");
+    assertThat(contact.phones.get(1).value).isEqualTo("555-0101");
+  }
+
+  @Test
+  public void readRow_postalAddress() {
+    FakeCursor cursor = newCursor()
+        .addRow(ContactsContract.Data.CONTACT_ID, 7L,
+            ContactsContract.Data.MIMETYPE, StructuredPostal.CONTENT_ITEM_TYPE,
+            StructuredPostal.TYPE, StructuredPostal.TYPE_WORK,
+            StructuredPostal.STREET, "1 Main St",
+            StructuredPostal.CITY, "Springfield");
+    ContactRowDecoder decoder = new ContactRowDecoder(cursor, null, false);
+
+    cursor.moveToNext();
+    Contact contact = decoder.newContact(decoder.getContactId());
+    decoder.readRow(contact);
+
+    assertThat(contact.postalAddresses).hasSize(1);
+    assertThat(contact.postalAddresses.get(0).label).isEqualTo("work");
+    assertThat(contact.postalAddresses.get(0).street).isEqualTo("1 Main St");
+    assertThat(contact.postalAddresses.get(0).city).isEqualTo("Springfield");
+  }
+
+  @Test
+  public void readRow_sharesCustomLabels() {
+    FakeCursor cursor = newCursor();
+    for (long id = 1; id <= 2; id++) {
+      cursor.addRow(ContactsContract.Data.CONTACT_ID, id,
+          ContactsContract.Data.MIMETYPE, Phone.CONTENT_ITEM_TYPE,
+          Phone.NUMBER, "555-010" + id,
+          Phone.TYPE, Phone.TYPE_CUSTOM,
+          Phone.LABEL, new String("Office"));
+    }
+    ContactRowDecoder decoder = new ContactRowDecoder(cursor, null, false);
+
+    cursor.moveToNext();
+    Contact first = decoder.newContact(decoder.getContactId());
+    decoder.readRow(first);
+    cursor.moveToNext();
+    Contact second = decoder.newContact(decoder.getContactId());
+    decoder.readRow(second);
+
+    assertThat(first.phones.get(0).label).isEqualTo("office");
+    assertThat(second.phones.get(0).label).isSameInstanceAs(first.phones.get(0).label);
+  }
+}
@@ -0,0 +1,121 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import org.junit.Test;
+
+public class ContactSearchIndexTest {
+
+  private static Contact contact(String identifier, String displayName) {
+    Contact contact = new Contact(identifier);
+    contact.displayName = displayName;
+    return contact;
+  }
+
+  private static ContactSearchIndex index(Contact... contacts) {
+    ContactSearchIndex index = new ContactSearchIndex();
+    index.replaceAll(Arrays.asList(contacts));
+    return index;
+  }
+
+  private static ArrayList<String> identifiers(ArrayList<HashMap<String, Object>> matches) {
+    ArrayList<String> identifiers = new ArrayList<>();
+    for (HashMap<String, Object> match : matches) {
+      identifiers.add((String) match.get("identifier"));
+    }
+    return identifiers;
+  }
+
+  @Test
+  public void search_matchesWordPrefixes() {
+    ContactSearchIndex index = index(contact("1", "Anna Smith"), contact("2", "John Smithers"), contact("3", "Bob Jones"));
+
+    assertThat(identifiers(index.search("smi", 10))).containsExactly("1", "2").inOrder();
+    assertThat(identifiers(index.search("jo", 10))).containsExactly("2", "3");
+    assertThat(index.search("x", 10)).isEmpty();
+  }
+
+  @Test
+  public void search_requiresEveryTerm() {
+    ContactSearchIndex index = index(contact("1", "Anna Smith"), contact("2", "Anna Jones"), contact("3", "John Smith"));
+
+    assertThat(identifiers(index.search("an sm", 10))).containsExactly("1");
+  }
+
+  @Test
+  public void search_ranksNamesBeforeOtherFields() {
+    Contact colleague = contact("1", "Bob Jones");
+    colleague.emails.add(new Item("work", "anna@example.com", -1));
+    Contact anna = contact("2", "Zoe Annaway");
+
+    ArrayList<HashMap<String, Object>> matches = index(colleague, anna).search("anna", 10);
+
+    assertThat(identifiers(matches)).containsExactly("2", "1").inOrder();
+    assertThat(matches.get(1).get("value")).isEqualTo("anna@example.com");
+  }
+
+  @Test
+  public void search_matchesPhoneDigits() {
+    Contact contact = contact("1", "Anna Smith");
+    contact.phones.add(new Item("mobile", "+33 6 12 34 56 78", -1));
+    ContactSearchIndex index = index(contact, contact("2", "Bob"));
+
+    assertThat(identifiers(index.search("3361", 10))).containsExactly("1");
+    // Without the country code, whatever the separators
+    assertThat(identifiers(index.search("06 12", 10))).isEmpty();
+    assertThat(identifiers(index.search("6 12-34", 10))).containsExactly("1");
+    assertThat(identifiers(index.search("12 34 56 78", 10))).containsExactly("1");
+  }
+
+  @Test
+  public void search_ignoresCaseAndAccents() {
+    ContactSearchIndex index = index(contact("1", "L\u00e9a M\u00fcller"));
+
+    assertThat(identifiers(index.search("LEA mull", 10))).containsExactly("1");
+  }
+
+  @Test
+  public void search_returnsTheBestMatchesUpToTheLimit() {
+    ContactSearchIndex index = index(contact("1", "Carl Anna"), contact("2", "Anna B"), contact("3", "Anna A"));
+
+    assertThat(identifiers(index.search("anna", 2))).containsExactly("3", "2").inOrder();
+  }
+
+  @Test
+  public void putAndRemove_updateTheIndex() {
+    ContactSearchIndex index = index(contact("1", "Anna Smith"));
+
+    index.put(contact("1", "Anne Jones"));
+    index.put(contact("2", "Anna Brown"));
+    assertThat(identifiers(index.search("anna", 10))).containsExactly("2");
+    assertThat(identifiers(index.search("jones", 10))).containsExactly("1");
+
+    index.remove("2");
+    assertThat(index.search("anna", 10)).isEmpty();
+    assertThat(index.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void updates_followInvalidation() {
+    ContactSearchIndex index = new ContactSearchIndex();
+    assertThat(index.needsUpdate()).isTrue();
+
+    assertThat(index.beginUpdate()).isEqualTo(-1L);
+    index.endUpdate(100);
+    assertThat(index.needsUpdate()).isFalse();
+
+    index.invalidate();
+    assertThat(index.needsUpdate()).isTrue();
+    assertThat(index.beginUpdate()).isEqualTo(100L);
+  }
+
+  @Test
+  public void phoneTokens_dropLeadingDigits() {
+    assertThat(ContactSearchIndex.phoneTokens("+1 555-123-4567"))
+        .containsExactly("15551234567", "5551234567", "551234567", "51234567", "1234567").inOrder();
+    assertThat(ContactSearchIndex.digitsOf("anna")).isNull();
+  }
+}
@@ -0,0 +1,87 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class ContactSnapshotTest {
+
+  private static File newFile() throws IOException {
+    File file = File.createTempFile("snapshot", null);
+    file.delete();
+    file.deleteOnExit();
+    return file;
+  }
+
+  private static Contact contact(String identifier, String givenName) {
+    Contact contact = new Contact(identifier);
+    contact.givenName = givenName;
+    return contact;
+  }
+
+  private static ArrayList<String> givenNames(ArrayList<Contact> contacts) {
+    ArrayList<String> names = new ArrayList<>();
+    for (Contact contact : contacts) {
+      names.add(contact.givenName);
+    }
+    return names;
+  }
+
+  @Test
+  public void read_returnsWhatWasWritten() throws IOException {
+    ContactSnapshot snapshot = new ContactSnapshot(newFile());
+    assertThat(snapshot.read()).isNull();
+
+    snapshot.write(Arrays.asList(contact("1", "Anna"), contact("2", "Bob")), 1234L, true);
+    ContactSnapshot.Data data = snapshot.read();
+
+    assertThat(data.timestamp).isEqualTo(1234L);
+    assertThat(data.localizedLabels).isTrue();
+    assertThat(givenNames(PackedContactsDecoder.decode(data.contacts))).containsExactly("Anna", "Bob").inOrder();
+
+    snapshot.delete();
+    assertThat(snapshot.read()).isNull();
+  }
+
+  @Test
+  public void read_dropsCopiesOfAnotherPackedEncoding() throws IOException {
+    File file = newFile();
+    ContactSnapshot snapshot = new ContactSnapshot(file);
+    snapshot.write(Collections.singletonList(contact("1", "Anna")), 1234L, true);
+    // The version of the packed encoding follows the magic number and the layout version
+    RandomAccessFile raw = new RandomAccessFile(file, "rw");
+    raw.seek(8);
+    raw.writeInt(PackedContactsEncoder.VERSION + 1);
+    raw.close();
+
+    assertThat(snapshot.read()).isNull();
+    assertThat(file.exists()).isFalse();
+  }
+
+  @Test
+  public void read_ignoresOtherFiles() throws IOException {
+    File file = newFile();
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(new byte[] {1, 2, 3});
+    out.close();
+
+    assertThat(new ContactSnapshot(file).read()).isNull();
+  }
+
+  @Test
+  public void apply_replacesAppendsAndRemoves() {
+    ArrayList<Contact> applied = ContactSnapshot.apply(
+        Arrays.asList(contact("1", "Anna"), contact("2", "Bob"), contact("3", "Carl")),
+        Arrays.asList(contact("4", "Dora"), contact("2", "Robert")),
+        Collections.singletonList("1"));
+
+    assertThat(givenNames(applied)).containsExactly("Robert", "Carl", "Dora").inOrder();
+  }
+}
@@ -2,10 +2,28 @@ package flutter.plugins.contactsservice.contactsservice;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import org.junit.Test;
 
 public class ContactTest {
 
+  @Test
+  public void copy_takesAnotherAvatarWithoutChangingTheContact() {
+    Contact contact = new Contact("id");
+    contact.givenName = "givenName";
+    contact.phones.add(new Item("mobile", "123", 2));
+
+    Contact copy = contact.copy();
+    copy.avatar = new byte[]{1, 2};
+
+    assertThat(copy.identifier).isEqualTo("id");
+    assertThat(copy.givenName).isEqualTo("givenName");
+    assertThat(copy.phones).isSameInstanceAs(contact.phones);
+    assertThat(contact.avatar).isEqualTo(new byte[0]);
+  }
+
   @Test
   public void compareTo_nullParam() {
     Contact contact1 = new Contact("id");
@@ -97,4 +115,27 @@ public class ContactTest {
     assertThat(contact1.compareTo(contact3))
         .isGreaterThan(0);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void sortByGivenName_matchesCompareTo() {
+    Contact contact1 = new Contact("id");
+    contact1.givenName = "b";
+
+    Contact contact2 = new Contact("id2");
+    contact2.givenName = "A";
+
+    Contact contact3 = new Contact("id3");
+    contact3.givenName = null;
+
+    Contact contact4 = new Contact("id4");
+    contact4.givenName = "a";
+
+    ArrayList<Contact> contacts = new ArrayList<>(Arrays.asList(contact1, contact2, contact3, contact4));
+    Contact.sortByGivenName(contacts);
+
+    // null sorts first, equal keys keep their original order
+    assertThat(contacts)
+        .containsExactly(contact3, contact2, contact4, contact1)
+        .inOrder();
+  }
+}
@@ -0,0 +1,157 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Test;
+
+public class ContactWindowTest {
+
+  /** Reads a contact for each identifier but the missing ones, recording the pages read */
+  private static class FakePages implements ContactWindow.PageLoader {
+    final List<Long> loadedPages = new ArrayList<>();
+    final HashSet<Long> missing = new HashSet<>();
+
+    @Override
+    public ArrayList<Contact> load(long[] contactIds) {
+      loadedPages.add(contactIds[0]);
+      ArrayList<Contact> contacts = new ArrayList<>();
+      // The provider returns them sorted by identifier, not in the order of the index
+      for (int i = contactIds.length - 1; i >= 0; i--) {
+        if (!missing.contains(contactIds[i])) {
+          contacts.add(new Contact(String.valueOf(contactIds[i])));
+        }
+      }
+      return contacts;
+    }
+  }
+
+  /** The identifiers count down, as if the names sorted the other way, counting the reads */
+  private static class FakeIndex implements ContactWindow.IndexLoader {
+    final int count;
+    int reads;
+
+    FakeIndex(int count) {
+      this.count = count;
+    }
+
+    @Override
+    public long[] load() {
+      reads++;
+      long[] contactIds = new long[count];
+      for (int i = 0; i < count; i++) {
+        contactIds[i] = count - i;
+      }
+      return contactIds;
+    }
+  }
+
+  private ContactWindow window;
+  private long[] index;
+
+  private void newWindow(int count) {
+    window = new ContactWindow();
+    index = window.getIndex(new FakeIndex(count));
+  }
+
+  private static List<String> identifiers(List<Contact> contacts) {
+    List<String> identifiers = new ArrayList<>();
+    for (Contact contact : contacts) {
+      identifiers.add(contact.identifier);
+    }
+    return identifiers;
+  }
+
+  @Test
+  public void range_readsThePagesItCoversOnce() {
+    newWindow(120);
+    FakePages pages = new FakePages();
+
+    List<Contact> contacts = window.range(index, 48, 4, 0, pages);
+    List<Contact> again = window.range(index, 49, 2, 0, pages);
+
+    assertThat(identifiers(contacts)).containsExactly("72", "71", "70", "69").inOrder();
+    assertThat(identifiers(again)).containsExactly("71", "70").inOrder();
+    assertThat(pages.loadedPages).containsExactly(120L, 70L).inOrder();
+  }
+
+  @Test
+  public void range_endsWithTheList() {
+    newWindow(120);
+
+    assertThat(identifiers(window.range(index, 118, 10, 0, new FakePages()))).containsExactly("2", "1").inOrder();
+    assertThat(window.range(index, 120, 10, 0, new FakePages())).isEmpty();
+  }
+
+  @Test
+  public void range_leavesOutDeletedContacts() {
+    newWindow(10);
+    FakePages pages = new FakePages();
+    pages.missing.add(9L);
+
+    assertThat(identifiers(window.range(index, 0, 3, 0, pages))).containsExactly("10", "8").inOrder();
+  }
+
+  @Test
+  public void range_readsAgainWithOtherOptionsOrOnceInvalidated() {
+    newWindow(10);
+    FakePages pages = new FakePages();
+
+    window.range(index, 0, 5, 0, pages);
+    window.range(index, 0, 5, 1, pages);
+    window.invalidate();
+    window.range(index, 0, 5, 1, pages);
+
+    assertThat(pages.loadedPages).hasSize(3);
+    assertThat(window.pageToPrefetch(0, 5)).isEqualTo(-1);
+  }
+
+  @Test
+  public void getIndex_readsOnceUntilInvalidated() {
+    ContactWindow window = new ContactWindow();
+    FakeIndex loader = new FakeIndex(10);
+
+    long[] first = window.getIndex(loader);
+    assertThat(window.getIndex(loader)).isSameInstanceAs(first);
+    window.invalidate();
+    assertThat(window.getIndex(loader)).isNotSameInstanceAs(first);
+    assertThat(loader.reads).isEqualTo(2);
+  }
+
+  @Test
+  public void getIndex_dropsTheIdentifiersReadWhileTheContactsChanged() {
+    final ContactWindow window = new ContactWindow();
+    final FakeIndex fresh = new FakeIndex(3);
+
+    long[] stale = window.getIndex(new ContactWindow.IndexLoader() {
+      @Override
+      public long[] load() {
+        // A change notified while the provider is read
+        window.invalidate();
+        return new long[]{1, 2};
+      }
+    });
+
+    assertThat(stale.length).isEqualTo(2);
+    assertThat(window.getIndex(fresh).length).isEqualTo(3);
+    assertThat(fresh.reads).isEqualTo(1);
+  }
+
+  @Test
+  public void pageToPrefetch_followsTheScroll() {
+    newWindow(200);
+    FakePages pages = new FakePages();
+
+    window.range(index, 60, 10, 0, pages);
+    assertThat(window.pageToPrefetch(60, 10)).isEqualTo(2);
+    window.prefetch(2, 0, pages);
+    assertThat(window.pageToPrefetch(60, 10)).isEqualTo(-1);
+
+    window.range(index, 52, 10, 0, pages);
+    assertThat(window.pageToPrefetch(52, 10)).isEqualTo(0);
+    window.range(index, 10, 10, 0, pages);
+    assertThat(window.pageToPrefetch(10, 10)).isEqualTo(-1);
+  }
+}
@@ -0,0 +1,257 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static android.provider.ContactsContract.CommonDataKinds.Email;
+import static android.provider.ContactsContract.CommonDataKinds.Organization;
+import static android.provider.ContactsContract.CommonDataKinds.Phone;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredName;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
+
+import android.database.Cursor;
+import android.provider.ContactsContract;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/***
+ * JMH benchmarks of the paths every contact goes through, over a synthetic address book held
+ * by a {@link FakeCursor}. Run on the JVM with the classpath of the unit tests:
+ *
+ *   ./gradlew jmh
+ *   ./gradlew jmh --args='decode -p contacts=10000'
+ *
+ * The results end with the cost of each cursor row (decode) or contact (the others), and the
+ * bytes allocated for each contact, to compare changes against.
+ ***/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ContactsBenchmark {
+
+  // Name, two phones, email, organization and postal address
+  static final int ROWS_PER_CONTACT = 6;
+
+  private static final String[] GIVEN_NAMES = {"Anna", "Bob", "Chlo\u00e9", "David", "Emma", "Farid", "Grace", "Hugo"};
+  private static final String[] FAMILY_NAMES = {"Martin", "Smith", "Nguyen", "Garc\u00eda", "M\u00fcller", "Rossi", "Kim"};
+  private static final int[] PHONE_TYPES = {Phone.TYPE_MOBILE, Phone.TYPE_HOME, Phone.TYPE_WORK, Phone.TYPE_CUSTOM};
+
+  @Param({"1000", "10000", "50000"})
+  public int contacts;
+
+  private FakeCursor cursor;
+  private FakeCursor labelCursor;
+  private ArrayList<Contact> decoded;
+  private ArrayList<Contact> shuffled;
+  private ArrayList<HashMap> maps;
+  private ParallelContactsLoader parallelLoader;
+  private long[] contactIds;
+  private HashMap<Long, FakeCursor> rangeCursors;
+
+  @Setup
+  public void setUp() {
+    cursor = newCursor(contacts);
+    decoded = ContactsServicePlugin.getContactsFrom(cursor, null, false, Contact.ALL_FIELDS);
+    shuffled = new ArrayList<>(decoded);
+    Collections.shuffle(shuffled, new Random(42));
+    maps = new ArrayList<>(decoded.size());
+    for (Contact contact : decoded) {
+      maps.add(contact.toMap());
+    }
+    parallelLoader = ParallelContactsLoader.create(Runtime.getRuntime().availableProcessors());
+    contactIds = new long[contacts];
+    for (int i = 0; i < contacts; i++) {
+      contactIds[i] = i + 1;
+    }
+    // Built ahead like the cursor of decode, keyed by the first identifier of their range
+    rangeCursors = new HashMap<>();
+    long[] starts = parallelLoader.rangeStarts(contactIds);
+    for (int i = 0; i <= starts.length; i++) {
+      long fromId = i == 0 ? 1 : starts[i - 1];
+      long toId = i < starts.length ? starts[i] : contacts + 1;
+      rangeCursors.put(i == 0 ? Long.MIN_VALUE : fromId, newCursor(fromId, toId - 1));
+    }
+    // A phone row per contact, one in four with one of a few custom labels
+    labelCursor = new FakeCursor(ContactsContract.Data.MIMETYPE, Phone.NUMBER, Phone.TYPE, Phone.LABEL);
+    for (int i = 0; i < contacts; i++) {
+      int type = PHONE_TYPES[i % PHONE_TYPES.length];
+      labelCursor.addRow(ContactsContract.Data.MIMETYPE, Phone.CONTENT_ITEM_TYPE,
+          Phone.NUMBER, String.format("+33 6 %08d", i),
+          Phone.TYPE, type,
+          Phone.LABEL, type == Phone.TYPE_CUSTOM ? "Pager " + (i % 3) : null);
+    }
+  }
+
+  /**
+   * @return the Data rows of the contacts, ordered by contact like the queries of the plugin
+   */
+  static FakeCursor newCursor(int contacts) {
+    return newCursor(1, contacts);
+  }
+
+  /**
+   * @return the Data rows of the contacts from firstId to lastId included
+   */
+  static FakeCursor newCursor(long firstId, long lastId) {
+    FakeCursor cursor = new FakeCursor(ContactsServicePlugin.getProjection(Contact.ALL_FIELDS));
+    for (long id = firstId; id <= lastId; id++) {
+      String givenName = GIVEN_NAMES[(int) (id % GIVEN_NAMES.length)];
+      String familyName = FAMILY_NAMES[(int) (id % FAMILY_NAMES.length)];
+      Object[] common = {
+          ContactsContract.Data.CONTACT_ID, id,
+          ContactsContract.Contacts.DISPLAY_NAME, givenName + " " + familyName,
+          ContactsContract.RawContacts.ACCOUNT_TYPE, "com.google",
+          ContactsContract.RawContacts.ACCOUNT_NAME, "user@gmail.com",
+      };
+      cursor.addRow(row(common,
+          ContactsContract.Data.MIMETYPE, StructuredName.CONTENT_ITEM_TYPE,
+          StructuredName.GIVEN_NAME, givenName,
+          StructuredName.FAMILY_NAME, familyName));
+      cursor.addRow(row(common,
+          ContactsContract.Data.MIMETYPE, Phone.CONTENT_ITEM_TYPE,
+          Phone.NUMBER, String.format("+33 6 %08d", id),
+          Phone.TYPE, Phone.TYPE_MOBILE));
+      cursor.addRow(row(common,
+          ContactsContract.Data.MIMETYPE, Phone.CONTENT_ITEM_TYPE,
+          Phone.NUMBER, String.format("+33 1 %08d", id),
+          Phone.TYPE, Phone.TYPE_CUSTOM,
+          Phone.LABEL, "Office " + (id % 3)));
+      cursor.addRow(row(common,
+          ContactsContract.Data.MIMETYPE, Email.CONTENT_ITEM_TYPE,
+          Email.ADDRESS, givenName.toLowerCase() + id + "@example.com",
+          Email.TYPE, Email.TYPE_HOME));
+      cursor.addRow(row(common,
+          ContactsContract.Data.MIMETYPE, Organization.CONTENT_ITEM_TYPE,
+          Organization.COMPANY, "Company " + (id % 100),
+          Organization.TITLE, "Engineer"));
+      cursor.addRow(row(common,
+          ContactsContract.Data.MIMETYPE, StructuredPostal.CONTENT_ITEM_TYPE,
+          StructuredPostal.TYPE, StructuredPostal.TYPE_HOME,
+          StructuredPostal.STREET, id + " Main Street",
+          StructuredPostal.CITY, "Paris",
+          StructuredPostal.POSTCODE, "75001",
+          StructuredPostal.COUNTRY, "France"));
+    }
+    return cursor;
+  }
+
+  private static Object[] row(Object[] common, Object... columnsAndValues) {
+    Object[] row = new Object[common.length + columnsAndValues.length];
+    System.arraycopy(common, 0, row, 0, common.length);
+    System.arraycopy(columnsAndValues, 0, row, common.length, columnsAndValues.length);
+    return row;
+  }
+
+  @Benchmark
+  public ArrayList<Contact> decode() {
+    cursor.moveToPosition(-1);
+    return ContactsServicePlugin.getContactsFrom(cursor, null, false, Contact.ALL_FIELDS);
+  }
+
+  @Benchmark
+  public ArrayList<Contact> parallelDecode() {
+    return parallelLoader.load(contactIds, new ParallelContactsLoader.RangeQuery() {
+      @Override
+      public Cursor query(long fromId, long toId) {
+        FakeCursor cursor = rangeCursors.get(fromId);
+        cursor.moveToPosition(-1);
+        return cursor;
+      }
+    }, null, false, Contact.ALL_FIELDS, new AtomicInteger());
+  }
+
+  @Benchmark
+  public void toMap(Blackhole blackhole) {
+    for (Contact contact : decoded) {
+      blackhole.consume(contact.toMap());
+    }
+  }
+
+  @Benchmark
+  public void fromMap(Blackhole blackhole) {
+    for (HashMap map : maps) {
+      blackhole.consume(Contact.fromMap(map));
+    }
+  }
+
+  @Benchmark
+  public Contact phoneLabels() {
+    // A decoder per run, like per query, so that the custom labels are interned again
+    labelCursor.moveToPosition(-1);
+    ContactRowDecoder decoder = new ContactRowDecoder(labelCursor, null, false, Contact.FIELD_PHONES);
+    Contact contact = new Contact("1");
+    while (labelCursor.moveToNext()) {
+      decoder.readRow(contact);
+    }
+    return contact;
+  }
+
+  @Benchmark
+  public ArrayList<Contact> sortByGivenName() {
+    // Includes copying the list, so that every run sorts the same order
+    ArrayList<Contact> contacts = new ArrayList<>(shuffled);
+    Contact.sortByGivenName(contacts);
+    return contacts;
+  }
+
+  @Benchmark
+  public byte[] packedEncode() {
+    return PackedContactsEncoder.encode(decoded, Contact.ALL_FIELDS);
+  }
+
+  /**
+   * Runs the benchmarks, or those given with the usual JMH options, with the allocation
+   * profiler, then prints the cost of each row or contact
+   */
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class);
+    if (commandLine.getIncludes().isEmpty()) {
+      options.include(ContactsBenchmark.class.getSimpleName());
+    }
+    Collection<RunResult> results = new Runner(options.build()).run();
+
+    System.out.printf("%n%-16s %9s %12s %10s %10s %12s%n", "Benchmark", "contacts", "ops/s", "unit", "ns/unit", "B/contact");
+    for (RunResult result : results) {
+      String benchmark = result.getParams().getBenchmark();
+      benchmark = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+      int contacts = Integer.parseInt(result.getParams().getParam("contacts"));
+      boolean perRow = benchmark.equals("decode") || benchmark.equals("parallelDecode");
+      double opsPerSecond = result.getPrimaryResult().getScore();
+      double nanosPerUnit = TimeUnit.SECONDS.toNanos(1) / opsPerSecond / (perRow ? contacts * ROWS_PER_CONTACT : contacts);
+      double bytesPerContact = Double.NaN;
+      for (Map.Entry<String, Result> secondary : result.getSecondaryResults().entrySet()) {
+        if (secondary.getKey().endsWith("gc.alloc.rate.norm")) {
+          bytesPerContact = secondary.getValue().getScore() / contacts;
+        }
+      }
+      System.out.printf("%-16s %9d %12.2f %10s %10.1f %12.1f%n", benchmark, contacts, opsPerSecond,
+          perRow ? "row" : "contact", nanosPerUnit, bytesPerContact);
+    }
+  }
+}
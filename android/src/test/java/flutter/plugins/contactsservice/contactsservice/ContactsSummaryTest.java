@@ -0,0 +1,49 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static android.provider.ContactsContract.RawContacts;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.provider.ContactsContract;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+public class ContactsSummaryTest {
+
+  @Test
+  public void readCount_readsTheSingleRow() {
+    FakeCursor cursor = new FakeCursor(ContactsContract.Contacts._COUNT).addRow(ContactsContract.Contacts._COUNT, 42L);
+
+    assertThat(ContactsSummary.readCount(cursor)).isEqualTo(42L);
+    assertThat(cursor.isClosed()).isTrue();
+    assertThat(ContactsSummary.readCount(null)).isEqualTo(0L);
+  }
+
+  @Test
+  public void countAccounts_talliesEachAccountMostFirst() {
+    FakeCursor cursor = new FakeCursor(RawContacts.ACCOUNT_TYPE, RawContacts.ACCOUNT_NAME)
+        .addRow()
+        .addRow(RawContacts.ACCOUNT_TYPE, "com.google", RawContacts.ACCOUNT_NAME, "me@gmail.com")
+        .addRow(RawContacts.ACCOUNT_TYPE, "com.google", RawContacts.ACCOUNT_NAME, "work@gmail.com")
+        .addRow(RawContacts.ACCOUNT_TYPE, "com.google", RawContacts.ACCOUNT_NAME, "me@gmail.com");
+
+    ArrayList<HashMap<String, Object>> accounts = ContactsSummary.countAccounts(cursor);
+
+    assertThat(accounts).hasSize(3);
+    assertThat(accounts.get(0).get("name")).isEqualTo("me@gmail.com");
+    assertThat(accounts.get(0).get("count")).isEqualTo(2);
+    // Ties keep the order of their first raw contact
+    assertThat(accounts.get(1).get("type")).isNull();
+    assertThat(accounts.get(1).get("name")).isNull();
+    assertThat(accounts.get(1).get("count")).isEqualTo(1);
+    assertThat(accounts.get(2).get("name")).isEqualTo("work@gmail.com");
+    assertThat(cursor.isClosed()).isTrue();
+  }
+
+  @Test
+  public void readIndex_nullWithoutExtras() {
+    assertThat(ContactsSummary.readIndex(null)).isNull();
+  }
+}
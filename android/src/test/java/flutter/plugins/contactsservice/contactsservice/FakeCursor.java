@@ -0,0 +1,294 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import android.content.ContentResolver;
+import android.database.CharArrayBuffer;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.DataSetObserver;
+import android.net.Uri;
+import android.os.Bundle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+/***
+ * In-memory cursor over a fixed set of columns, in the spirit of MatrixCursor
+ * which is not available in local unit tests
+ ***/
+class FakeCursor implements Cursor {
+
+  private final String[] columns;
+  private final ArrayList<Object[]> rows = new ArrayList<>();
+  private int position = -1;
+  private boolean closed;
+
+  FakeCursor(String... columns) {
+    // Projections may repeat a column under different aliases, keep the first one
+    this.columns = new ArrayList<>(new LinkedHashSet<>(Arrays.asList(columns))).toArray(new String[0]);
+  }
+
+  /**
+   * Adds a row from alternating column names and values, columns not mentioned are null
+   */
+  FakeCursor addRow(Object... columnsAndValues) {
+    Object[] row = new Object[columns.length];
+    for (int i = 0; i < columnsAndValues.length; i += 2) {
+      row[getColumnIndexOrThrow((String) columnsAndValues[i])] = columnsAndValues[i + 1];
+    }
+    rows.add(row);
+    return this;
+  }
+
+  private Object get(int column) {
+    if (position < 0 || position >= rows.size()) {
+      throw new IllegalStateException("Cursor is not positioned on a row");
+    }
+    return column < 0 ? null : rows.get(position)[column];
+  }
+
+  @Override
+  public int getCount() {
+    return rows.size();
+  }
+
+  @Override
+  public int getPosition() {
+    return position;
+  }
+
+  @Override
+  public boolean move(int offset) {
+    return moveToPosition(position + offset);
+  }
+
+  @Override
+  public boolean moveToPosition(int position) {
+    if (position >= rows.size()) {
+      this.position = rows.size();
+      return false;
+    }
+    if (position < 0) {
+      this.position = -1;
+      return false;
+    }
+    this.position = position;
+    return true;
+  }
+
+  @Override
+  public boolean moveToFirst() {
+    return moveToPosition(0);
+  }
+
+  @Override
+  public boolean moveToLast() {
+    return moveToPosition(rows.size() - 1);
+  }
+
+  @Override
+  public boolean moveToNext() {
+    return moveToPosition(position + 1);
+  }
+
+  @Override
+  public boolean moveToPrevious() {
+    return moveToPosition(position - 1);
+  }
+
+  @Override
+  public boolean isFirst() {
+    return position == 0 && !rows.isEmpty();
+  }
+
+  @Override
+  public boolean isLast() {
+    return position == rows.size() - 1 && !rows.isEmpty();
+  }
+
+  @Override
+  public boolean isBeforeFirst() {
+    return rows.isEmpty() || position == -1;
+  }
+
+  @Override
+  public boolean isAfterLast() {
+    return rows.isEmpty() || position == rows.size();
+  }
+
+  @Override
+  public int getColumnIndex(String columnName) {
+    for (int i = 0; i < columns.length; i++) {
+      if (columns[i].equals(columnName)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public int getColumnIndexOrThrow(String columnName) {
+    int index = getColumnIndex(columnName);
+    if (index < 0) {
+      throw new IllegalArgumentException("column '" + columnName + "' does not exist");
+    }
+    return index;
+  }
+
+  @Override
+  public String getColumnName(int columnIndex) {
+    return columns[columnIndex];
+  }
+
+  @Override
+  public String[] getColumnNames() {
+    return columns.clone();
+  }
+
+  @Override
+  public int getColumnCount() {
+    return columns.length;
+  }
+
+  @Override
+  public byte[] getBlob(int columnIndex) {
+    return (byte[]) get(columnIndex);
+  }
+
+  @Override
+  public String getString(int columnIndex) {
+    Object value = get(columnIndex);
+    return value != null ? value.toString() : null;
+  }
+
+  @Override
+  public void copyStringToBuffer(int columnIndex, CharArrayBuffer buffer) {
+    String value = getString(columnIndex);
+    if (value == null) {
+      buffer.sizeCopied = 0;
+      return;
+    }
+    if (buffer.data == null || buffer.data.length < value.length()) {
+      buffer.data = value.toCharArray();
+    } else {
+      value.getChars(0, value.length(), buffer.data, 0);
+    }
+    buffer.sizeCopied = value.length();
+  }
+
+  @Override
+  public short getShort(int columnIndex) {
+    return (short) getLong(columnIndex);
+  }
+
+  @Override
+  public int getInt(int columnIndex) {
+    return (int) getLong(columnIndex);
+  }
+
+  @Override
+  public long getLong(int columnIndex) {
+    Object value = get(columnIndex);
+    if (value == null) {
+      return 0;
+    }
+    return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
+  }
+
+  @Override
+  public float getFloat(int columnIndex) {
+    return (float) getDouble(columnIndex);
+  }
+
+  @Override
+  public double getDouble(int columnIndex) {
+    Object value = get(columnIndex);
+    if (value == null) {
+      return 0;
+    }
+    return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString());
+  }
+
+  @Override
+  public int getType(int columnIndex) {
+    Object value = get(columnIndex);
+    if (value == null) {
+      return FIELD_TYPE_NULL;
+    } else if (value instanceof byte[]) {
+      return FIELD_TYPE_BLOB;
+    } else if (value instanceof Float || value instanceof Double) {
+      return FIELD_TYPE_FLOAT;
+    } else if (value instanceof Number) {
+      return FIELD_TYPE_INTEGER;
+    }
+    return FIELD_TYPE_STRING;
+  }
+
+  @Override
+  public boolean isNull(int columnIndex) {
+    return get(columnIndex) == null;
+  }
+
+  @Override
+  public void deactivate() {
+  }
+
+  @Override
+  public boolean requery() {
+    return false;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+  }
+
+  @Override
+  public boolean isClosed() {
+    return closed;
+  }
+
+  @Override
+  public void registerContentObserver(ContentObserver observer) {
+  }
+
+  @Override
+  public void unregisterContentObserver(ContentObserver observer) {
+  }
+
+  @Override
+  public void registerDataSetObserver(DataSetObserver observer) {
+  }
+
+  @Override
+  public void unregisterDataSetObserver(DataSetObserver observer) {
+  }
+
+  @Override
+  public void setNotificationUri(ContentResolver cr, Uri uri) {
+  }
+
+  @Override
+  public Uri getNotificationUri() {
+    return null;
+  }
+
+  @Override
+  public boolean getWantsAllOnMoveCalls() {
+    return false;
+  }
+
+  @Override
+  public void setExtras(Bundle extras) {
+  }
+
+  @Override
+  public Bundle getExtras() {
+    return null;
+  }
+
+  @Override
+  public Bundle respond(Bundle extras) {
+    return null;
+  }
+}
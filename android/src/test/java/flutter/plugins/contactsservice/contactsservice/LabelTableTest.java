@@ -0,0 +1,32 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static android.provider.ContactsContract.CommonDataKinds.Email;
+import static android.provider.ContactsContract.CommonDataKinds.Phone;
+import static android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+public class LabelTableTest {
+
+  @Test
+  public void unlocalized_labelsOfTheTypes() {
+    LabelTable table = LabelTable.get(null, false);
+
+    assertThat(table.phoneLabel(Phone.TYPE_MOBILE)).isEqualTo("mobile");
+    assertThat(table.phoneLabel(Phone.TYPE_FAX_WORK)).isEqualTo("fax work");
+    assertThat(table.phoneLabel(Phone.TYPE_ASSISTANT)).isEqualTo("other");
+    assertThat(table.phoneLabel(1000)).isEqualTo("other");
+    assertThat(table.emailLabel(Email.TYPE_WORK)).isEqualTo("work");
+    assertThat(table.postalLabel(StructuredPostal.TYPE_OTHER)).isEqualTo("other");
+  }
+
+  @Test
+  public void unlocalized_customTypesHaveNoLabel() {
+    LabelTable table = LabelTable.get(null, false);
+
+    assertThat(table.phoneLabel(Phone.TYPE_CUSTOM)).isNull();
+    assertThat(table.emailLabel(Email.TYPE_CUSTOM)).isNull();
+    assertThat(table.postalLabel(StructuredPostal.TYPE_CUSTOM)).isNull();
+  }
+}
@@ -0,0 +1,115 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class PackedContactsEncoderTest {
+
+  private static String readString(ByteBuffer buffer, int ref) {
+    if (ref < 0) {
+      return null;
+    }
+    int stringCount = buffer.getInt(8);
+    int start = buffer.getInt(12 + 4 * ref);
+    int end = buffer.getInt(12 + 4 * (ref + 1));
+    int dataStart = 12 + 4 * (stringCount + 1);
+    return new String(buffer.array(), dataStart + start, end - start, Charset.forName("UTF-8"));
+  }
+
+  @Test
+  public void encode_empty() {
+    ByteBuffer buffer = ByteBuffer.wrap(PackedContactsEncoder.encode(Collections.<Contact>emptyList(), Contact.ALL_FIELDS))
+        .order(ByteOrder.LITTLE_ENDIAN);
+
+    assertThat(buffer.getInt()).isEqualTo(PackedContactsEncoder.VERSION);
+    assertThat(buffer.getInt()).isEqualTo(Contact.ALL_FIELDS);
+    assertThat(buffer.getInt()).isEqualTo(0);
+    assertThat(buffer.getInt()).isEqualTo(0);
+    assertThat(buffer.getInt()).isEqualTo(0);
+    assertThat(buffer.remaining()).isEqualTo(0);
+  }
+
+  @Test
+  public void encode_sharesRepeatedStrings() {
+    Contact contact1 = new Contact("1");
+    contact1.givenName = "Ada";
+    contact1.phones.add(new Item("mobile", "555-0100", 2));
+    contact1.avatar = new byte[] {1, 2, 3};
+
+    Contact contact2 = new Contact("2");
+    contact2.givenName = "Grace";
+    contact2.phones.add(new Item("mobile", "555-0101", 2));
+    contact2.postalAddresses.add(new PostalAddress("work", "1 Main St", null, null, null, null, 2));
+
+    byte[] bytes = PackedContactsEncoder.encode(Arrays.asList(contact1, contact2), Contact.ALL_FIELDS);
+    ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+    // "1", "Ada", "mobile", "555-0100", "2", "Grace", "555-0101", "work", "1 Main St"
+    int stringCount = buffer.getInt(8);
+    assertThat(stringCount).isEqualTo(9);
+    int stringBytes = buffer.getInt(12 + 4 * stringCount);
+    buffer.position(12 + 4 * (stringCount + 1) + ((stringBytes + 3) & ~3));
+    assertThat(buffer.getInt()).isEqualTo(2);
+
+    // First contact
+    assertThat(readString(buffer, buffer.getInt())).isEqualTo("1");
+    assertThat(buffer.getInt()).isEqualTo(-1);
+    assertThat(readString(buffer, buffer.getInt())).isEqualTo("Ada");
+    buffer.position(buffer.position() + 4 * 10);
+    assertThat(buffer.getInt()).isEqualTo(3);
+    assertThat(buffer.get()).isEqualTo((byte) 1);
+    buffer.position(buffer.position() + 3);
+    assertThat(buffer.getInt()).isEqualTo(0);
+    assertThat(buffer.getInt()).isEqualTo(1);
+    int labelRef = buffer.getInt();
+    assertThat(readString(buffer, labelRef)).isEqualTo("mobile");
+    assertThat(readString(buffer, buffer.getInt())).isEqualTo("555-0100");
+    assertThat(buffer.getInt()).isEqualTo(2);
+    assertThat(buffer.getInt()).isEqualTo(0);
+
+    // Second contact reuses the "mobile" label
+    buffer.position(buffer.position() + 4 * 13);
+    assertThat(buffer.getInt()).isEqualTo(0);
+    assertThat(buffer.getInt()).isEqualTo(0);
+    assertThat(buffer.getInt()).isEqualTo(1);
+    assertThat(buffer.getInt()).isEqualTo(labelRef);
+    assertThat(readString(buffer, buffer.getInt())).isEqualTo("555-0101");
+    assertThat(buffer.getInt()).isEqualTo(2);
+    assertThat(buffer.getInt()).isEqualTo(1);
+    assertThat(readString(buffer, buffer.getInt())).isEqualTo("work");
+    assertThat(readString(buffer, buffer.getInt())).isEqualTo("1 Main St");
+    buffer.position(buffer.position() + 4 * 4);
+    assertThat(buffer.getInt()).isEqualTo(2);
+    assertThat(buffer.remaining()).isEqualTo(0);
+  }
+
+  @Test
+  public void decode_readsWhatWasEncoded() {
+    Contact contact = new Contact("1");
+    contact.givenName = "L\u00e9a";
+    contact.company = "Acme";
+    contact.emails.add(new Item("work", "lea@example.com", 2));
+    contact.postalAddresses.add(new PostalAddress("home", "1 Main St", "Paris", null, null, "France", 1));
+    contact.avatar = new byte[] {1, 2, 3, 4, 5};
+
+    Contact decoded = PackedContactsDecoder.decode(
+        PackedContactsEncoder.encode(Arrays.asList(contact, new Contact("2")), Contact.ALL_FIELDS)).get(0);
+
+    assertThat(decoded.identifier).isEqualTo("1");
+    assertThat(decoded.givenName).isEqualTo("L\u00e9a");
+    assertThat(decoded.familyName).isNull();
+    assertThat(decoded.company).isEqualTo("Acme");
+    assertThat(decoded.emails.get(0).value).isEqualTo("lea@example.com");
+    assertThat(decoded.emails.get(0).type).isEqualTo(2);
+    assertThat(decoded.postalAddresses.get(0).city).isEqualTo("Paris");
+    assertThat(decoded.postalAddresses.get(0).postcode).isNull();
+    assertThat(decoded.avatar).isEqualTo(new byte[] {1, 2, 3, 4, 5});
+  }
+}
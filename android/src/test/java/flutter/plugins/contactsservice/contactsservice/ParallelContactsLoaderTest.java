@@ -0,0 +1,87 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.database.Cursor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class ParallelContactsLoaderTest {
+
+  private static final Executor DIRECT = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  /** Queries the contacts 1 to count of ContactsBenchmark, recording the ranges asked for */
+  private static class BenchmarkRanges implements ParallelContactsLoader.RangeQuery {
+    final int count;
+    final List<String> queried = Collections.synchronizedList(new ArrayList<String>());
+
+    BenchmarkRanges(int count) {
+      this.count = count;
+    }
+
+    @Override
+    public Cursor query(long fromId, long toId) {
+      queried.add((fromId == Long.MIN_VALUE ? "" : String.valueOf(fromId)) + "-" + (toId == Long.MAX_VALUE ? "" : String.valueOf(toId)));
+      return ContactsBenchmark.newCursor(Math.max(1, fromId), Math.min(count, toId - 1));
+    }
+  }
+
+  private static long[] ids(int count) {
+    long[] ids = new long[count];
+    for (int i = 0; i < count; i++) {
+      ids[i] = i + 1;
+    }
+    return ids;
+  }
+
+  @Test
+  public void rangeStarts_evenlySplitsTheContacts() {
+    ParallelContactsLoader loader = new ParallelContactsLoader(DIRECT, 4);
+
+    assertThat(loader.rangeStarts(ids(100))).isEqualTo(new long[0]);
+    assertThat(loader.rangeStarts(ids(1000))).isEqualTo(new long[]{501});
+    assertThat(loader.rangeStarts(ids(4000))).isEqualTo(new long[]{1001, 2001, 3001});
+    assertThat(loader.rangeStarts(ids(100000)).length).isEqualTo(3);
+  }
+
+  @Test
+  public void load_matchesTheSerialDecoding() {
+    int count = 2600;
+    BenchmarkRanges ranges = new BenchmarkRanges(count);
+    ArrayList<Contact> serial = ContactsServicePlugin.getContactsFrom(ContactsBenchmark.newCursor(count), null, false, Contact.ALL_FIELDS);
+    AtomicInteger rows = new AtomicInteger();
+
+    ArrayList<Contact> parallel = ParallelContactsLoader.create(4).load(ids(count), ranges, null, false, Contact.ALL_FIELDS, rows);
+
+    assertThat(ranges.queried).containsExactly("-651", "651-1301", "1301-1951", "1951-");
+    assertThat(rows.get()).isEqualTo(count * ContactsBenchmark.ROWS_PER_CONTACT);
+    assertThat(parallel).hasSize(serial.size());
+    for (int i = 0; i < serial.size(); i++) {
+      HashMap expected = serial.get(i).toMap();
+      HashMap actual = parallel.get(i).toMap();
+      // Compared by reference in the maps
+      assertThat((byte[]) actual.remove("avatar")).isEqualTo((byte[]) expected.remove("avatar"));
+      assertThat(actual).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  public void load_singleRangeOnTheCallingThread() {
+    BenchmarkRanges ranges = new BenchmarkRanges(10);
+
+    ArrayList<Contact> contacts = new ParallelContactsLoader(DIRECT, 4).load(ids(10), ranges, null, false, Contact.ALL_FIELDS, new AtomicInteger());
+
+    assertThat(ranges.queried).containsExactly("-");
+    assertThat(contacts).hasSize(10);
+  }
+}
@@ -0,0 +1,90 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class PerformanceStatsTest {
+
+  @Test
+  public void histogram_bucketsByPowersOfTwo() {
+    assertThat(PerformanceStats.Histogram.bucket(0)).isEqualTo(0);
+    assertThat(PerformanceStats.Histogram.bucket(1)).isEqualTo(1);
+    assertThat(PerformanceStats.Histogram.bucket(1000)).isEqualTo(10);
+    assertThat(PerformanceStats.Histogram.bucket(Long.MAX_VALUE)).isEqualTo(PerformanceStats.Histogram.BUCKETS - 1);
+  }
+
+  @Test
+  public void histogram_percentiles() {
+    PerformanceStats.Histogram histogram = new PerformanceStats.Histogram();
+    for (int i = 0; i < 98; i++) {
+      histogram.add(100);
+    }
+    histogram.add(5000);
+    histogram.add(30000);
+
+    assertThat(histogram.percentile(0.5)).isEqualTo(128L);
+    assertThat(histogram.percentile(0.99)).isEqualTo(8192L);
+    assertThat(histogram.percentile(1)).isEqualTo(30000L);
+    assertThat(histogram.maxMicros).isEqualTo(30000L);
+    assertThat(new PerformanceStats.Histogram().percentile(0.5)).isEqualTo(0L);
+  }
+
+  @Test
+  public void getStats_aggregatesCallsByMethod() {
+    PerformanceStats stats = new PerformanceStats();
+    for (int i = 0; i < 2; i++) {
+      PerformanceStats.Call call = stats.newCall("getContacts");
+      call.start();
+      call.begin(PerformanceStats.STAGE_QUERY);
+      call.rows = 10;
+      call.begin(PerformanceStats.STAGE_DECODE);
+      call.contacts = 3;
+      call.finish();
+    }
+
+    Map<String, Object> operation = (Map<String, Object>) stats.getStats().get("getContacts");
+
+    assertThat(operation).containsEntry("calls", 2L);
+    assertThat(operation).containsEntry("rows", 20L);
+    assertThat(operation).containsEntry("contacts", 6L);
+    Map<String, Object> stages = (Map<String, Object>) operation.get("stages");
+    assertThat(stages.keySet()).containsExactly("queue", "query", "decode");
+    assertThat((Map<String, Object>) stages.get("decode")).containsEntry("count", 2L);
+
+    stats.reset();
+    assertThat(stats.getStats()).isEmpty();
+  }
+
+  @Test
+  public void slowCallListener_toldAboutCallsOverTheThreshold() throws InterruptedException {
+    PerformanceStats stats = new PerformanceStats();
+    final List<HashMap<String, Object>> slowCalls = new ArrayList<>();
+    stats.setSlowCallListener(5, new PerformanceStats.SlowCallListener() {
+      @Override
+      public void onSlowCall(HashMap<String, Object> call) {
+        slowCalls.add(call);
+      }
+    });
+
+    stats.newCall("fast").finish();
+    PerformanceStats.Call slow = stats.newCall("slow");
+    slow.begin(PerformanceStats.STAGE_WRITE);
+    Thread.sleep(10);
+    slow.finish();
+
+    assertThat(slowCalls).hasSize(1);
+    assertThat(slowCalls.get(0)).containsEntry("method", "slow");
+    assertThat(((Map<String, Object>) slowCalls.get(0).get("stageMicros")).keySet()).containsExactly("write");
+
+    stats.setSlowCallListener(0, null);
+    PerformanceStats.Call ignored = stats.newCall("slow");
+    Thread.sleep(10);
+    ignored.finish();
+    assertThat(slowCalls).hasSize(1);
+  }
+}
@@ -0,0 +1,156 @@
+package flutter.plugins.contactsservice.contactsservice;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.flutter.plugin.common.MethodChannel.Result;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class RequestSchedulerTest {
+
+  private static final Executor DIRECT = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  private static RequestScheduler newScheduler(int capacity) {
+    return new RequestScheduler(DIRECT, new int[]{1, 1, 1}, new int[]{capacity, capacity, capacity});
+  }
+
+  /** Occupies the only thread of a lane until the returned latch is counted down */
+  private static CountDownLatch block(RequestScheduler scheduler, int lane) throws InterruptedException {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    scheduler.execute(lane, RequestScheduler.PRIORITY_NORMAL, new Runnable() {
+      @Override
+      public void run() {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    started.await(5, TimeUnit.SECONDS);
+    return release;
+  }
+
+  @Test
+  public void execute_runsHigherPriorityFirst() throws InterruptedException {
+    RequestScheduler scheduler = newScheduler(10);
+    CountDownLatch release = block(scheduler, RequestScheduler.LANE_QUERY);
+    final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+    final CountDownLatch done = new CountDownLatch(3);
+    for (final String name : new String[]{"low", "normal", "high"}) {
+      int priority = name.equals("low") ? RequestScheduler.PRIORITY_LOW
+          : name.equals("high") ? RequestScheduler.PRIORITY_HIGH : RequestScheduler.PRIORITY_NORMAL;
+      scheduler.execute(RequestScheduler.LANE_QUERY, priority, new Runnable() {
+        @Override
+        public void run() {
+          order.add(name);
+          done.countDown();
+        }
+      });
+    }
+
+    release.countDown();
+
+    assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(order).containsExactly("high", "normal", "low").inOrder();
+  }
+
+  @Test
+  public void submit_rejectsWhenLaneIsFull() throws InterruptedException {
+    RequestScheduler scheduler = newScheduler(1);
+    CountDownLatch release = block(scheduler, RequestScheduler.LANE_WRITE);
+    RecordingResult queued = new RecordingResult();
+    RecordingResult rejected = new RecordingResult();
+
+    scheduler.submit(RequestScheduler.LANE_WRITE, RequestScheduler.PRIORITY_NORMAL, new ValueRequest("a"), queued);
+    scheduler.submit(RequestScheduler.LANE_WRITE, RequestScheduler.PRIORITY_NORMAL, new ValueRequest("b"), rejected);
+    // Other lanes are not affected
+    RecordingResult avatar = new RecordingResult();
+    scheduler.submit(RequestScheduler.LANE_AVATAR, RequestScheduler.PRIORITY_NORMAL, new ValueRequest("c"), avatar);
+
+    assertThat(rejected.errorCode).isEqualTo(RequestScheduler.QUEUE_FULL);
+    assertThat(avatar.await()).isEqualTo("c");
+    release.countDown();
+    assertThat(queued.await()).isEqualTo("a");
+    Map<String, Object> writeStats = (Map<String, Object>) scheduler.getStats().get("write");
+    assertThat(writeStats).containsEntry("rejected", 1L);
+  }
+
+  @Test
+  public void submit_answersExceptionsWithAnError() throws InterruptedException {
+    RequestScheduler scheduler = newScheduler(10);
+    RecordingResult result = new RecordingResult();
+
+    scheduler.submit(RequestScheduler.LANE_QUERY, RequestScheduler.PRIORITY_NORMAL, new RequestScheduler.Request<Object>() {
+      @Override
+      Object doInBackground() {
+        throw new IllegalStateException("failed");
+      }
+    }, result);
+
+    assertThat(result.await()).isNull();
+    assertThat(result.errorMessage).isEqualTo("failed");
+  }
+
+  @Test
+  public void defaultThreads_dependsOnProcessors() {
+    assertThat(RequestScheduler.defaultThreads(1)).isEqualTo(new int[]{1, 2, 1});
+    assertThat(RequestScheduler.defaultThreads(8)).isEqualTo(new int[]{3, 4, 1});
+  }
+
+  private static class ValueRequest extends RequestScheduler.Request<Object> {
+    private final Object value;
+
+    ValueRequest(Object value) {
+      this.value = value;
+    }
+
+    @Override
+    Object doInBackground() {
+      return value;
+    }
+  }
+
+  private static class RecordingResult implements Result {
+    private final CountDownLatch answered = new CountDownLatch(1);
+    volatile Object value;
+    volatile String errorCode;
+    volatile String errorMessage;
+
+    Object await() throws InterruptedException {
+      assertThat(answered.await(5, TimeUnit.SECONDS)).isTrue();
+      return value;
+    }
+
+    @Override
+    public void success(Object result) {
+      value = result;
+      answered.countDown();
+    }
+
+    @Override
+    public void error(String code, String message, Object details) {
+      errorCode = code;
+      errorMessage = message;
+      answered.countDown();
+    }
+
+    @Override
+    public void notImplemented() {
+      answered.countDown();
+    }
+  }
+}
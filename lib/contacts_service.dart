@@ -1,4 +1,5 @@
 import 'dart:async';
+import 'dart:convert';
 import 'dart:typed_data';
 
 import 'package:collection/collection.dart';
@@ -10,17 +11,51 @@ export 'share.dart';
 class ContactsService {
   static const MethodChannel _channel =
       MethodChannel('github.com/clovisnicolas/flutter_contacts');
+  static const EventChannel _changesChannel =
+      EventChannel('github.com/clovisnicolas/flutter_contacts/changes');
+
+  static Stream<ContactsChangeEvent>? _changes;
+
+  static void Function(SlowCall call)? _slowCallHandler;
+
+  /// Emits an event when contacts are added, updated or deleted on the
+  /// device. Bursts of changes, such as during an account sync, are
+  /// coalesced into a single event. The device is only watched while the
+  /// stream is listened to.
+  /// Only implemented on Android.
+  static Stream<ContactsChangeEvent> get onContactsChanged =>
+      _changes ??= _changesChannel
+          .receiveBroadcastStream()
+          .map((event) => ContactsChangeEvent._fromMap(event));
 
   /// Fetches all contacts, or when specified, the contacts with a name
   /// matching [query]
+  /// On Android, [fields] restricts what is read and returned for each
+  /// contact, the other fields are left empty. The identifier, display name
+  /// and account are always returned.
+  /// On Android, [androidPackedEncoding] sends the contacts over the channel
+  /// as a single compact buffer instead of a list of maps, which is faster to
+  /// encode and decode for large address books.
+  /// On Android, [androidAvatarFormat] and [androidAvatarSize] control how
+  /// the thumbnails are returned, see [getAvatar].
+  /// On Android, [androidParallelLoad] reads the whole address book as
+  /// several ranges of identifiers at once, one per core up to four, which
+  /// is faster for large address books. The contacts are then returned by
+  /// identifier, before being sorted with [orderByGivenName]. It has no
+  /// effect with a [query].
   static Future<List<Contact>> getContacts(
       {String? query,
       bool withThumbnails = true,
       bool photoHighResolution = true,
       bool orderByGivenName = true,
       bool iOSLocalizedLabels = true,
-      bool androidLocalizedLabels = true}) async {
-    Iterable contacts =
+      bool androidLocalizedLabels = true,
+      Set<ContactField>? fields,
+      bool androidPackedEncoding = false,
+      bool androidParallelLoad = false,
+      AvatarFormat? androidAvatarFormat,
+      int? androidAvatarSize}) async {
+    dynamic contacts =
         await _channel.invokeMethod('getContacts', <String, dynamic>{
       'query': query,
       'withThumbnails': withThumbnails,
@@ -28,21 +63,162 @@ class ContactsService {
       'orderByGivenName': orderByGivenName,
       'iOSLocalizedLabels': iOSLocalizedLabels,
       'androidLocalizedLabels': androidLocalizedLabels,
+      'fields': _fieldNames(fields),
+      'androidPackedEncoding': androidPackedEncoding,
+      'androidParallelLoad': androidParallelLoad,
+      ..._avatarArguments(androidAvatarFormat, androidAvatarSize),
+    });
+    return _decodeContacts(contacts);
+  }
+
+  /// Fetches all contacts, or when specified, the contacts with a name
+  /// matching [query], in pages of at most [pageSize] contacts.
+  /// Pages are emitted while the rest of the address book is still being
+  /// read, so the first contacts can be displayed before all of them have
+  /// been loaded. Cancelling the subscription releases the native cursor.
+  /// With [orderByGivenName] the contacts are sorted by the provider on their
+  /// display name, which starts with the given name.
+  /// See [getContacts] for [fields], [androidPackedEncoding] and the avatar options.
+  /// Only implemented on Android.
+  static Stream<List<Contact>> getContactsStream(
+      {String? query,
+      bool withThumbnails = true,
+      bool photoHighResolution = true,
+      bool orderByGivenName = true,
+      bool androidLocalizedLabels = true,
+      Set<ContactField>? fields,
+      bool androidPackedEncoding = false,
+      AvatarFormat? androidAvatarFormat,
+      int? androidAvatarSize,
+      int pageSize = 100}) async* {
+    int? cursorToken;
+    try {
+      do {
+        Map page =
+            await _channel.invokeMethod('getContactsPage', <String, dynamic>{
+          'cursorToken': cursorToken,
+          'query': query,
+          'withThumbnails': withThumbnails,
+          'photoHighResolution': photoHighResolution,
+          'orderByGivenName': orderByGivenName,
+          'androidLocalizedLabels': androidLocalizedLabels,
+          'fields': _fieldNames(fields),
+          'androidPackedEncoding': androidPackedEncoding,
+          ..._avatarArguments(androidAvatarFormat, androidAvatarSize),
+          'pageSize': pageSize,
+        });
+        cursorToken = page['cursorToken'];
+        yield _decodeContacts(page['contacts']);
+      } while (cursorToken != null);
+    } finally {
+      if (cursorToken != null) {
+        await _channel.invokeMethod('cancelContactsPage', <String, dynamic>{
+          'cursorToken': cursorToken,
+        });
+      }
+    }
+  }
+
+  /// Fetches the contacts added, updated or deleted after [timestamp], in
+  /// milliseconds since the epoch, so that a copy of the address book can be
+  /// kept up to date without reading all of it again. Pass 0 to get every
+  /// contact, then the [ContactChanges.timestamp] of the previous call.
+  /// See [getContacts] for the other parameters.
+  /// Only implemented on Android 4.3 (API 18) and later.
+  static Future<ContactChanges> getContactsChangedSince(int timestamp,
+      {bool withThumbnails = true,
+      bool photoHighResolution = true,
+      bool androidLocalizedLabels = true,
+      Set<ContactField>? fields,
+      bool androidPackedEncoding = false,
+      AvatarFormat? androidAvatarFormat,
+      int? androidAvatarSize}) async {
+    Map changes = await _channel
+        .invokeMethod('getContactsChangedSince', <String, dynamic>{
+      'timestamp': timestamp,
+      'withThumbnails': withThumbnails,
+      'photoHighResolution': photoHighResolution,
+      'androidLocalizedLabels': androidLocalizedLabels,
+      'fields': _fieldNames(fields),
+      'androidPackedEncoding': androidPackedEncoding,
+      ..._avatarArguments(androidAvatarFormat, androidAvatarSize),
+    });
+    return ContactChanges._(
+      _decodeContacts(changes['contacts']),
+      List<String>.from(changes['deletedIdentifiers']),
+      changes['timestamp'],
+      changes['deletionsComplete'],
+    );
+  }
+
+  /// Fetches all contacts, first from a snapshot kept on the device, then
+  /// corrected with the contacts changed on the device since the snapshot
+  /// was taken. The snapshot is shown right away at startup, whatever the size
+  /// of the address book, and the corrected list follows once the provider was
+  /// read. Only the snapshot is yielded when nothing changed, only the full
+  /// list when there is no snapshot yet.
+  /// The snapshot is written by the first call, in the files of the app left
+  /// out of the backups, and holds every field but the avatars. Remove it with
+  /// [deleteContactsSnapshot].
+  /// See [getContacts] for [androidLocalizedLabels] and [androidPackedEncoding].
+  /// Only implemented on Android.
+  static Stream<List<Contact>> getContactsWithSnapshot(
+      {bool androidLocalizedLabels = true,
+      bool androidPackedEncoding = false}) async* {
+    final arguments = <String, dynamic>{
+      'androidLocalizedLabels': androidLocalizedLabels,
+      'androidPackedEncoding': androidPackedEncoding,
+    };
+    Map snapshot =
+        await _channel.invokeMethod('getContactsSnapshot', arguments);
+    List<Contact>? contacts;
+    if (snapshot['contacts'] != null) {
+      contacts = _decodeContacts(snapshot['contacts']);
+      yield contacts;
+    }
+
+    Map changes = await _channel
+        .invokeMethod('reconcileContactsSnapshot', <String, dynamic>{
+      ...arguments,
+      'timestamp': snapshot['timestamp'],
     });
-    return contacts.map((m) => Contact.fromMap(m)).toList();
+    final updated = _decodeContacts(changes['contacts']);
+    if (contacts == null || changes['replace']) {
+      yield updated;
+      return;
+    }
+    final deleted = Set<String>.from(changes['deletedIdentifiers']);
+    if (updated.isEmpty && deleted.isEmpty) return;
+
+    final updates = {for (final c in updated) c.identifier: c};
+    yield [
+      for (final c in contacts)
+        if (!deleted.contains(c.identifier)) updates.remove(c.identifier) ?? c,
+      ...updates.values,
+    ];
   }
 
+  /// Deletes the snapshot written by [getContactsWithSnapshot].
+  /// Only implemented on Android.
+  static Future<void> deleteContactsSnapshot() =>
+      _channel.invokeMethod('deleteContactsSnapshot');
+
   /// Fetches all contacts, or when specified, the contacts with the phone
   /// matching [phone]
+  /// See [getContacts] for [fields], [androidPackedEncoding] and the avatar options.
   static Future<List<Contact>> getContactsForPhone(String? phone,
       {bool withThumbnails = true,
       bool photoHighResolution = true,
       bool orderByGivenName = true,
       bool iOSLocalizedLabels = true,
-      bool androidLocalizedLabels = true}) async {
+      bool androidLocalizedLabels = true,
+      Set<ContactField>? fields,
+      bool androidPackedEncoding = false,
+      AvatarFormat? androidAvatarFormat,
+      int? androidAvatarSize}) async {
     if (phone == null || phone.isEmpty) return List.empty();
 
-    Iterable contacts =
+    dynamic contacts =
         await _channel.invokeMethod('getContactsForPhone', <String, dynamic>{
       'phone': phone,
       'withThumbnails': withThumbnails,
@@ -50,20 +226,28 @@ class ContactsService {
       'orderByGivenName': orderByGivenName,
       'iOSLocalizedLabels': iOSLocalizedLabels,
       'androidLocalizedLabels': androidLocalizedLabels,
+      'fields': _fieldNames(fields),
+      'androidPackedEncoding': androidPackedEncoding,
+      ..._avatarArguments(androidAvatarFormat, androidAvatarSize),
     });
-    return contacts.map((m) => Contact.fromMap(m)).toList();
+    return _decodeContacts(contacts);
   }
 
   /// Fetches all contacts, or when specified, the contacts with the email
   /// matching [email]
   /// Works only on iOS
+  /// See [getContacts] for [fields], [androidPackedEncoding] and the avatar options.
   static Future<List<Contact>> getContactsForEmail(String email,
       {bool withThumbnails = true,
       bool photoHighResolution = true,
       bool orderByGivenName = true,
       bool iOSLocalizedLabels = true,
-      bool androidLocalizedLabels = true}) async {
-    List contacts =
+      bool androidLocalizedLabels = true,
+      Set<ContactField>? fields,
+      bool androidPackedEncoding = false,
+      AvatarFormat? androidAvatarFormat,
+      int? androidAvatarSize}) async {
+    dynamic contacts =
         await _channel.invokeMethod('getContactsForEmail', <String, dynamic>{
       'email': email,
       'withThumbnails': withThumbnails,
@@ -71,20 +255,280 @@ class ContactsService {
       'orderByGivenName': orderByGivenName,
       'iOSLocalizedLabels': iOSLocalizedLabels,
       'androidLocalizedLabels': androidLocalizedLabels,
+      'fields': _fieldNames(fields),
+      'androidPackedEncoding': androidPackedEncoding,
+      ..._avatarArguments(androidAvatarFormat, androidAvatarSize),
+    });
+    return _decodeContacts(contacts);
+  }
+
+  /// Fetches the contacts of the [identifiers], in the same order, leaving out
+  /// those which no longer exist. A few queries read them all, whatever their
+  /// number.
+  /// See [getContacts] for [fields], [androidPackedEncoding] and the avatar options.
+  /// Only implemented on Android.
+  static Future<List<Contact>> getContactsByIds(List<String> identifiers,
+      {bool withThumbnails = true,
+      bool photoHighResolution = true,
+      bool androidLocalizedLabels = true,
+      Set<ContactField>? fields,
+      bool androidPackedEncoding = false,
+      AvatarFormat? androidAvatarFormat,
+      int? androidAvatarSize}) async {
+    if (identifiers.isEmpty) return List.empty();
+
+    dynamic contacts =
+        await _channel.invokeMethod('getContactsByIds', <String, dynamic>{
+      'identifiers': identifiers,
+      'withThumbnails': withThumbnails,
+      'photoHighResolution': photoHighResolution,
+      'androidLocalizedLabels': androidLocalizedLabels,
+      'fields': _fieldNames(fields),
+      'androidPackedEncoding': androidPackedEncoding,
+      ..._avatarArguments(androidAvatarFormat, androidAvatarSize),
     });
-    return contacts.map((m) => Contact.fromMap(m)).toList();
+    return _decodeContacts(contacts);
   }
 
+  /// Fetches at most [count] contacts from position [start] of the address
+  /// book sorted by name, for a list which only builds the visible rows,
+  /// along with the number of contacts. Only the identifiers of the contacts
+  /// are kept on the native side, the next range in the direction of the
+  /// scroll being read in advance. Positions follow the sections of
+  /// [getContactsSummary], and move when contacts are added or deleted.
+  /// See [getContacts] for [fields], [androidPackedEncoding] and the avatar options.
+  /// Only implemented on Android.
+  static Future<ContactsRange> getContactsRange(int start, int count,
+      {bool withThumbnails = false,
+      bool photoHighResolution = true,
+      bool androidLocalizedLabels = true,
+      Set<ContactField>? fields,
+      bool androidPackedEncoding = false,
+      AvatarFormat? androidAvatarFormat,
+      int? androidAvatarSize}) async {
+    Map range =
+        await _channel.invokeMethod('getContactsRange', <String, dynamic>{
+      'start': start,
+      'count': count,
+      'withThumbnails': withThumbnails,
+      'photoHighResolution': photoHighResolution,
+      'androidLocalizedLabels': androidLocalizedLabels,
+      'fields': _fieldNames(fields),
+      'androidPackedEncoding': androidPackedEncoding,
+      ..._avatarArguments(androidAvatarFormat, androidAvatarSize),
+    });
+    return ContactsRange._(range["total"], _decodeContacts(range["contacts"]));
+  }
+
+  /// Returns the lookup keys of the contacts of the [identifiers] which still
+  /// exist, keyed by identifier, without reading the rest of the contacts.
+  /// A lookup key finds a contact again after its identifier changed, such as
+  /// when it was merged with another one.
+  /// Only implemented on Android.
+  static Future<Map<String, String>> getLookupKeys(
+      List<String> identifiers) async {
+    if (identifiers.isEmpty) return {};
+    Map lookupKeys = await _channel.invokeMethod(
+        'getLookupKeys', <String, dynamic>{'identifiers': identifiers});
+    return Map<String, String>.from(lookupKeys);
+  }
+
+  /// Counts the contacts, the raw contacts of each account and the contacts
+  /// of each section of the alphabet, without reading the contacts, e.g. for
+  /// the headers and the fast scroller of a list.
+  /// Only implemented on Android.
+  static Future<ContactsSummary> getContactsSummary() async {
+    Map summary = await _channel.invokeMethod('getContactsSummary');
+    return ContactsSummary._fromMap(summary);
+  }
+
+  /// Finds the contacts having each of the [phones], as a caller ID would,
+  /// in a few queries whatever the number of phones. Numbers without a
+  /// country code are read as numbers of [countryIso], an ISO 3166 code such
+  /// as "FR", or of the country of the device locale when null. Every phone
+  /// is a key of the returned map, with no matches when unknown.
+  /// Only implemented on Android 5.0 (API 21) and later.
+  static Future<Map<String, List<ContactMatch>>> lookupPhones(
+          List<String> phones,
+          {String? countryIso}) =>
+      _lookup('lookupPhones', phones, countryIso);
+
+  /// Finds the contacts having each of the [emails], compared regardless of
+  /// case. See [lookupPhones].
+  /// Only implemented on Android 5.0 (API 21) and later.
+  static Future<Map<String, List<ContactMatch>>> lookupEmails(
+          List<String> emails) =>
+      _lookup('lookupEmails', emails, null);
+
+  static Future<Map<String, List<ContactMatch>>> _lookup(
+      String method, List<String> values, String? countryIso) async {
+    if (values.isEmpty) return {};
+    Map matches = await _channel.invokeMethod(method, <String, dynamic>{
+      'values': values,
+      'countryIso': countryIso,
+    });
+    return matches.map<String, List<ContactMatch>>((value, contacts) =>
+        MapEntry(value, [
+          for (final m in contacts) ContactMatch._fromMap(m),
+        ]));
+  }
+
+  /// Finds the contacts whose names, company, emails or phones have words
+  /// starting with every word of [query], best matches first, for a search
+  /// field updated as the user types. The first search builds an index of the
+  /// address book, which is then kept up to date with the contacts changed
+  /// since, so later searches take a few milliseconds.
+  /// Only implemented on Android.
+  static Future<List<ContactMatch>> searchContacts(String query,
+      {int limit = 20}) async {
+    List matches =
+        await _channel.invokeMethod('searchContacts', <String, dynamic>{
+      'query': query,
+      'limit': limit,
+    });
+    return [for (final m in matches) ContactMatch._fromMap(m)];
+  }
+
+  /// Builds the index of [searchContacts] ahead of the first search, and
+  /// returns the number of contacts it holds. Only implemented on Android.
+  static Future<int> buildSearchIndex() async =>
+      await _channel.invokeMethod('buildSearchIndex');
+
+  /// Frees the index of [searchContacts], which is built again by the next
+  /// search. Only implemented on Android.
+  static Future<void> clearSearchIndex() =>
+      _channel.invokeMethod('clearSearchIndex');
+
   /// Loads the avatar for the given contact and returns it. If the user does
   /// not have an avatar, then `null` is returned in that slot. Only implemented
   /// on Android.
+  /// The avatar is a PNG unless another [format] is given, with
+  /// [AvatarFormat.original] the stored bytes are returned without decoding
+  /// them, which is much faster. With [size] the photo is downsampled, by a
+  /// power of two, as long as both its sides stay at least [size] pixels;
+  /// this only applies to the png and jpeg formats.
   static Future<Uint8List?> getAvatar(final Contact contact,
-          {final bool photoHighRes = true}) =>
+          {final bool photoHighRes = true, AvatarFormat? format, int? size}) =>
       _channel.invokeMethod('getAvatar', <String, dynamic>{
         'contact': Contact._toMap(contact),
         'photoHighResolution': photoHighRes,
+        ..._avatarArguments(format, size),
       });
 
+  /// Loads the avatars of the contacts with the given [identifiers], on up
+  /// to [parallelism] threads, and emits them keyed by identifier as they are
+  /// loaded. A contact without an avatar is emitted with `null`.
+  /// Use [prioritizeAvatars] and [cancelAvatars] when the contacts shown on
+  /// screen change while the avatars are loading. Cancelling the subscription
+  /// drops the avatars which are not loaded yet.
+  /// See [getAvatar] for [photoHighRes], [format] and [size].
+  /// Only implemented on Android.
+  static Stream<Map<String, Uint8List?>> getAvatars(List<String> identifiers,
+      {bool photoHighRes = true,
+      AvatarFormat? format,
+      int? size,
+      int parallelism = 4}) async* {
+    if (identifiers.isEmpty) return;
+    int? batchToken;
+    try {
+      do {
+        Map batch = await _channel.invokeMethod('getAvatars', <String, dynamic>{
+          'batchToken': batchToken,
+          if (batchToken == null) 'identifiers': identifiers,
+          'photoHighResolution': photoHighRes,
+          ..._avatarArguments(format, size),
+          'parallelism': parallelism,
+        });
+        batchToken = batch['batchToken'];
+        yield Map<String, Uint8List?>.from(batch['avatars']);
+      } while (batchToken != null);
+    } finally {
+      if (batchToken != null) {
+        await _channel.invokeMethod('cancelAvatars', <String, dynamic>{
+          'batchToken': batchToken,
+        });
+      }
+    }
+  }
+
+  /// Loads the avatars of the given [identifiers] before the others in every
+  /// running [getAvatars]. Only implemented on Android.
+  static Future prioritizeAvatars(List<String> identifiers) =>
+      _channel.invokeMethod('prioritizeAvatars', <String, dynamic>{
+        'identifiers': identifiers,
+      });
+
+  /// Stops the running [getAvatars] from loading the avatars of the given
+  /// [identifiers], unless they are already being loaded. Only implemented on
+  /// Android.
+  static Future cancelAvatars(List<String> identifiers) =>
+      _channel.invokeMethod('cancelAvatars', <String, dynamic>{
+        'identifiers': identifiers,
+      });
+
+  /// Returns the counters of the lanes the requests run on, keyed by lane:
+  /// `query` for reading contacts, `avatar` for [getAvatar] and [getAvatars],
+  /// and `write` for the bulk writes. A request which does not fit in the
+  /// queue of its lane fails with a [PlatformException] of code `QUEUE_FULL`.
+  /// Only implemented on Android.
+  static Future<Map<String, RequestLaneStats>> getSchedulerStats() async {
+    Map stats = await _channel.invokeMethod('getSchedulerStats');
+    return stats.map<String, RequestLaneStats>(
+        (lane, m) => MapEntry(lane, RequestLaneStats.fromMap(m)));
+  }
+
+  /// Returns the time spent by the calls to the plugin since the last
+  /// [resetPerformanceStats], keyed by method name, to tell whether slow calls
+  /// wait in the queue, for the provider, or decode, load avatars or
+  /// serialize many contacts. Each stage is also a section of the system
+  /// trace, under the `contacts:` prefix. The avatars of [getAvatars] are
+  /// timed one by one under `getAvatars.avatar`.
+  /// Only implemented on Android.
+  static Future<Map<String, OperationStats>> getPerformanceStats() async {
+    Map stats = await _channel.invokeMethod('getPerformanceStats');
+    return stats.map<String, OperationStats>(
+        (method, m) => MapEntry(method, OperationStats._fromMap(m)));
+  }
+
+  /// Clears the stats returned by [getPerformanceStats].
+  /// Only implemented on Android.
+  static Future<void> resetPerformanceStats() =>
+      _channel.invokeMethod('resetPerformanceStats');
+
+  /// Calls [handler] with each call to the plugin which took at least
+  /// [threshold], for example to report it, or stops when [handler] is null.
+  /// Only implemented on Android.
+  static Future<void> setSlowCallHandler(void Function(SlowCall call)? handler,
+      {Duration threshold = const Duration(milliseconds: 500)}) {
+    _slowCallHandler = handler;
+    _channel.setMethodCallHandler(handler == null ? null : _handleNativeCall);
+    return _channel.invokeMethod('setSlowCallThreshold', <String, dynamic>{
+      'thresholdMillis': handler == null ? 0 : threshold.inMilliseconds,
+    });
+  }
+
+  static Future<dynamic> _handleNativeCall(MethodCall call) async {
+    if (call.method == 'onSlowCall') {
+      _slowCallHandler?.call(SlowCall._fromMap(call.arguments));
+    }
+  }
+
+  /// Returns the counters of the cache [getAvatar] goes through. Avatars are
+  /// cached until the contact's photo changes or the cache runs out of room.
+  /// Only implemented on Android.
+  static Future<AvatarCacheStats> getAvatarCacheStats() async {
+    Map stats = await _channel.invokeMethod('getAvatarCacheStats');
+    return AvatarCacheStats.fromMap(stats);
+  }
+
+  /// Sets how many bytes of avatars may be cached, evicting the least
+  /// recently used ones beyond that. Only implemented on Android.
+  static Future setAvatarCacheSize(int maxBytes) => _channel
+      .invokeMethod('setAvatarCacheSize', <String, dynamic>{'maxBytes': maxBytes});
+
+  /// Empties the avatar cache. Only implemented on Android.
+  static Future clearAvatarCache() => _channel.invokeMethod('clearAvatarCache');
+
   /// Adds the [contact] to the device contact list
   static Future addContact(Contact contact) =>
       _channel.invokeMethod('addContact', Contact._toMap(contact));
@@ -94,8 +538,55 @@ class ContactsService {
       _channel.invokeMethod('deleteContact', Contact._toMap(contact));
 
   /// Updates the [contact] if it has a valid identifier
-  static Future updateContact(Contact contact) =>
-      _channel.invokeMethod('updateContact', Contact._toMap(contact));
+  ///
+  /// With [androidDiffUpdate], only the phones, emails, addresses and other
+  /// details which changed are written on Android, the others keeping their
+  /// rows. A contact without an avatar or a birthday then keeps the ones it
+  /// has, as does a contact still holding the avatar it was fetched with,
+  /// and a contact which does not exist fails to update.
+  static Future updateContact(Contact contact,
+      {bool androidDiffUpdate = false}) {
+    final contactMap = androidDiffUpdate
+        ? Contact._toDiffMap(contact)
+        : Contact._toMap(contact);
+    if (androidDiffUpdate) contactMap['androidDiffUpdate'] = true;
+    return _channel.invokeMethod('updateContact', contactMap);
+  }
+
+  /// Adds the [contacts] to the device contact list, in as few transactions
+  /// as possible. The results are in the same order as [contacts], with the
+  /// identifiers of the added contacts. Only implemented on Android.
+  static Future<List<ContactWriteResult>> addContacts(List<Contact> contacts) =>
+      _writeContacts('addContacts', contacts);
+
+  /// Updates the [contacts], which must have valid identifiers.
+  /// See [addContacts] and [updateContact]. Only implemented on Android.
+  static Future<List<ContactWriteResult>> updateContacts(
+          List<Contact> contacts,
+          {bool androidDiffUpdate = false}) =>
+      _writeContacts('updateContacts', contacts,
+          androidDiffUpdate: androidDiffUpdate);
+
+  /// Deletes the [contacts], which must have valid identifiers.
+  /// See [addContacts]. Only implemented on Android.
+  static Future<List<ContactWriteResult>> deleteContacts(
+          List<Contact> contacts) =>
+      _writeContacts('deleteContacts', contacts);
+
+  static Future<List<ContactWriteResult>> _writeContacts(
+      String method, List<Contact> contacts,
+      {bool androidDiffUpdate = false}) async {
+    if (contacts.isEmpty) return List.empty();
+    List results = await _channel.invokeMethod(method, <String, dynamic>{
+      'contacts': contacts
+          .map((contact) => androidDiffUpdate
+              ? Contact._toDiffMap(contact)
+              : Contact._toMap(contact))
+          .toList(),
+      if (androidDiffUpdate) 'androidDiffUpdate': true,
+    });
+    return results.map((m) => ContactWriteResult._fromMap(m)).toList();
+  }
 
   static Future<Contact> openContactForm(
       {bool iOSLocalizedLabels = true,
@@ -143,6 +634,23 @@ class ContactsService {
     return _handleFormOperation(result);
   }
 
+  static List<String>? _fieldNames(Set<ContactField>? fields) =>
+      fields?.map((field) => field.toString().split('.').last).toList();
+
+  static Map<String, dynamic> _avatarArguments(
+          AvatarFormat? format, int? size) =>
+      {
+        if (format != null) 'avatarFormat': format.toString().split('.').last,
+        if (size != null) 'avatarSize': size,
+      };
+
+  static List<Contact> _decodeContacts(dynamic contacts) {
+    if (contacts is Uint8List) {
+      return _PackedContactsDecoder(contacts).decode();
+    }
+    return (contacts as Iterable).map((m) => Contact.fromMap(m)).toList();
+  }
+
   static Contact _handleFormOperation(dynamic result) {
     if (result is int) {
       switch (result) {
@@ -165,6 +673,75 @@ class ContactsService {
   }
 }
 
+/// An event of [ContactsService.onContactsChanged]
+class ContactsChangeEvent {
+  ContactsChangeEvent._fromMap(Map m)
+      : updatedIdentifiers = (m["updatedIdentifiers"] as List?)?.cast<String>(),
+        deletedIdentifiers = (m["deletedIdentifiers"] as List?)?.cast<String>();
+
+  /// The identifiers of the contacts added or updated since the previous
+  /// event, null when the device cannot tell (before Android 4.3)
+  final List<String>? updatedIdentifiers;
+
+  /// The identifiers of the contacts deleted since the previous event, null
+  /// when the device cannot tell (before Android 4.3)
+  final List<String>? deletedIdentifiers;
+}
+
+/// The result of writing one contact with [ContactsService.addContacts],
+/// [ContactsService.updateContacts] or [ContactsService.deleteContacts]
+class ContactWriteResult {
+  ContactWriteResult._fromMap(Map m)
+      : success = m["success"],
+        identifier = m["identifier"],
+        error = m["error"];
+
+  final bool success;
+
+  /// The identifier of the contact, the new one for an added contact. Null
+  /// for a contact added by a transaction which failed after committing it.
+  final String? identifier;
+
+  /// Why the contact could not be written
+  final String? error;
+}
+
+/// The changes returned by [ContactsService.getContactsChangedSince]
+class ContactChanges {
+  ContactChanges._(this.contacts, this.deletedIdentifiers, this.timestamp,
+      this.deletionsComplete);
+
+  /// The contacts added or updated since the requested timestamp
+  final List<Contact> contacts;
+
+  /// The identifiers of the contacts deleted since the requested timestamp
+  final List<String> deletedIdentifiers;
+
+  /// The timestamp to request the next changes from
+  final int timestamp;
+
+  /// False when the requested timestamp is so old that the device may have
+  /// forgotten about some deleted contacts, in which case all the contacts
+  /// should be fetched again
+  final bool deletionsComplete;
+}
+
+/// A contact found by [ContactsService.lookupPhones],
+/// [ContactsService.lookupEmails] or [ContactsService.searchContacts]
+class ContactMatch {
+  ContactMatch._fromMap(Map m)
+      : identifier = m["identifier"],
+        displayName = m["displayName"],
+        value = m["value"];
+
+  final String identifier;
+  final String? displayName;
+
+  /// The phone, email, name or company of the contact which matched, as it
+  /// is stored
+  final String? value;
+}
+
 class FormOperationException implements Exception {
   final FormOperationErrorCode? errorCode;
 
@@ -215,6 +792,10 @@ class Contact {
   Uint8List? avatar;
   DateTime? birthday;
 
+  // The avatar as fetched, a thumbnail or a re-encoded photo which would
+  // replace the photo of the contact if written back
+  Uint8List? _fetchedAvatar;
+
   String initials() {
     return ((this.givenName?.isNotEmpty == true ? this.givenName![0] : "") +
             (this.familyName?.isNotEmpty == true ? this.familyName![0] : ""))
@@ -240,6 +821,7 @@ class Contact {
         ?.map((m) => PostalAddress.fromMap(m))
         .toList();
     avatar = m["avatar"];
+    _fetchedAvatar = avatar;
     try {
       birthday = m["birthday"] != null ? DateTime.parse(m["birthday"]) : null;
     } catch (e) {
@@ -285,6 +867,17 @@ class Contact {
     };
   }
 
+  /// Leaves the avatar out when it is still the one fetched, so that a diff
+  /// update keeps the photo
+  static Map _toDiffMap(Contact contact) {
+    final map = _toMap(contact);
+    if (contact.avatar != null &&
+        identical(contact.avatar, contact._fetchedAvatar)) {
+      map.remove("avatar");
+    }
+    return map;
+  }
+
   Map toMap() {
     return Contact._toMap(this);
   }
@@ -499,3 +1092,287 @@ class Item {
 }
 
 enum AndroidAccountType { facebook, google, whatsapp, other }
+
+/// Counters of the avatar cache, see [ContactsService.getAvatarCacheStats]
+class AvatarCacheStats {
+  AvatarCacheStats.fromMap(Map m)
+      : hits = m["hits"],
+        misses = m["misses"],
+        evictions = m["evictions"],
+        entries = m["entries"],
+        bytes = m["bytes"],
+        maxBytes = m["maxBytes"];
+
+  final int hits, misses, evictions, entries, bytes, maxBytes;
+}
+
+/// Counters of a lane requests run on, see [ContactsService.getSchedulerStats]
+class RequestLaneStats {
+  RequestLaneStats.fromMap(Map m)
+      : threads = m["threads"],
+        capacity = m["capacity"],
+        queued = m["queued"],
+        running = m["running"],
+        completed = m["completed"],
+        rejected = m["rejected"];
+
+  final int threads, capacity, queued, running, completed, rejected;
+}
+
+/// Durations of a stage of the calls to a method, see
+/// [ContactsService.getPerformanceStats]. Percentiles are rounded up to a
+/// power of two microseconds.
+class DurationHistogram {
+  DurationHistogram._fromMap(Map m)
+      : count = m["count"],
+        total = Duration(microseconds: m["totalMicros"]),
+        max = Duration(microseconds: m["maxMicros"]),
+        p50 = Duration(microseconds: m["p50Micros"]),
+        p90 = Duration(microseconds: m["p90Micros"]),
+        p99 = Duration(microseconds: m["p99Micros"]),
+        buckets = List<int>.from(m["buckets"]);
+
+  final int count;
+  final Duration total, max, p50, p90, p99;
+
+  /// Bucket `i` counts the durations under 2^i microseconds, the last one
+  /// the longer ones
+  final List<int> buckets;
+}
+
+/// What the calls to a method went through, see
+/// [ContactsService.getPerformanceStats]
+class OperationStats {
+  OperationStats._fromMap(Map m)
+      : calls = m["calls"],
+        failures = m["failures"],
+        rows = m["rows"],
+        contacts = m["contacts"],
+        bytes = m["bytes"],
+        total = DurationHistogram._fromMap(m["total"]),
+        stages = (m["stages"] as Map).map<String, DurationHistogram>(
+            (stage, h) => MapEntry(stage, DurationHistogram._fromMap(h)));
+
+  /// [rows] are read from the provider, [bytes] are those of packed contacts
+  /// and avatars
+  final int calls, failures, rows, contacts, bytes;
+  final DurationHistogram total;
+
+  /// Keyed by stage: `queue`, `query`, `decode`, `avatars`, `serialize` or
+  /// `write`, those the method does not go through being left out
+  final Map<String, DurationHistogram> stages;
+}
+
+/// A call which took longer than the threshold given to
+/// [ContactsService.setSlowCallHandler]
+class SlowCall {
+  SlowCall._fromMap(Map m)
+      : method = m["method"],
+        total = Duration(microseconds: m["totalMicros"]),
+        stages = (m["stageMicros"] as Map).map<String, Duration>(
+            (stage, micros) => MapEntry(stage, Duration(microseconds: micros))),
+        rows = m["rows"],
+        contacts = m["contacts"],
+        bytes = m["bytes"],
+        failed = m["failed"];
+
+  final String method;
+  final Duration total;
+  final Map<String, Duration> stages;
+  final int rows, contacts, bytes;
+  final bool failed;
+}
+
+/// Contacts at a range of positions, see [ContactsService.getContactsRange]
+class ContactsRange {
+  ContactsRange._(this.total, this.contacts);
+
+  /// Number of contacts of the whole list
+  final int total;
+
+  /// Fewer than asked for at the end of the list, or when some were deleted
+  final List<Contact> contacts;
+}
+
+/// What the address book holds, see [ContactsService.getContactsSummary]
+class ContactsSummary {
+  ContactsSummary._fromMap(Map m)
+      : count = m["count"],
+        accounts = (m["accounts"] as List)
+            .map((a) => AccountSummary._fromMap(a))
+            .toList(),
+        index = (m["index"] as List?)
+            ?.map((s) => IndexSection._fromMap(s))
+            .toList();
+
+  /// Number of contacts, as returned by [ContactsService.getContacts]
+  final int count;
+
+  /// Accounts with the most raw contacts first. A contact merged from
+  /// several accounts counts for each of them.
+  final List<AccountSummary> accounts;
+
+  /// Sections of the contacts sorted by display name, in that order, null
+  /// before Android 5.0
+  final List<IndexSection>? index;
+}
+
+/// Raw contacts of an account, both null for those stored on the device only
+class AccountSummary {
+  AccountSummary._fromMap(Map m)
+      : type = m["type"],
+        name = m["name"],
+        count = m["count"];
+
+  final String? type, name;
+  final int count;
+}
+
+/// Contacts whose display name sorts under [title], such as "A"
+class IndexSection {
+  IndexSection._fromMap(Map m)
+      : title = m["title"],
+        count = m["count"];
+
+  final String title;
+  final int count;
+}
+
+/// Encodings the avatars can be returned in
+enum AvatarFormat {
+  /// The bytes stored by the address book, usually a JPEG, without decoding
+  original,
+  png,
+  jpeg,
+}
+
+/// Groups of [Contact] fields which can be requested when fetching contacts
+enum ContactField {
+  /// [Contact.givenName], [Contact.middleName], [Contact.familyName],
+  /// [Contact.prefix] and [Contact.suffix]
+  name,
+  phones,
+  emails,
+  postalAddresses,
+
+  /// [Contact.company] and [Contact.jobTitle]
+  organization,
+  birthday,
+}
+
+/// Decodes the contact lists packed by PackedContactsEncoder on Android,
+/// see that class for the layout.
+class _PackedContactsDecoder {
+  static const int _version = 1;
+  static const int _phones = 1 << 1;
+  static const int _emails = 1 << 2;
+  static const int _postalAddresses = 1 << 3;
+
+  _PackedContactsDecoder(this._bytes)
+      : _data = ByteData.sublistView(_bytes);
+
+  final Uint8List _bytes;
+  final ByteData _data;
+  int _offset = 0;
+  late List<String> _strings;
+
+  List<Contact> decode() {
+    if (_int() != _version) {
+      throw FormatException('Unsupported packed contacts version');
+    }
+    final fields = _int();
+    _readStrings();
+
+    final count = _int();
+    final contacts = List<Contact>.generate(count, (_) {
+      final contact = Contact();
+      contact.identifier = _string();
+      contact.displayName = _string();
+      contact.givenName = _string();
+      contact.middleName = _string();
+      contact.familyName = _string();
+      contact.prefix = _string();
+      contact.suffix = _string();
+      contact.company = _string();
+      contact.jobTitle = _string();
+      _string(); // note, not exposed on Contact
+      final birthday = _string();
+      contact.androidAccountTypeRaw = _string();
+      contact.androidAccountType =
+          contact.accountTypeFromString(contact.androidAccountTypeRaw);
+      contact.androidAccountName = _string();
+      try {
+        contact.birthday = birthday != null ? DateTime.parse(birthday) : null;
+      } catch (e) {
+        contact.birthday = null;
+      }
+
+      final avatarLength = _int();
+      if (avatarLength >= 0) {
+        contact.avatar = _bytes.sublist(_offset, _offset + avatarLength);
+        contact._fetchedAvatar = contact.avatar;
+        _offset += _padded(avatarLength);
+      }
+
+      final emails = _items();
+      final phones = _items();
+      final postalAddresses = _postalAddressList();
+      contact.emails = fields & _emails != 0 ? emails : null;
+      contact.phones = fields & _phones != 0 ? phones : null;
+      contact.postalAddresses =
+          fields & _postalAddresses != 0 ? postalAddresses : null;
+      return contact;
+    });
+    return contacts;
+  }
+
+  void _readStrings() {
+    final count = _int();
+    final offsets = List<int>.generate(count + 1, (_) => _int());
+    final start = _offset;
+    _strings = List<String>.generate(
+        count,
+        (i) => utf8.decode(
+            Uint8List.sublistView(
+                _bytes, start + offsets[i], start + offsets[i + 1]),
+            allowMalformed: true));
+    _offset = start + _padded(offsets[count]);
+  }
+
+  List<Item> _items() {
+    final count = _int();
+    return List<Item>.generate(count, (_) {
+      final item = Item(label: _string(), value: _string());
+      _int(); // type, not exposed on Item
+      return item;
+    });
+  }
+
+  List<PostalAddress> _postalAddressList() {
+    final count = _int();
+    return List<PostalAddress>.generate(count, (_) {
+      final address = PostalAddress(
+          label: _string(),
+          street: _string(),
+          city: _string(),
+          postcode: _string(),
+          region: _string(),
+          country: _string());
+      _int(); // type, not exposed on PostalAddress
+      return address;
+    });
+  }
+
+  int _int() {
+    final value = _data.getInt32(_offset, Endian.little);
+    _offset += 4;
+    return value;
+  }
+
+  String? _string() {
+    final index = _int();
+    return index < 0 ? null : _strings[index];
+  }
+
+  static int _padded(int length) => (length + 3) & ~3;
+}
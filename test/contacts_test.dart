@@ -12,9 +12,14 @@ void main() {
   final List<MethodCall> log = <MethodCall>[];
   channel.setMockMethodCallHandler((MethodCall methodCall) async {
     log.add(methodCall);
+    if (methodCall.arguments is Map &&
+        methodCall.arguments['androidPackedEncoding'] == true) {
+      return _packedContacts();
+    }
     switch (methodCall.method) {
       case 'getContacts':
       case 'getContactsForPhone':
+      case 'getContactsByIds':
       case 'getContactsForEmail':
         return [
           {'givenName': 'givenName1'},
@@ -29,8 +34,145 @@ void main() {
             'birthday': '1994-02-01'
           },
         ];
+      case 'getContactsPage':
+        if (methodCall.arguments['cursorToken'] == null) {
+          return {
+            'contacts': [
+              {'givenName': 'givenName1'},
+            ],
+            'cursorToken': 7,
+          };
+        }
+        return {
+          'contacts': [
+            {'givenName': 'givenName2'},
+          ],
+          'cursorToken': null,
+        };
+      case 'getContactsChangedSince':
+        return {
+          'contacts': [
+            {'identifier': '1', 'givenName': 'givenName1'},
+          ],
+          'deletedIdentifiers': ['2'],
+          'timestamp': 1000,
+          'deletionsComplete': true,
+        };
+      case 'addContacts':
+        return [
+          {'success': true, 'identifier': '10', 'error': null},
+          {'success': false, 'identifier': null, 'error': 'error'},
+        ];
+      case 'updateContacts':
+        return [
+          {'success': true, 'identifier': '1', 'error': null},
+        ];
       case 'getAvatar':
         return Uint8List.fromList([0, 1, 2, 3]);
+      case 'getAvatars':
+        if (methodCall.arguments['batchToken'] == null) {
+          return {
+            'avatars': {'1': Uint8List.fromList([0, 1, 2, 3])},
+            'batchToken': 3,
+          };
+        }
+        return {
+          'avatars': {'2': null},
+          'batchToken': null,
+        };
+      case 'getLookupKeys':
+        return {'1': '0r1-2A3B'};
+      case 'getContactsRange':
+        return {
+          'total': 120,
+          'contacts': [
+            {'identifier': '7', 'givenName': 'name7'},
+            {'identifier': '3', 'givenName': 'name3'},
+          ],
+        };
+      case 'getContactsSummary':
+        return {
+          'count': 3,
+          'accounts': [
+            {'type': 'com.google', 'name': 'me@gmail.com', 'count': 2},
+            {'type': null, 'name': null, 'count': 1},
+          ],
+          'index': [
+            {'title': 'A', 'count': 2},
+            {'title': 'B', 'count': 1},
+          ],
+        };
+      case 'lookupPhones':
+        return {
+          '+33612345678': [
+            {'identifier': '1', 'displayName': 'name1', 'value': '06 12 34 56 78'},
+          ],
+          '555': [],
+        };
+      case 'getContactsSnapshot':
+        return {
+          'contacts': [
+            {'identifier': '1', 'givenName': 'name1'},
+            {'identifier': '2', 'givenName': 'name2'},
+            {'identifier': '3', 'givenName': 'name3'},
+          ],
+          'timestamp': 1000,
+        };
+      case 'reconcileContactsSnapshot':
+        return {
+          'contacts': [
+            {'identifier': '2', 'givenName': 'renamed2'},
+            {'identifier': '4', 'givenName': 'name4'},
+          ],
+          'deletedIdentifiers': ['1'],
+          'replace': false,
+          'timestamp': 2000,
+        };
+      case 'searchContacts':
+        return [
+          {'identifier': '2', 'displayName': 'Anna Smith', 'value': 'Anna Smith'},
+        ];
+      case 'getPerformanceStats':
+        final histogram = {
+          'count': 2,
+          'totalMicros': 3000,
+          'maxMicros': 2000,
+          'p50Micros': 1024,
+          'p90Micros': 2000,
+          'p99Micros': 2000,
+          'buckets': [0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1],
+        };
+        return {
+          'getContacts': {
+            'calls': 2,
+            'failures': 0,
+            'rows': 40,
+            'contacts': 10,
+            'bytes': 0,
+            'total': histogram,
+            'stages': {'query': histogram},
+          },
+        };
+      case 'getSchedulerStats':
+        return {
+          'query': {
+            'threads': 2,
+            'capacity': 64,
+            'queued': 1,
+            'running': 2,
+            'completed': 10,
+            'rejected': 0,
+          },
+        };
+      case 'getAvatarCacheStats':
+        return {
+          'hits': 3,
+          'misses': 1,
+          'evictions': 0,
+          'entries': 1,
+          'bytes': 132,
+          'maxBytes': 1024,
+        };
       default:
         return null;
     }
@@ -50,6 +192,84 @@ void main() {
     expect(contacts[1].birthday, DateTime(1994, 2, 1));
   });
 
+  group('ContactsService.getContactsStream', () {
+    test('emits every page until the cursor is exhausted', () async {
+      final pages = await ContactsService.getContactsStream().toList();
+      expect(pages.length, 2);
+      expect(pages[0][0].givenName, 'givenName1');
+      expect(pages[1][0].givenName, 'givenName2');
+      expect(log.map((call) => call.method),
+          ['getContactsPage', 'getContactsPage']);
+      expect(log[1].arguments['cursorToken'], 7);
+    });
+
+    test('releases the cursor when the subscription is cancelled', () async {
+      final page = await ContactsService.getContactsStream(pageSize: 1).first;
+      expect(page[0].givenName, 'givenName1');
+      expect(log.last,
+          isMethodCall('cancelContactsPage', arguments: {'cursorToken': 7}));
+    });
+  });
+
+  test('should ask for a parallel load', () async {
+    await ContactsService.getContacts(androidParallelLoad: true);
+    expect(log.single.arguments['androidParallelLoad'], true);
+  });
+
+  test('should decode packed contacts', () async {
+    final contacts =
+        await ContactsService.getContacts(androidPackedEncoding: true);
+    expect(log.single.arguments['androidPackedEncoding'], true);
+    expect(contacts.length, 1);
+    expect(contacts[0].identifier, '1');
+    expect(contacts[0].givenName, 'givenName1');
+    expect(contacts[0].familyName, isNull);
+    expect(contacts[0].birthday, DateTime(1994, 2, 1));
+    expect(contacts[0].avatar, Uint8List.fromList([0, 1, 2]));
+    expect(contacts[0].emails, [Item(label: 'label', value: 'a@b.c')]);
+    expect(contacts[0].phones, isEmpty);
+    expect(contacts[0].postalAddresses, isNull);
+  });
+
+  test('should get contacts changed since a timestamp', () async {
+    final changes = await ContactsService.getContactsChangedSince(500);
+    expect(log.single.arguments['timestamp'], 500);
+    expect(changes.contacts.single.givenName, 'givenName1');
+    expect(changes.deletedIdentifiers, ['2']);
+    expect(changes.timestamp, 1000);
+    expect(changes.deletionsComplete, true);
+  });
+
+  test('should emit contacts change events', () async {
+    const changesChannel =
+        MethodChannel('github.com/clovisnicolas/flutter_contacts/changes');
+    final changesLog = <MethodCall>[];
+    changesChannel.setMockMethodCallHandler((MethodCall methodCall) async {
+      changesLog.add(methodCall);
+    });
+
+    final event = ContactsService.onContactsChanged.first;
+    await Future<void>.delayed(Duration.zero);
+    expect(changesLog.single.method, 'listen');
+    await ServicesBinding.instance!.defaultBinaryMessenger.handlePlatformMessage(
+        changesChannel.name,
+        const StandardMethodCodec().encodeSuccessEnvelope({
+          'updatedIdentifiers': ['1'],
+          'deletedIdentifiers': ['2'],
+        }),
+        (_) {});
+
+    expect((await event).updatedIdentifiers, ['1']);
+    expect((await event).deletedIdentifiers, ['2']);
+    changesChannel.setMockMethodCallHandler(null);
+  });
+
+  test('should request only the given fields', () async {
+    await ContactsService.getContacts(
+        fields: {ContactField.name, ContactField.phones});
+    expect(log.single.arguments['fields'], ['name', 'phones']);
+  });
+
   test('should get avatar for contact identifiers', () async {
     final contact = Contact(givenName: 'givenName');
 
@@ -109,6 +329,147 @@ void main() {
     ]);
   });
 
+  test('should pass the avatar format and size', () async {
+    final contact = Contact(givenName: 'givenName');
+
+    await ContactsService.getAvatar(contact,
+        format: AvatarFormat.original, size: 96);
+
+    expect(log, <Matcher>[
+      isMethodCall('getAvatar', arguments: <String, dynamic>{
+        'contact': contact.toMap(),
+        'photoHighResolution': true,
+        'avatarFormat': 'original',
+        'avatarSize': 96,
+      })
+    ]);
+  });
+
+  group('ContactsService.getAvatars', () {
+    test('emits avatars until the batch is done', () async {
+      final batches = await ContactsService.getAvatars(['1', '2']).toList();
+      expect(batches, [
+        {'1': Uint8List.fromList([0, 1, 2, 3])},
+        {'2': null},
+      ]);
+      expect(log[0].arguments['identifiers'], ['1', '2']);
+      expect(log[1].arguments['batchToken'], 3);
+      expect(log[1].arguments.containsKey('identifiers'), false);
+    });
+
+    test('cancels the batch when the subscription is cancelled', () async {
+      await ContactsService.getAvatars(['1', '2']).first;
+      expect(log.last,
+          isMethodCall('cancelAvatars', arguments: {'batchToken': 3}));
+    });
+  });
+
+  test('should look up phones', () async {
+    final matches = await ContactsService.lookupPhones(
+        ['+33612345678', '555'],
+        countryIso: 'FR');
+    expect(log.single.arguments['values'], ['+33612345678', '555']);
+    expect(log.single.arguments['countryIso'], 'FR');
+    expect(matches['+33612345678']!.single.identifier, '1');
+    expect(matches['+33612345678']!.single.displayName, 'name1');
+    expect(matches['555'], isEmpty);
+  });
+
+  test('should get contacts by ids', () async {
+    expect(await ContactsService.getContactsByIds([]), isEmpty);
+    expect(log, isEmpty);
+
+    final contacts = await ContactsService.getContactsByIds(['2', '1'],
+        withThumbnails: false, fields: {ContactField.name});
+    expect(log.single.arguments['identifiers'], ['2', '1']);
+    expect(log.single.arguments['fields'], ['name']);
+    expect(contacts.length, 2);
+  });
+
+  test('should get lookup keys', () async {
+    final lookupKeys = await ContactsService.getLookupKeys(['1', '2']);
+    expect(log.single.arguments['identifiers'], ['1', '2']);
+    expect(lookupKeys, {'1': '0r1-2A3B'});
+    expect(lookupKeys.containsKey('2'), isFalse);
+  });
+
+  test('should get the contacts of a range', () async {
+    final range = await ContactsService.getContactsRange(40, 2);
+    expect(log.single.arguments['start'], 40);
+    expect(log.single.arguments['count'], 2);
+    expect(log.single.arguments['withThumbnails'], isFalse);
+    expect(range.total, 120);
+    expect(range.contacts.map((c) => c.identifier), ['7', '3']);
+  });
+
+  test('should get the summary of the contacts', () async {
+    final summary = await ContactsService.getContactsSummary();
+    expect(log.single.method, 'getContactsSummary');
+    expect(summary.count, 3);
+    expect(summary.accounts.map((a) => a.type), ['com.google', null]);
+    expect(summary.accounts.first.name, 'me@gmail.com');
+    expect(summary.accounts.map((a) => a.count), [2, 1]);
+    expect(summary.index!.map((s) => s.title), ['A', 'B']);
+    expect(summary.index!.map((s) => s.count), [2, 1]);
+  });
+
+  test('should get contacts from the snapshot then correct them', () async {
+    final lists = await ContactsService.getContactsWithSnapshot().toList();
+    expect(lists.length, 2);
+    expect(lists[0].map((c) => c.givenName), ['name1', 'name2', 'name3']);
+    expect(lists[1].map((c) => c.givenName), ['renamed2', 'name3', 'name4']);
+    expect(log.last.method, 'reconcileContactsSnapshot');
+    expect(log.last.arguments['timestamp'], 1000);
+  });
+
+  test('should search contacts', () async {
+    final matches = await ContactsService.searchContacts('ann sm', limit: 5);
+    expect(log.single.arguments, {'query': 'ann sm', 'limit': 5});
+    expect(matches.single.identifier, '2');
+    expect(matches.single.value, 'Anna Smith');
+  });
+
+  test('should get performance stats', () async {
+    final stats = await ContactsService.getPerformanceStats();
+    expect(stats['getContacts']!.calls, 2);
+    expect(stats['getContacts']!.rows, 40);
+    expect(stats['getContacts']!.total.p50, Duration(microseconds: 1024));
+    expect(stats['getContacts']!.stages['query']!.max,
+        Duration(milliseconds: 2));
+  });
+
+  test('should set the slow call threshold', () async {
+    await ContactsService.setSlowCallHandler((call) {},
+        threshold: Duration(seconds: 1));
+    expect(log.single.arguments, {'thresholdMillis': 1000});
+    await ContactsService.setSlowCallHandler(null);
+    expect(log.last.arguments, {'thresholdMillis': 0});
+  });
+
+  test('should get scheduler stats', () async {
+    final stats = await ContactsService.getSchedulerStats();
+    expect(stats['query']!.threads, 2);
+    expect(stats['query']!.queued, 1);
+    expect(stats['query']!.completed, 10);
+  });
+
+  test('should get avatar cache stats', () async {
+    final stats = await ContactsService.getAvatarCacheStats();
+    expect(stats.hits, 3);
+    expect(stats.misses, 1);
+    expect(stats.maxBytes, 1024);
+  });
+
+  test('should add contacts in bulk', () async {
+    final results = await ContactsService.addContacts(
+        [Contact(givenName: 'givenName1'), Contact(givenName: 'givenName2')]);
+    expect(log.single.arguments['contacts'].length, 2);
+    expect(results[0].success, true);
+    expect(results[0].identifier, '10');
+    expect(results[1].success, false);
+    expect(results[1].error, 'error');
+  });
+
   test('should add contact', () async {
     await ContactsService.addContact(Contact(
       givenName: 'givenName',
@@ -152,6 +513,37 @@ void main() {
     expectMethodCall(log, 'updateContact');
   });
 
+  test('should update contact with a diff on Android', () async {
+    await ContactsService.updateContact(Contact(givenName: 'givenName'),
+        androidDiffUpdate: true);
+    expect(log.single.method, 'updateContact');
+    expect(log.single.arguments['androidDiffUpdate'], true);
+
+    log.clear();
+    await ContactsService.updateContacts([Contact(givenName: 'givenName')],
+        androidDiffUpdate: true);
+    expect(log.single.method, 'updateContacts');
+    expect(log.single.arguments['androidDiffUpdate'], true);
+  });
+
+  test('should leave the fetched avatar out of a diff update', () async {
+    final contact = Contact.fromMap({
+      'identifier': '1',
+      'avatar': Uint8List.fromList([1, 2, 3]),
+    });
+    await ContactsService.updateContact(contact, androidDiffUpdate: true);
+    expect(log.single.arguments.containsKey('avatar'), isFalse);
+
+    log.clear();
+    await ContactsService.updateContact(contact);
+    expect(log.single.arguments['avatar'], [1, 2, 3]);
+
+    log.clear();
+    contact.avatar = Uint8List.fromList([4, 5]);
+    await ContactsService.updateContacts([contact], androidDiffUpdate: true);
+    expect(log.single.arguments['contacts'][0]['avatar'], [4, 5]);
+  });
+
   test('should show contacts are equal', () {
     Contact contact1 =
         Contact(givenName: "givenName", familyName: "familyName", emails: [
@@ -273,3 +665,43 @@ void expectMethodCall(List<MethodCall> log, String methodName) {
     ),
   ]);
 }
+
+/// Packs a single contact the way PackedContactsEncoder does on Android,
+/// with every field but the postal addresses requested.
+Uint8List _packedContacts() {
+  const strings = ['1', 'givenName1', 'label', 'a@b.c', '1994-02-01'];
+  final ints = <int>[1, 0x77, strings.length];
+  var offset = 0;
+  for (final string in strings) {
+    ints.add(offset);
+    offset += string.length;
+  }
+  ints.add(offset);
+  final data = strings.join().codeUnits.toList();
+  while (data.length % 4 != 0) {
+    data.add(0);
+  }
+  final contact = <int>[
+    1, // contact count
+    0, -1, 1, -1, -1, -1, -1, -1, -1, -1, 4, -1, -1, // string refs
+    3, 0x00020100, // avatar
+    1, 2, 3, 1, // emails
+    0, // phones
+    0, // postal addresses
+  ];
+
+  final bytes = ByteData(4 * ints.length + data.length + 4 * contact.length);
+  var position = 0;
+  for (final value in ints) {
+    bytes.setInt32(position, value, Endian.little);
+    position += 4;
+  }
+  for (final byte in data) {
+    bytes.setUint8(position++, byte);
+  }
+  for (final value in contact) {
+    bytes.setInt32(position, value, Endian.little);
+    position += 4;
+  }
+  return bytes.buffer.asUint8List();
+}